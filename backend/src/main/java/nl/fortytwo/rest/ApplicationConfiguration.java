@@ -1,13 +1,40 @@
 package nl.fortytwo.rest;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.ComponentScan.Filter;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Controller;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.RestController;
 
+import nl.fortytwo.rest.security.AuditLog;
+import nl.fortytwo.rest.security.CorsPolicy;
+import nl.fortytwo.rest.security.CorsPolicyEngine;
+import nl.fortytwo.rest.security.CorsPreflightFilter;
+import nl.fortytwo.rest.security.RequestBodyGuardFilter;
+import nl.fortytwo.rest.security.RestAuthenticationFilter.LoginForm;
+import nl.fortytwo.rest.user.InMemoryUserRepository;
+import nl.fortytwo.rest.user.JdbcUserRepository;
+import nl.fortytwo.rest.user.JournaledUserRepository;
+import nl.fortytwo.rest.user.PasswordBlacklist;
+import nl.fortytwo.rest.user.UserRepository;
+import nl.fortytwo.rest.user.dto.CreateUserDTO;
+import nl.fortytwo.rest.user.dto.UserDTO;
+import nl.fortytwo.rest.util.CompressionFilter;
+import nl.fortytwo.rest.util.JsonCodec;
+import nl.fortytwo.rest.validator.CompiledValidator;
+
 
 @Configuration
 @ComponentScan(basePackageClasses = ApplicationConfiguration.class, excludeFilters = {
@@ -16,4 +43,154 @@ import org.springframework.web.bind.annotation.RestController;
         @Filter(value = SecurityConfiguration.class, type = FilterType.ASSIGNABLE_TYPE) })
 public class ApplicationConfiguration {
 
+    @Autowired
+    private Environment environment;
+
+    /**
+     * The allowed origins are configured in <code>cors.origins</code>. Paths with a policy of their own are listed by name
+     * in <code>cors.policies</code>, each with a <code>cors.policy.[name].path</code> and
+     * <code>cors.policy.[name].origins</code>. Origins may be wildcard subdomains such as <code>https://*.42.nl</code>.
+     */
+    @Bean
+    public CorsPolicyEngine corsPolicyEngine() {
+        CorsPolicyEngine engine = new CorsPolicyEngine(new CorsPolicy(environment.getProperty("cors.origins", "https://localhost:8443")));
+        for (String name : environment.getProperty("cors.policies", String[].class, new String[0])) {
+            engine.addPolicy(environment.getRequiredProperty("cors.policy." + name + ".path"),
+                    new CorsPolicy(environment.getRequiredProperty("cors.policy." + name + ".origins")));
+        }
+        return engine;
+    }
+
+    @Bean
+    public CorsPreflightFilter corsPreflightFilter() {
+        return new CorsPreflightFilter(corsPolicyEngine());
+    }
+
+    /**
+     * Request bodies are limited to <code>request.body.max-bytes</code>, and those of <code>/users/batch</code> to
+     * <code>request.body.batch.max-bytes</code>. Other paths with a limit of their own are listed by name in
+     * <code>request.body.limits</code>, each with a <code>request.body.limit.[name].path</code> and
+     * <code>request.body.limit.[name].max-bytes</code>.
+     */
+    @Bean
+    public RequestBodyGuardFilter requestBodyGuardFilter() {
+        RequestBodyGuardFilter filter = new RequestBodyGuardFilter(
+                environment.getProperty("request.body.max-bytes", Integer.class, RequestBodyGuardFilter.DEFAULT_MAX_BYTES));
+        filter.addLimit("/users/batch", environment.getProperty("request.body.batch.max-bytes", Integer.class, 1024 * 1024));
+        for (String name : environment.getProperty("request.body.limits", String[].class, new String[0])) {
+            filter.addLimit(environment.getRequiredProperty("request.body.limit." + name + ".path"),
+                    environment.getRequiredProperty("request.body.limit." + name + ".max-bytes", Integer.class));
+        }
+        return filter;
+    }
+
+    /**
+     * The security events are written to <code>audit.file</code>, which is rotated at <code>audit.max-file-bytes</code>
+     * keeping <code>audit.max-files</code> old files. Up to <code>audit.buffer-size</code> events wait for the writer,
+     * further events are dropped.
+     */
+    @Bean(destroyMethod = "close")
+    public AuditLog auditLog() {
+        String file = environment.getProperty("audit.file", System.getProperty("java.io.tmpdir") + "/rest-audit/audit.log");
+        return new AuditLog(Paths.get(file), environment.getProperty("audit.buffer-size", Integer.class, AuditLog.DEFAULT_CAPACITY),
+                environment.getProperty("audit.max-file-bytes", Long.class, AuditLog.DEFAULT_MAX_FILE_BYTES),
+                environment.getProperty("audit.max-files", Integer.class, AuditLog.DEFAULT_MAX_FILES));
+    }
+
+    /**
+     * The JSON codec shared by the message converter and the security filters. The bytecode generating Afterburner
+     * module is enabled with <code>json.afterburner=true</code>.
+     */
+    @Bean
+    public JsonCodec jsonCodec() {
+        return new JsonCodec(environment.getProperty("json.afterburner", Boolean.class, false))
+                .preload(LoginForm.class, CreateUserDTO.class, UserDTO.class);
+    }
+
+    /**
+     * Bean Validation of the DTO's, both of the request bodies and e.g. the users of a batch. With
+     * <code>validation.compiled</code> the DTO's are validated by validators compiled at startup.
+     */
+    @Bean
+    public LocalValidatorFactoryBean validator() {
+        if (environment.getProperty("validation.compiled", Boolean.class, false)) {
+            return new CompiledValidator(CreateUserDTO.class, UserDTO.class);
+        }
+        return new LocalValidatorFactoryBean();
+    }
+
+    /**
+     * Bodies of at least <code>compression.threshold</code> bytes are compressed. The compressed bodies of responses with
+     * an ETag are cached up to a total of <code>compression.cache.bytes</code>, 0 disables the cache.
+     */
+    @Bean
+    public CompressionFilter compressionFilter() {
+        return new CompressionFilter(environment.getProperty("compression.threshold", Integer.class, CompressionFilter.DEFAULT_THRESHOLD),
+                environment.getProperty("compression.cache.bytes", Long.class, CompressionFilter.DEFAULT_CACHE_BYTES));
+    }
+
+    /**
+     * Blacklists the passwords of the index in <code>security.password-blacklist.index</code>, built with
+     * {@link PasswordBlacklist#buildIndex(java.nio.file.Path, java.nio.file.Path)}, which is checked for a replacement
+     * every <code>security.password-blacklist.reload-seconds</code>. Without an index the 100 most used passwords are
+     * blacklisted.
+     */
+    @Bean(destroyMethod = "close")
+    public PasswordBlacklist passwordBlacklist() throws IOException {
+        String index = environment.getProperty("security.password-blacklist.index");
+        if (index == null) {
+            return new PasswordBlacklist();
+        }
+        return new PasswordBlacklist(Paths.get(index), environment.getProperty("security.password-blacklist.reload-seconds", Integer.class, 60));
+    }
+
+    /**
+     * With <code>users.store=journal</code> the users are kept in <code>users.journal.directory</code> and survive a
+     * restart, a snapshot is taken every <code>users.journal.snapshot-records</code> changes. With
+     * <code>users.store=jdbc</code> they are kept in the database of {@link #userDataSource()} and read
+     * <code>users.jdbc.fetch-size</code> rows at a time. By default the users are only kept in memory.
+     */
+    @Bean
+    public UserRepository userRepository(PasswordEncoder passwordEncoder) {
+        String store = environment.getProperty("users.store", "memory");
+        switch (store) {
+        case "memory":
+            return new InMemoryUserRepository(passwordEncoder);
+        case "journal":
+            String directory = environment.getProperty("users.journal.directory", System.getProperty("java.io.tmpdir") + "/rest-users");
+            return new JournaledUserRepository(Paths.get(directory),
+                    environment.getProperty("users.journal.snapshot-records", Integer.class, 10000), passwordEncoder);
+        case "jdbc":
+            return new JdbcUserRepository(userDataSource(),
+                    environment.getProperty("users.jdbc.fetch-size", Integer.class, JdbcUserRepository.DEFAULT_FETCH_SIZE), passwordEncoder);
+        default:
+            throw new IllegalStateException("Unknown users.store " + store);
+        }
+    }
+
+    /**
+     * The connection pool of <code>users.store=jdbc</code>, only created when used. It connects to
+     * <code>users.jdbc.url</code>, an in-process H2 database by default, and caches up to
+     * <code>users.jdbc.statement-cache</code> prepared statements per connection.
+     */
+    @Bean(destroyMethod = "close")
+    @Lazy
+    public org.apache.tomcat.jdbc.pool.DataSource userDataSource() {
+        PoolProperties properties = new PoolProperties();
+        properties.setUrl(environment.getProperty("users.jdbc.url", "jdbc:h2:mem:users;DB_CLOSE_DELAY=-1"));
+        properties.setDriverClassName(environment.getProperty("users.jdbc.driver", "org.h2.Driver"));
+        properties.setUsername(environment.getProperty("users.jdbc.username", "sa"));
+        properties.setPassword(environment.getProperty("users.jdbc.password", ""));
+        int poolSize = environment.getProperty("users.jdbc.pool-size", Integer.class, 10);
+        properties.setMaxActive(poolSize);
+        properties.setMaxIdle(poolSize);
+        properties.setInitialSize(Math.min(2, poolSize));
+        properties.setTestOnBorrow(true);
+        properties.setValidationQuery("SELECT 1");
+        properties.setValidationInterval(30000L);
+        properties.setJdbcInterceptors("StatementCache(prepared=true,callable=false,max="
+                + environment.getProperty("users.jdbc.statement-cache", Integer.class, 50) + ")");
+        return new org.apache.tomcat.jdbc.pool.DataSource(properties);
+    }
+
 }
@@ -1,7 +1,9 @@
 package nl.fortytwo.rest;
 
+import javax.servlet.Filter;
 import javax.servlet.ServletRegistration.Dynamic;
 
+import org.springframework.web.filter.DelegatingFilterProxy;
 import org.springframework.web.servlet.support.AbstractAnnotationConfigDispatcherServletInitializer;
 
 public class DispatcherServletInitializer extends AbstractAnnotationConfigDispatcherServletInitializer {
@@ -21,6 +23,14 @@ public class DispatcherServletInitializer extends AbstractAnnotationConfigDispat
         return new String[] { "/*" };
     }
 
+    /**
+     * Compresses the responses of the dispatcher servlet, see CompressionFilter.
+     */
+    @Override
+    protected Filter[] getServletFilters() {
+        return new Filter[] { new DelegatingFilterProxy("compressionFilter") };
+    }
+
     @Override
     protected void customizeRegistration(Dynamic registration) {
         registration.setInitParameter("dispatchOptionsRequest", "true");
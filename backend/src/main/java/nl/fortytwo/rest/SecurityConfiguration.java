@@ -1,9 +1,22 @@
 package nl.fortytwo.rest;
 
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
 import org.springframework.http.HttpMethod;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
@@ -11,34 +24,87 @@ import org.springframework.security.config.annotation.method.configuration.Globa
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.authentication.AnonymousAuthenticationFilter;
 import org.springframework.security.web.authentication.logout.HttpStatusReturningLogoutSuccessHandler;
+import org.springframework.security.web.context.SecurityContextPersistenceFilter;
 import org.springframework.security.web.csrf.CsrfFilter;
 import org.springframework.security.web.csrf.CsrfTokenRepository;
-import org.springframework.security.web.csrf.HttpSessionCsrfTokenRepository;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 
+import nl.fortytwo.rest.security.AuditLog;
+import nl.fortytwo.rest.security.CalibratedPasswordEncoder;
+import nl.fortytwo.rest.security.CookieSecurityContextRepository;
+import nl.fortytwo.rest.security.EncryptedCookieSessionStore;
+import nl.fortytwo.rest.security.FileSessionStore;
+import nl.fortytwo.rest.security.HmacCsrfTokenRepository;
+import nl.fortytwo.rest.security.InMemorySessionStore;
+import nl.fortytwo.rest.security.LoginRateLimiter;
+import nl.fortytwo.rest.security.LoginThrottle;
+import nl.fortytwo.rest.security.PasswordHashUpgrader;
+import nl.fortytwo.rest.security.PrincipalRevalidationFilter;
 import nl.fortytwo.rest.security.RestAccessDeniedHandler;
 import nl.fortytwo.rest.security.RestAuthenticationFilter;
+import nl.fortytwo.rest.security.SessionCookieCipher;
+import nl.fortytwo.rest.security.SessionStore;
 import nl.fortytwo.rest.security.SpringUserDetailsService;
 import nl.fortytwo.rest.security.XsrfHeaderFilter;
 import nl.fortytwo.rest.user.PrincipalService;
+import nl.fortytwo.rest.util.JsonCodec;
 
 @Configuration
 @EnableWebSecurity
 @EnableGlobalMethodSecurity(securedEnabled = true)
 public class SecurityConfiguration extends GlobalMethodSecurityConfiguration {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(SecurityConfiguration.class);
+
+    @Autowired
+    private Environment environment;
+
     @Override
     protected void configure(AuthenticationManagerBuilder auth) throws Exception {
         auth.userDetailsService(userDetailsService()).passwordEncoder(passwordEncoder());
     }
 
+    /**
+     * The BCrypt cost is either fixed using <code>security.bcrypt.strength</code> or calibrated at startup to the highest
+     * cost that hashes within <code>security.bcrypt.target-millis</code> on this machine.
+     */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public CalibratedPasswordEncoder passwordEncoder() {
+        Integer strength = environment.getProperty("security.bcrypt.strength", Integer.class);
+        if (strength != null) {
+            return new CalibratedPasswordEncoder(strength);
+        }
+        long targetMillis = environment.getProperty("security.bcrypt.target-millis", Long.class, 250L);
+        return CalibratedPasswordEncoder.calibrate(targetMillis, CalibratedPasswordEncoder.MIN_STRENGTH, CalibratedPasswordEncoder.MAX_STRENGTH);
+    }
+
+    /**
+     * Dedicated pool for the (deliberately slow) BCrypt work, sized to the number of cores. The queue is bounded so that a
+     * login storm is rejected instead of piling up.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService passwordHashExecutor() {
+        int threads = environment.getProperty("security.bcrypt.threads", Integer.class, Runtime.getRuntime().availableProcessors());
+        int queueSize = environment.getProperty("security.bcrypt.queue-size", Integer.class, 256);
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize),
+                new CustomizableThreadFactory("bcrypt-"));
+    }
+
+    /**
+     * Hashes the passwords of a batch of new users in parallel. Its parallelism is limited to
+     * <code>security.bcrypt.batch-threads</code>, the number of cores by default, however many batches are submitted.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool passwordBatchPool() {
+        return new ForkJoinPool(environment.getProperty("security.bcrypt.batch-threads", Integer.class, Runtime.getRuntime().availableProcessors()));
+    }
+
+    @Bean
+    public PasswordHashUpgrader passwordHashUpgrader(PrincipalService principalService) {
+        return new PasswordHashUpgrader(passwordEncoder(), passwordHashExecutor(), principalService);
     }
 
     @Bean
@@ -59,14 +125,26 @@ public class SecurityConfiguration extends GlobalMethodSecurityConfiguration {
         private AuthenticationManager authenticationManager;
         @Autowired
         private PrincipalService principalService;
+        @Autowired
+        private ExecutorService passwordHashExecutor;
+        @Autowired
+        private PasswordHashUpgrader passwordHashUpgrader;
+        @Autowired
+        private JsonCodec jsonCodec;
+        @Autowired
+        private AuditLog auditLog;
+        @Autowired
+        private Environment environment;
 
         @Override
         protected void configure(HttpSecurity http) throws Exception {
+            RestAccessDeniedHandler accessDeniedHandler = new RestAccessDeniedHandler();
+            accessDeniedHandler.setAuditLog(auditLog);
             http.requiresChannel().anyRequest().requiresSecure()
                 .and()
                     .exceptionHandling()
-                        .accessDeniedHandler(new RestAccessDeniedHandler())
-                        .authenticationEntryPoint(new RestAccessDeniedHandler())
+                        .accessDeniedHandler(accessDeniedHandler)
+                        .authenticationEntryPoint(accessDeniedHandler)
                 .and()
                     .addFilterBefore(authenticationFilter(), AnonymousAuthenticationFilter.class)
                     .authorizeRequests()
@@ -80,18 +158,117 @@ public class SecurityConfiguration extends GlobalMethodSecurityConfiguration {
                     .csrf().csrfTokenRepository(csrfTokenRepository())
                 .and()
                     .addFilterAfter(new XsrfHeaderFilter(), CsrfFilter.class);
+
+            String sessionMode = environment.getProperty("security.session.mode", "http");
+            if (!"http".equals(sessionMode)) {
+                http.securityContext().securityContextRepository(cookieSecurityContextRepository(sessionMode))
+                    .and()
+                        .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS);
+            } else {
+                http.addFilterAfter(new PrincipalRevalidationFilter(principalService,
+                        environment.getProperty("security.session.revalidate-millis", Long.class, 60000L)), SecurityContextPersistenceFilter.class);
+            }
+        }
+
+        /**
+         * The session mode selects where the state referenced by the session cookie is kept: in the cookie itself
+         * (<code>cookie</code>), in memory of this node (<code>memory</code>) or in a directory that may be shared between
+         * nodes (<code>file</code>).
+         */
+        private CookieSecurityContextRepository cookieSecurityContextRepository(String sessionMode) {
+            long timeoutMillis = environment.getProperty("security.session.cookie.timeout-millis", Long.class, 1800000L);
+            SessionStore sessionStore;
+            switch (sessionMode) {
+            case "cookie":
+                sessionStore = new EncryptedCookieSessionStore(sessionCookieCipher());
+                break;
+            case "memory":
+                sessionStore = new InMemorySessionStore(timeoutMillis);
+                break;
+            case "file":
+                sessionStore = fileSessionStore();
+                break;
+            default:
+                throw new IllegalStateException("Unknown security.session.mode " + sessionMode);
+            }
+            CookieSecurityContextRepository repository = new CookieSecurityContextRepository(sessionStore, principalService);
+            repository.setRevalidateMillis(environment.getProperty("security.session.cookie.revalidate-millis", Long.class, 60000L));
+            repository.setTimeoutMillis(timeoutMillis);
+            return repository;
         }
 
+        /**
+         * A bean of its own, so the background sweep of the store stops when the context is closed.
+         */
+        @Bean(destroyMethod = "close")
+        @Lazy
+        public FileSessionStore fileSessionStore() {
+            String directory = environment.getProperty("security.session.store.directory",
+                    System.getProperty("java.io.tmpdir") + "/rest-sessions");
+            return new FileSessionStore(Paths.get(directory),
+                    environment.getProperty("security.session.cookie.timeout-millis", Long.class, 1800000L),
+                    environment.getProperty("security.session.store.sweep-millis", Long.class, 60000L));
+        }
+
+        /**
+         * Keys are configured as <code>id:base64key</code> pairs in <code>security.session.cookie.keys</code>, the key
+         * used for new cookies first. All nodes must share the same keys.
+         */
+        private SessionCookieCipher sessionCookieCipher() {
+            String keys = environment.getProperty("security.session.cookie.keys");
+            if (keys == null) {
+                LOGGER.warn("No security.session.cookie.keys configured, sessions are only valid on this node until it restarts");
+                return SessionCookieCipher.withRandomKey();
+            }
+            return SessionCookieCipher.fromSpecification(keys);
+        }
+
+        /**
+         * The key signing the XSRF tokens is configured (base64) in <code>security.csrf.key</code>. All nodes must share
+         * the same key.
+         */
         private CsrfTokenRepository csrfTokenRepository() {
-            HttpSessionCsrfTokenRepository repository = new HttpSessionCsrfTokenRepository();
+            String key = environment.getProperty("security.csrf.key");
+            HmacCsrfTokenRepository repository;
+            if (key == null) {
+                LOGGER.warn("No security.csrf.key configured, XSRF tokens are only valid on this node until it restarts");
+                repository = HmacCsrfTokenRepository.withRandomKey();
+            } else {
+                repository = new HmacCsrfTokenRepository(Base64.getDecoder().decode(key));
+            }
             repository.setHeaderName("X-XSRF-TOKEN");
             return repository;
         }
 
+        /**
+         * By default an address may burst 20 attempts and then gets one every 3 seconds, an account may burst 10 attempts
+         * and then gets one per minute; in line with the account lockout.
+         */
+        private LoginThrottle loginThrottle() {
+            LoginRateLimiter addressLimiter = new LoginRateLimiter(
+                    environment.getProperty("security.login.throttle.address.capacity", Integer.class, 20),
+                    environment.getProperty("security.login.throttle.address.refill-millis", Long.class, 3000L));
+            LoginRateLimiter usernameLimiter = new LoginRateLimiter(
+                    environment.getProperty("security.login.throttle.username.capacity", Integer.class, 10),
+                    environment.getProperty("security.login.throttle.username.refill-millis", Long.class, 60000L));
+            return new LoginThrottle(addressLimiter, usernameLimiter);
+        }
+
         @Bean
         public RestAuthenticationFilter authenticationFilter() {
             AntPathRequestMatcher matcher = new AntPathRequestMatcher("/authentication", HttpMethod.POST.name());
-            return new RestAuthenticationFilter(matcher, authenticationManager, principalService);
+            RestAuthenticationFilter filter = new RestAuthenticationFilter(matcher, authenticationManager, principalService);
+            filter.setJsonCodec(jsonCodec);
+            filter.setPasswordHashUpgrader(passwordHashUpgrader);
+            filter.setAuditLog(auditLog);
+            if (environment.getProperty("security.login.throttle", Boolean.class, true)) {
+                filter.setLoginThrottle(loginThrottle());
+            }
+            if (environment.getProperty("security.login.async", Boolean.class, false)) {
+                filter.setAuthenticationExecutor(passwordHashExecutor);
+                filter.setAsyncTimeout(environment.getProperty("security.login.async-timeout", Long.class, 30000L));
+            }
+            return filter;
         }
 
     }
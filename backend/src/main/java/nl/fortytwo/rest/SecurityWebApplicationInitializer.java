@@ -1,7 +1,34 @@
 package nl.fortytwo.rest;
 
+import javax.servlet.FilterRegistration;
+import javax.servlet.ServletContext;
+
 import org.springframework.security.web.context.AbstractSecurityWebApplicationInitializer;
+import org.springframework.web.filter.DelegatingFilterProxy;
 
 public class SecurityWebApplicationInitializer extends AbstractSecurityWebApplicationInitializer {
 
-}
\ No newline at end of file
+    /**
+     * Answer CORS preflights before the security filters run, see CorsPreflightFilter. Request bodies are checked before
+     * the login reads them, see RequestBodyGuardFilter.
+     */
+    @Override
+    protected void beforeSpringSecurityFilterChain(ServletContext servletContext) {
+        insertFilter(servletContext, "corsPreflightFilter");
+        insertFilter(servletContext, "requestBodyGuardFilter");
+    }
+
+    /**
+     * Registers each proxy under the name of its bean, {@link #insertFilters} would name them all
+     * <code>delegatingFilterProxy</code>.
+     */
+    private void insertFilter(ServletContext servletContext, String beanName) {
+        FilterRegistration.Dynamic registration = servletContext.addFilter(beanName, new DelegatingFilterProxy(beanName));
+        if (registration == null) {
+            throw new IllegalStateException("Duplicate Filter registration for '" + beanName + "'.");
+        }
+        registration.setAsyncSupported(isAsyncSecuritySupported());
+        registration.addMappingForUrlPatterns(getSecurityDispatcherTypes(), false, "/*");
+    }
+
+}
@@ -0,0 +1,328 @@
+package nl.fortytwo.rest.security;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Writes the security events to a file of JSON lines, off the request thread. Recording an event only claims a slot in
+ * a lock-free ring buffer, a single daemon thread drains the buffer and writes the events in batches. When the buffer is
+ * full the event is dropped and counted rather than waiting for the disk, the writer then records how many were dropped.
+ *
+ * The file is rotated when it would grow beyond <code>maxFileBytes</code>: <code>audit.log</code> becomes
+ * <code>audit.log.1</code>, and so on up to <code>maxFiles</code> old files.
+ */
+public class AuditLog implements Closeable {
+
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    public static final long DEFAULT_MAX_FILE_BYTES = 10L * 1024 * 1024;
+
+    public static final int DEFAULT_MAX_FILES = 10;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AuditLog.class);
+
+    private static final int BATCH_SIZE = 512;
+
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10L);
+
+    public enum Type {
+        LOGIN_SUCCEEDED, LOGIN_FAILED, LOGIN_THROTTLED, UNAUTHORIZED, ACCESS_DENIED, USER_CREATED, EVENTS_DROPPED
+    }
+
+    private final Path file;
+
+    private final long maxFileBytes;
+
+    private final int maxFiles;
+
+    private final RingBuffer buffer;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Thread writer;
+
+    private volatile boolean closed;
+
+    // Only used by the writer.
+    private final StringBuilder line = new StringBuilder(256);
+
+    private OutputStream out;
+
+    private long size;
+
+    private long reportedDropped;
+
+    /**
+     * @param file the audit file, its directory is created if it does not exist.
+     * @param capacity the number of events the buffer holds, rounded up to a power of two.
+     */
+    public AuditLog(Path file, int capacity, long maxFileBytes, int maxFiles) {
+        this.file = file;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        this.buffer = new RingBuffer(capacity);
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            open();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not open audit log " + file, ex);
+        }
+        writer = new Thread(this::write, "audit-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Records an event of the principal in the current security context.
+     */
+    public void record(Type type, String detail) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        record(type, authentication == null ? null : authentication.getName(), null, detail);
+    }
+
+    /**
+     * Records an event without waiting, or drops it if the buffer is full.
+     *
+     * @param principal the user name, may be null.
+     * @param address the remote address, may be null.
+     * @param detail e.g. the reason of a failure, may be null.
+     * @return false if the event was dropped.
+     */
+    public boolean record(Type type, String principal, String address, String detail) {
+        if (closed || !buffer.offer(new Event(System.currentTimeMillis(), type, principal, address, detail))) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of events dropped since the start.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes the events recorded so far, and closes the file.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write() {
+        while (true) {
+            boolean closing = closed;
+            int written = 0;
+            try {
+                Event event;
+                while (written < BATCH_SIZE && (event = buffer.poll()) != null) {
+                    append(event);
+                    written++;
+                }
+                long droppedNow = dropped.get();
+                if (droppedNow != reportedDropped && (written == 0 || closing)) {
+                    append(new Event(System.currentTimeMillis(), Type.EVENTS_DROPPED, null, null,
+                            String.valueOf(droppedNow - reportedDropped)));
+                    reportedDropped = droppedNow;
+                    written++;
+                }
+                if (written > 0) {
+                    out.flush();
+                }
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.error("Could not write to audit log {}", file, ex);
+            }
+            if (closing && written == 0) {
+                break;
+            }
+            if (written < BATCH_SIZE) {
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+        }
+        try {
+            out.close();
+        } catch (IOException ex) {
+            LOGGER.error("Could not close audit log {}", file, ex);
+        }
+    }
+
+    private void append(Event event) throws IOException {
+        line.setLength(0);
+        line.append("{\"time\":\"").append(Instant.ofEpochMilli(event.time)).append("\",\"type\":\"").append(event.type.name()).append('"');
+        appendField("principal", event.principal);
+        appendField("address", event.address);
+        appendField("detail", event.detail);
+        line.append("}\n");
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        if (size > 0L && size + bytes.length > maxFileBytes) {
+            rotate();
+        }
+        out.write(bytes);
+        size += bytes.length;
+    }
+
+    private void appendField(String name, String value) {
+        if (value == null) {
+            return;
+        }
+        line.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    private void rotate() throws IOException {
+        out.close();
+        Files.deleteIfExists(rotated(maxFiles));
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            if (Files.exists(rotated(i))) {
+                Files.move(rotated(i), rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxFiles > 0) {
+            Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(file);
+        }
+        open();
+    }
+
+    private Path rotated(int index) {
+        return Paths.get(file + "." + index);
+    }
+
+    private void open() throws IOException {
+        out = new BufferedOutputStream(Files.newOutputStream(file, CREATE, APPEND), 64 * 1024);
+        size = Files.size(file);
+    }
+
+    private static final class Event {
+
+        private final long time;
+
+        private final Type type;
+
+        private final String principal;
+
+        private final String address;
+
+        private final String detail;
+
+        Event(long time, Type type, String principal, String address, String detail) {
+            this.time = time;
+            this.type = type;
+            this.principal = principal;
+            this.address = address;
+            this.detail = detail;
+        }
+    }
+
+    /**
+     * Bounded queue of many producers and a single consumer. Every slot has a sequence number that tells whether it is
+     * free for the producer that claimed position <code>n</code> (sequence <code>n</code>) or holds the event of that
+     * position for the consumer (sequence <code>n + 1</code>). A producer claims a position with a CAS on the tail and
+     * never waits: if the slot has not been consumed yet, the buffer is full.
+     */
+    static final class RingBuffer {
+
+        private final int mask;
+
+        private final AtomicReferenceArray<Object> slots;
+
+        private final AtomicLongArray sequences;
+
+        private final AtomicLong tail = new AtomicLong();
+
+        // Only used by the consumer.
+        private long head;
+
+        RingBuffer(int capacity) {
+            int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+            this.mask = size - 1;
+            this.slots = new AtomicReferenceArray<>(size);
+            this.sequences = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        /**
+         * @return false if the buffer is full.
+         */
+        boolean offer(Object element) {
+            long position = tail.get();
+            while (true) {
+                int index = (int) position & mask;
+                long available = sequences.get(index) - position;
+                if (available == 0L) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        slots.lazySet(index, element);
+                        sequences.lazySet(index, position + 1);
+                        return true;
+                    }
+                    position = tail.get();
+                } else if (available < 0L) {
+                    return false;
+                } else {
+                    position = tail.get();
+                }
+            }
+        }
+
+        /**
+         * @return the oldest element, or null if there is none.
+         */
+        @SuppressWarnings("unchecked")
+        <T> T poll() {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                return null;
+            }
+            T element = (T) slots.get(index);
+            slots.lazySet(index, null);
+            sequences.lazySet(index, head + mask + 1);
+            head++;
+            return element;
+        }
+
+    }
+
+}
@@ -3,11 +3,13 @@ package nl.fortytwo.rest.security;
 import java.security.Principal;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 
+import nl.fortytwo.rest.security.SpringUserDetailsService.UserDetailsAdapter;
 import nl.fortytwo.rest.user.PrincipalService;
 import nl.fortytwo.rest.user.dto.UserDTO;
 
@@ -25,6 +27,9 @@ public class AuthenticationController {
     @ResponseBody
     @RequestMapping(method = { RequestMethod.POST, RequestMethod.GET })
     public UserDTO authenticate(Principal principal) {
+        if (principal instanceof Authentication && ((Authentication) principal).getPrincipal() instanceof UserDetailsAdapter) {
+            return ((UserDetailsAdapter) ((Authentication) principal).getPrincipal()).getSnapshot();
+        }
         return UserDTO.toResultDTO(principalService.findByEmail(principal == null ? null : principal.getName()));
     }
 
@@ -0,0 +1,110 @@
+package nl.fortytwo.rest.security;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * BCrypt PasswordEncoder whose cost (log rounds) is chosen for the hardware the application runs on.
+ *
+ * Matching works for hashes of any cost, so existing passwords keep working when the cost changes. Use
+ * {@link #needsRehash(String)} after a successful login to find out if the stored hash should be upgraded.
+ */
+public class CalibratedPasswordEncoder implements PasswordEncoder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CalibratedPasswordEncoder.class);
+
+    /**
+     * Never go below the Spring Security default, however slow the machine is.
+     */
+    public static final int MIN_STRENGTH = 10;
+
+    public static final int MAX_STRENGTH = 16;
+
+    private final int strength;
+
+    private final BCryptPasswordEncoder delegate;
+
+    public CalibratedPasswordEncoder(int strength) {
+        this.strength = strength;
+        this.delegate = new BCryptPasswordEncoder(strength);
+    }
+
+    /**
+     * Measures the time a single hash takes for increasing costs and returns an encoder with the highest cost that stays
+     * within the target. Each extra log round doubles the time, so the measurement stops at the first cost that exceeds it.
+     * @param targetMillis the maximum time a single hash may take.
+     * @param minStrength the lowest acceptable cost, used even if it exceeds the target.
+     * @param maxStrength the highest cost to consider.
+     * @return the calibrated encoder.
+     */
+    public static CalibratedPasswordEncoder calibrate(long targetMillis, int minStrength, int maxStrength) {
+        // Warm up the JIT so the first measurement is not inflated.
+        BCrypt.hashpw("calibration", BCrypt.gensalt(4));
+
+        int strength = minStrength;
+        for (int candidate = minStrength; candidate <= maxStrength; candidate++) {
+            long millis = measure(candidate);
+            LOGGER.info("BCrypt cost {} takes {} ms", candidate, millis);
+            if (millis > targetMillis) {
+                break;
+            }
+            strength = candidate;
+        }
+        LOGGER.info("Using BCrypt cost {} for a target of {} ms per hash", strength, targetMillis);
+        return new CalibratedPasswordEncoder(strength);
+    }
+
+    private static long measure(int strength) {
+        long start = System.nanoTime();
+        BCrypt.hashpw("calibration", BCrypt.gensalt(strength));
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    /**
+     * @param encodedPassword a stored BCrypt hash.
+     * @return true if the hash was made with a cost other than the current one.
+     */
+    public boolean needsRehash(String encodedPassword) {
+        return encodedPassword != null && costOf(encodedPassword) != strength;
+    }
+
+    /**
+     * @param encodedPassword a BCrypt hash in the modular crypt format, e.g. <code>$2a$10$...</code>.
+     * @return the cost (log rounds) of the hash or -1 if it is not a BCrypt hash.
+     */
+    static int costOf(String encodedPassword) {
+        if (encodedPassword.length() < 7 || encodedPassword.charAt(0) != '$' || encodedPassword.charAt(1) != '2') {
+            return -1;
+        }
+        int offset = encodedPassword.charAt(2) == '$' ? 3 : 4;
+        if (encodedPassword.charAt(offset + 2) != '$') {
+            return -1;
+        }
+        char tens = encodedPassword.charAt(offset);
+        char units = encodedPassword.charAt(offset + 1);
+        if (!Character.isDigit(tens) || !Character.isDigit(units)) {
+            return -1;
+        }
+        return (tens - '0') * 10 + (units - '0');
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return delegate.matches(rawPassword, encodedPassword);
+    }
+
+}
@@ -0,0 +1,204 @@
+package nl.fortytwo.rest.security;
+
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.context.HttpRequestResponseHolder;
+import org.springframework.security.web.context.SaveContextOnUpdateOrErrorResponseWrapper;
+import org.springframework.security.web.context.SecurityContextRepository;
+import org.springframework.web.util.WebUtils;
+
+import nl.fortytwo.rest.security.SpringUserDetailsService.UserDetailsAdapter;
+import nl.fortytwo.rest.user.PrincipalService;
+import nl.fortytwo.rest.user.User;
+
+/**
+ * Keeps the security context in a SessionStore referenced by a http-only session cookie instead of the HttpSession, so
+ * that any node can serve any request without sticky sessions or session replication. With the
+ * EncryptedCookieSessionStore the encrypted state is the cookie itself and nothing is stored on the server.
+ *
+ * The state only holds the email, the role, the version of the user and the time the user was last validated (see
+ * SecurityContextCodec). Once that is longer ago than the revalidation interval, the user is looked up again through the
+ * PrincipalService and the session is renewed; a user that has been removed or deactivated is logged out at that point.
+ * If the version of the user differs from the one in the state, the user has changed (e.g. its role) since the session
+ * was issued, and the session gets a new id like on login. A session that has not
+ * been renewed within the timeout is ignored, which makes the timeout behave like the idle timeout of an HttpSession.
+ *
+ * Between revalidations the principal is built from the state alone, its User only carries the email and the role.
+ */
+public class CookieSecurityContextRepository implements SecurityContextRepository {
+
+    public static final String COOKIE_NAME = "SESSION";
+
+    private static final String LOADED_ATTRIBUTE = CookieSecurityContextRepository.class.getName() + ".LOADED";
+
+    private static final String RENEW_ATTRIBUTE = CookieSecurityContextRepository.class.getName() + ".RENEW";
+
+    private static final long DEFAULT_REVALIDATE_MILLIS = 60000L;
+
+    private static final long DEFAULT_TIMEOUT_MILLIS = 1800000L;
+
+    private final SessionStore sessionStore;
+
+    private final PrincipalService principalService;
+
+    private final LongSupplier clock;
+
+    private final AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+
+    private long revalidateMillis = DEFAULT_REVALIDATE_MILLIS;
+
+    private long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+    public CookieSecurityContextRepository(SessionStore sessionStore, PrincipalService principalService) {
+        this(sessionStore, principalService, System::currentTimeMillis);
+    }
+
+    CookieSecurityContextRepository(SessionStore sessionStore, PrincipalService principalService, LongSupplier clock) {
+        this.sessionStore = sessionStore;
+        this.principalService = principalService;
+        this.clock = clock;
+    }
+
+    /**
+     * @param revalidateMillis the maximum time the session is trusted before the user is looked up again.
+     */
+    public void setRevalidateMillis(long revalidateMillis) {
+        this.revalidateMillis = revalidateMillis;
+    }
+
+    /**
+     * @param timeoutMillis the time after which a session that has not been renewed is no longer accepted.
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public SecurityContext loadContext(HttpRequestResponseHolder holder) {
+        HttpServletRequest request = holder.getRequest();
+        holder.setResponse(new SaveToCookieResponseWrapper(holder.getResponse(), request));
+
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        Cookie cookie = WebUtils.getCookie(request, COOKIE_NAME);
+        if (cookie != null) {
+            Authentication authentication = read(cookie.getValue(), request);
+            context.setAuthentication(authentication);
+            request.setAttribute(LOADED_ATTRIBUTE, authentication);
+        }
+        return context;
+    }
+
+    @Override
+    public void saveContext(SecurityContext context, HttpServletRequest request, HttpServletResponse response) {
+        if (response instanceof SaveToCookieResponseWrapper && ((SaveToCookieResponseWrapper) response).isContextSaved()) {
+            // Already written when the response was committed.
+            return;
+        }
+        write(context, request, response);
+    }
+
+    @Override
+    public boolean containsContext(HttpServletRequest request) {
+        return WebUtils.getCookie(request, COOKIE_NAME) != null;
+    }
+
+    private Authentication read(String sessionId, HttpServletRequest request) {
+        SecurityContextCodec.State state = SecurityContextCodec.decode(sessionStore.load(sessionId));
+        long now = clock.getAsLong();
+        if (state == null || now - state.getValidatedAt() > timeoutMillis) {
+            return null;
+        }
+        User user;
+        long validatedAt = state.getValidatedAt();
+        if (now - validatedAt >= revalidateMillis) {
+            Optional<User> current = principalService.findByEmail(state.getEmail());
+            if (!current.isPresent() || !current.get().isActive()) {
+                return null;
+            }
+            user = current.get();
+            validatedAt = now;
+            // Whether the user changed since the state was written.
+            request.setAttribute(RENEW_ATTRIBUTE, user.getVersion() != state.getVersion());
+        } else {
+            user = new User(state.getEmail(), state.getRole());
+        }
+        UserDetailsAdapter principal = new UserDetailsAdapter(user, validatedAt);
+        return new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+    }
+
+    private void write(SecurityContext context, HttpServletRequest request, HttpServletResponse response) {
+        Authentication authentication = context.getAuthentication();
+        Cookie current = WebUtils.getCookie(request, COOKIE_NAME);
+        if (authentication == null || trustResolver.isAnonymous(authentication)) {
+            if (current != null) {
+                // Logged out, or the session was no longer accepted.
+                sessionStore.remove(current.getValue());
+                response.addCookie(cookie(request, "", 0));
+            }
+            return;
+        }
+        boolean loaded = authentication == request.getAttribute(LOADED_ATTRIBUTE);
+        Boolean changed = (Boolean) request.getAttribute(RENEW_ATTRIBUTE);
+        if (loaded && changed == null || !(authentication.getPrincipal() instanceof UserDetailsAdapter)) {
+            return;
+        }
+        byte[] state = SecurityContextCodec.encode(((UserDetailsAdapter) authentication.getPrincipal()).getUser(), clock.getAsLong());
+        if (loaded && !changed) {
+            String sessionId = sessionStore.update(current.getValue(), state);
+            if (sessionId == null) {
+                response.addCookie(cookie(request, "", 0));
+            } else if (!sessionId.equals(current.getValue())) {
+                response.addCookie(cookie(request, sessionId, -1));
+            }
+        } else {
+            // A login, or a change of the user, always starts a new session, to prevent session fixation.
+            if (current != null) {
+                sessionStore.remove(current.getValue());
+            }
+            response.addCookie(cookie(request, sessionStore.create(state), -1));
+        }
+    }
+
+    /**
+     * The cookie is always secure, also when TLS is terminated by a proxy in front of the application.
+     */
+    private static Cookie cookie(HttpServletRequest request, String value, int maxAge) {
+        Cookie cookie = new Cookie(COOKIE_NAME, value);
+        cookie.setHttpOnly(true);
+        cookie.setSecure(true);
+        cookie.setPath(StringUtils.isEmpty(request.getContextPath()) ? "/" : request.getContextPath());
+        cookie.setMaxAge(maxAge);
+        return cookie;
+    }
+
+    /**
+     * Writes the cookie as soon as the response is committed, as it can no longer be added afterwards.
+     */
+    private final class SaveToCookieResponseWrapper extends SaveContextOnUpdateOrErrorResponseWrapper {
+
+        private final HttpServletRequest request;
+
+        private SaveToCookieResponseWrapper(HttpServletResponse response, HttpServletRequest request) {
+            super(response, true);
+            this.request = request;
+        }
+
+        @Override
+        protected void saveContext(SecurityContext context) {
+            write(context, request, (HttpServletResponse) getResponse());
+        }
+    }
+
+}
@@ -1,13 +1,8 @@
 package nl.fortytwo.rest.security;
 
-import java.util.Arrays;
-import java.util.List;
-
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
 
 /**
@@ -20,8 +15,6 @@ import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
  */
 public class CorsInterceptor extends HandlerInterceptorAdapter {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(CorsInterceptor.class);
-
     public static final String REQUEST_ORIGIN_NAME = "Origin";
 
     public static final String CREDENTIALS_NAME = "Access-Control-Allow-Credentials";
@@ -30,32 +23,28 @@ public class CorsInterceptor extends HandlerInterceptorAdapter {
     public static final String HEADERS_NAME = "Access-Control-Allow-Headers";
     public static final String MAX_AGE_NAME = "Access-Control-Max-Age";
 
-    private final List<String> origins;
+    private final CorsPolicyEngine policyEngine;
 
     /**
      * @param origins a comma separated list of allowed origins.
      */
     public CorsInterceptor(String origins) {
-        this.origins = Arrays.asList(origins.trim().split("( )*,( )*"));
+        this(new CorsPolicyEngine(new CorsPolicy(origins)));
+    }
+
+    /**
+     * @param policyEngine the policies per path.
+     */
+    public CorsInterceptor(CorsPolicyEngine policyEngine) {
+        this.policyEngine = policyEngine;
     }
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
-        response.setHeader(CREDENTIALS_NAME, "true");
-        response.setHeader(METHODS_NAME, "GET, OPTIONS, POST, PUT, PATCH, DELETE");
-        response.setHeader(HEADERS_NAME, "Origin, X-Requested-With, Content-Type, Accept, X-XSRF-TOKEN");
-        response.setHeader(MAX_AGE_NAME, "3600");
-
-        String origin = request.getHeader(REQUEST_ORIGIN_NAME);
-        if (origins.contains(origin)) {
-            response.setHeader(ORIGIN_NAME, origin);
-            return true; // Proceed
-        } else {
-            LOGGER.warn("Attempted access from non-allowed origin: {}", origin);
-            // Include an origin to provide a clear browser error
-            response.setHeader(ORIGIN_NAME, origins.iterator().next());
-            return false; // No need to find handler
-        }
+        CorsPolicy.Decision decision = policyEngine.decide(request);
+        decision.apply(response);
+        // No need to find a handler for a non-allowed origin.
+        return decision.isAllowed();
     }
 
-}
\ No newline at end of file
+}
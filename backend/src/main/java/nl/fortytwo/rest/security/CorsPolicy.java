@@ -0,0 +1,162 @@
+package nl.fortytwo.rest.security;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A compiled Cross Origin Resource Sharing policy: the allowed origins and the headers to send.
+ *
+ * Origins are either exact (<code>https://app.42.nl</code>), looked up in a hash set, or wildcard subdomains
+ * (<code>https://*.42.nl</code>), looked up per parent domain of the requesting host. The decision for an allowed origin
+ * is cached, so its header values are only built once. Denials are not cached: any client can send arbitrary origins,
+ * which would otherwise evict the allowed ones, and the lookup that denies them is cheap.
+ */
+public class CorsPolicy {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CorsPolicy.class);
+
+    public static final String DEFAULT_METHODS = "GET, OPTIONS, POST, PUT, PATCH, DELETE";
+
+    public static final String DEFAULT_HEADERS = "Origin, X-Requested-With, Content-Type, Accept, X-XSRF-TOKEN";
+
+    public static final long DEFAULT_MAX_AGE = 3600L;
+
+    private static final String WILDCARD = "*";
+
+    private static final long MAX_CACHED_ORIGINS = 10000L;
+
+    private final Set<String> exactOrigins = new HashSet<>();
+
+    /**
+     * Wildcard origins without the asterisk, e.g. <code>https://.42.nl</code>.
+     */
+    private final Set<String> wildcardOrigins = new HashSet<>();
+
+    private final String allowCredentials;
+
+    private final String allowMethods;
+
+    private final String allowHeaders;
+
+    private final String maxAge;
+
+    private final Decision denied;
+
+    private final Cache<String, Decision> decisions;
+
+    /**
+     * @param origins a comma separated list of allowed origins, the default methods, headers and max age are used.
+     */
+    public CorsPolicy(String origins) {
+        this(origins, DEFAULT_METHODS, DEFAULT_HEADERS, true, DEFAULT_MAX_AGE);
+    }
+
+    /**
+     * @param origins a comma separated list of allowed origins, which may contain wildcard subdomains.
+     * @param allowMethods the value of the Access-Control-Allow-Methods header.
+     * @param allowHeaders the value of the Access-Control-Allow-Headers header.
+     * @param allowCredentials whether cookies may be sent.
+     * @param maxAgeSeconds the time a browser may cache the outcome of a preflight.
+     */
+    public CorsPolicy(String origins, String allowMethods, String allowHeaders, boolean allowCredentials, long maxAgeSeconds) {
+        for (String origin : origins.trim().split("( )*,( )*")) {
+            int wildcard = origin.indexOf("://" + WILDCARD + ".");
+            if (wildcard >= 0) {
+                wildcardOrigins.add(origin.substring(0, wildcard + 3) + origin.substring(wildcard + 4));
+            } else {
+                exactOrigins.add(origin);
+            }
+        }
+        this.allowCredentials = String.valueOf(allowCredentials);
+        this.allowMethods = allowMethods;
+        this.allowHeaders = allowHeaders;
+        this.maxAge = String.valueOf(maxAgeSeconds);
+        this.denied = new Decision(false, null);
+        this.decisions = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_ORIGINS).build();
+    }
+
+    /**
+     * @param origin the value of the Origin header, may be null.
+     * @return the (cached) decision for an allowed origin, or the shared denial.
+     */
+    public Decision decide(String origin) {
+        if (origin == null) {
+            return denied;
+        }
+        Decision decision = decisions.getIfPresent(origin);
+        if (decision == null) {
+            if (!isAllowed(origin)) {
+                LOGGER.debug("Attempted access from non-allowed origin: {}", origin);
+                return denied;
+            }
+            decision = new Decision(true, origin);
+            decisions.put(origin, decision);
+        }
+        return decision;
+    }
+
+    long cachedOrigins() {
+        return decisions.size();
+    }
+
+    private boolean isAllowed(String origin) {
+        if (exactOrigins.contains(origin)) {
+            return true;
+        }
+        int host = origin.indexOf("://");
+        if (host < 0 || wildcardOrigins.isEmpty()) {
+            return false;
+        }
+        String scheme = origin.substring(0, host + 3);
+        // Try every parent domain of the host: a.b.42.nl matches *.b.42.nl and *.42.nl (and *.nl).
+        for (int dot = origin.indexOf('.', host + 3); dot >= 0; dot = origin.indexOf('.', dot + 1)) {
+            if (dot > host + 3 && wildcardOrigins.contains(scheme + origin.substring(dot))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The outcome of the policy for one origin, including the precomputed header values.
+     */
+    public final class Decision {
+
+        private final boolean allowed;
+
+        private final String allowOrigin;
+
+        private Decision(boolean allowed, String allowOrigin) {
+            this.allowed = allowed;
+            this.allowOrigin = allowOrigin;
+        }
+
+        public boolean isAllowed() {
+            return allowed;
+        }
+
+        /**
+         * Adds the Access-Control headers to the response. A denial names no origin and allows no credentials: any
+         * origin it named, even the literal <code>null</code> of sandboxed and <code>data:</code> documents, could be
+         * used by an attacker.
+         */
+        public void apply(HttpServletResponse response) {
+            response.setHeader(CorsInterceptor.METHODS_NAME, allowMethods);
+            response.setHeader(CorsInterceptor.HEADERS_NAME, allowHeaders);
+            response.setHeader(CorsInterceptor.MAX_AGE_NAME, maxAge);
+            if (allowed) {
+                response.setHeader(CorsInterceptor.CREDENTIALS_NAME, allowCredentials);
+                response.setHeader(CorsInterceptor.ORIGIN_NAME, allowOrigin);
+            }
+        }
+    }
+
+}
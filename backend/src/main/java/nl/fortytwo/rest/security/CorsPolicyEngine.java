@@ -0,0 +1,76 @@
+package nl.fortytwo.rest.security;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Selects the CorsPolicy for a request by the longest matching path prefix, falling back to the default policy.
+ */
+public class CorsPolicyEngine {
+
+    private final CorsPolicy defaultPolicy;
+
+    private final List<PathPolicy> pathPolicies = new ArrayList<>();
+
+    public CorsPolicyEngine(CorsPolicy defaultPolicy) {
+        this.defaultPolicy = defaultPolicy;
+    }
+
+    /**
+     * @param pathPrefix the path (within the application) the policy applies to, e.g. <code>/public</code>.
+     * @param policy the policy for that path and everything below it.
+     * @return this engine.
+     */
+    public CorsPolicyEngine addPolicy(String pathPrefix, CorsPolicy policy) {
+        String prefix = pathPrefix.endsWith("/") ? pathPrefix.substring(0, pathPrefix.length() - 1) : pathPrefix;
+        pathPolicies.add(new PathPolicy(prefix, policy));
+        pathPolicies.sort(Comparator.comparingInt((PathPolicy pathPolicy) -> pathPolicy.prefix.length()).reversed());
+        return this;
+    }
+
+    /**
+     * @param request the request.
+     * @return the decision of the policy for the path of the request.
+     */
+    public CorsPolicy.Decision decide(HttpServletRequest request) {
+        return policyFor(request).decide(request.getHeader(CorsInterceptor.REQUEST_ORIGIN_NAME));
+    }
+
+    CorsPolicy policyFor(HttpServletRequest request) {
+        if (pathPolicies.isEmpty()) {
+            return defaultPolicy;
+        }
+        String uri = request.getRequestURI();
+        int offset = request.getContextPath().length();
+        for (PathPolicy pathPolicy : pathPolicies) {
+            if (pathPolicy.matches(uri, offset)) {
+                return pathPolicy.policy;
+            }
+        }
+        return defaultPolicy;
+    }
+
+    private static final class PathPolicy {
+
+        private final String prefix;
+
+        private final CorsPolicy policy;
+
+        private PathPolicy(String prefix, CorsPolicy policy) {
+            this.prefix = prefix;
+            this.policy = policy;
+        }
+
+        /**
+         * Matches the prefix itself and everything below it, but not <code>/publication</code> for <code>/public</code>.
+         */
+        private boolean matches(String uri, int offset) {
+            int end = offset + prefix.length();
+            return uri.startsWith(prefix, offset) && (uri.length() == end || uri.charAt(end) == '/');
+        }
+    }
+
+}
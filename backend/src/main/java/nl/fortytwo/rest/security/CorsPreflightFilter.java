@@ -0,0 +1,47 @@
+package nl.fortytwo.rest.security;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Answers CORS preflight requests straight from the CorsPolicyEngine. The filter is registered in front of the
+ * springSecurityFilterChain, so a preflight never touches the session, the XSRF token or the handler mappings.
+ *
+ * A preflight is an OPTIONS request with both an Origin and an Access-Control-Request-Method header. Any other
+ * OPTIONS request continues down the chain to the CorsController.
+ */
+public class CorsPreflightFilter extends OncePerRequestFilter {
+
+    public static final String REQUEST_METHOD_NAME = "Access-Control-Request-Method";
+
+    private final CorsPolicyEngine policyEngine;
+
+    public CorsPreflightFilter(CorsPolicyEngine policyEngine) {
+        this.policyEngine = policyEngine;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (!isPreflight(request)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        CorsPolicy.Decision decision = policyEngine.decide(request);
+        decision.apply(response);
+        response.setStatus(decision.isAllowed() ? HttpServletResponse.SC_NO_CONTENT : HttpServletResponse.SC_FORBIDDEN);
+    }
+
+    private static boolean isPreflight(HttpServletRequest request) {
+        return "OPTIONS".equals(request.getMethod())
+                && request.getHeader(CorsInterceptor.REQUEST_ORIGIN_NAME) != null
+                && request.getHeader(REQUEST_METHOD_NAME) != null;
+    }
+
+}
@@ -0,0 +1,35 @@
+package nl.fortytwo.rest.security;
+
+/**
+ * Stores the state of the session in the session cookie itself, encrypted and authenticated. Nothing is kept on the
+ * server, so every node can serve every request as long as they share the keys of the cipher.
+ */
+public class EncryptedCookieSessionStore implements SessionStore {
+
+    private final SessionCookieCipher cipher;
+
+    public EncryptedCookieSessionStore(SessionCookieCipher cipher) {
+        this.cipher = cipher;
+    }
+
+    @Override
+    public byte[] load(String sessionId) {
+        return cipher.open(sessionId);
+    }
+
+    @Override
+    public String create(byte[] state) {
+        return cipher.seal(state);
+    }
+
+    @Override
+    public String update(String sessionId, byte[] state) {
+        return cipher.seal(state);
+    }
+
+    @Override
+    public void remove(String sessionId) {
+        // Deleting the cookie is all there is to it.
+    }
+
+}
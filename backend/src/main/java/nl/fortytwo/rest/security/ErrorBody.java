@@ -0,0 +1,72 @@
+package nl.fortytwo.rest.security;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+/**
+ * A pre-encoded ErrorDto: the UTF-8 bytes of <code>{"error":"..."}</code>, written with a known Content-Length and a
+ * single buffer copy. The fixed messages of the security layer are encoded once and shared, as they are written for
+ * every rejected request (and so for every attempt during a credential stuffing attack).
+ */
+public final class ErrorBody {
+
+    private static final Map<String, ErrorBody> REGISTRY = new ConcurrentHashMap<>();
+
+    public static final ErrorBody PLEASE_LOGIN = register("Please Login.");
+
+    public static final ErrorBody AUTHENTICATION_FAILED = register("Authentication failed.");
+
+    public static final ErrorBody ACCESS_DENIED = register("Access Denied");
+
+    public static final ErrorBody LOGIN_FAILED = register("Login failed; Invalid userID or password");
+
+    public static final ErrorBody LOGIN_THROTTLED = register("Too many login attempts; Please try again later");
+
+    public static final ErrorBody LOGIN_UNAVAILABLE = register("Login temporarily unavailable; Please try again later");
+
+    public static final ErrorBody REQUEST_TOO_LARGE = register("Request body too large");
+
+    public static final ErrorBody CONTROL_CHARACTERS = register("Request body contains control characters");
+
+    private final byte[] bytes;
+
+    private ErrorBody(String error) {
+        String quoted = new String(JsonStringEncoder.getInstance().quoteAsString(error));
+        this.bytes = ("{\"error\":\"" + quoted + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ErrorBody register(String error) {
+        ErrorBody body = new ErrorBody(error);
+        REGISTRY.put(error, body);
+        return body;
+    }
+
+    /**
+     * @param error the error message.
+     * @return the registered body for a fixed message, any other message is encoded on the spot.
+     */
+    public static ErrorBody of(String error) {
+        ErrorBody body = REGISTRY.get(String.valueOf(error));
+        return body == null ? new ErrorBody(String.valueOf(error)) : body;
+    }
+
+    /**
+     * Writes the body, the status and content type are left to the caller.
+     */
+    public void writeTo(HttpServletResponse response) throws IOException {
+        response.setContentLength(bytes.length);
+        response.getOutputStream().write(bytes);
+        response.flushBuffer();
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+}
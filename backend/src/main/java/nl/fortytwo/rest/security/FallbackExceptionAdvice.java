@@ -2,7 +2,9 @@ package nl.fortytwo.rest.security;
 
 
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -12,6 +14,16 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 @ControllerAdvice
 public class FallbackExceptionAdvice {
 
+    private AuditLog auditLog;
+
+    /**
+     * @param auditLog records the denials of methods secured by the application.
+     */
+    @Autowired
+    public void setAuditLog(AuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
+
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     @ExceptionHandler(RuntimeException.class)
     public void handleRuntimeException(RuntimeException ex) {
@@ -27,7 +39,9 @@ public class FallbackExceptionAdvice {
     @ResponseStatus(HttpStatus.FORBIDDEN)
     @ExceptionHandler(AccessDeniedException.class)
     public void handleAccessDenied(AccessDeniedException ex) {
-        LoggerFactory.getLogger(getClass()).error("Access Denied.");
+        if (auditLog != null) {
+            auditLog.record(AuditLog.Type.ACCESS_DENIED, ex.getMessage());
+        }
     }
 
     @ResponseStatus(HttpStatus.BAD_REQUEST)
@@ -36,6 +50,15 @@ public class FallbackExceptionAdvice {
         LoggerFactory.getLogger(getClass()).error(ex.getMessage());
     }
 
+    /**
+     * A body that is not valid JSON, or does not fit the DTO. The message is not logged, it may quote the body.
+     */
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(HttpMessageNotReadableException.class)
+    public void handleMessageNotReadable(HttpMessageNotReadableException ex) {
+        LoggerFactory.getLogger(getClass()).error("Unreadable request body.");
+    }
+
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public void handleMethodArgument(MethodArgumentNotValidException ex) {
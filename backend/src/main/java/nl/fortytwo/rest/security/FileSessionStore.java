@@ -0,0 +1,183 @@
+package nl.fortytwo.rest.security;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Keeps every session in a file of its own in a directory. When the directory is shared by several nodes (e.g. a network
+ * mount) this acts as a local stand-in for a shared session store such as Redis or Memcached.
+ *
+ * A file holds the expiry time followed by the state. Files are written to a temporary file first and then moved into
+ * place, so a reader on another node never sees a partially written session. Expired sessions that are never loaded
+ * again are deleted by a background sweep of the directory.
+ */
+public class FileSessionStore implements SessionStore, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileSessionStore.class);
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+
+    private final long timeToLiveMillis;
+
+    private final LongSupplier clock;
+
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * @param directory the directory holding the session files, created if it does not exist.
+     * @param timeToLiveMillis the time a session is kept after it was last created or updated.
+     * @param sweepMillis the interval between sweeps of the expired sessions.
+     */
+    public FileSessionStore(Path directory, long timeToLiveMillis, long sweepMillis) {
+        this(directory, timeToLiveMillis, System::currentTimeMillis, sweepMillis);
+    }
+
+    /**
+     * @param sweepMillis the interval between sweeps of the expired sessions, 0 to only sweep on request.
+     */
+    FileSessionStore(Path directory, long timeToLiveMillis, LongSupplier clock, long sweepMillis) {
+        this.directory = directory;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.clock = clock;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not create session directory " + directory, ex);
+        }
+        if (sweepMillis > 0L) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("session-sweep-");
+            threadFactory.setDaemon(true);
+            this.sweeper = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            this.sweeper.scheduleWithFixedDelay(this::sweep, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.sweeper = null;
+        }
+    }
+
+    @Override
+    public byte[] load(String sessionId) {
+        if (!SessionIds.isValid(sessionId)) {
+            return null;
+        }
+        Path file = directory.resolve(sessionId);
+        byte[] content = read(file);
+        if (content == null || content.length < Long.BYTES) {
+            return null;
+        }
+        if (ByteBuffer.wrap(content).getLong() <= clock.getAsLong()) {
+            delete(file);
+            return null;
+        }
+        byte[] state = new byte[content.length - Long.BYTES];
+        System.arraycopy(content, Long.BYTES, state, 0, state.length);
+        return state;
+    }
+
+    @Override
+    public String create(byte[] state) {
+        String sessionId = SessionIds.generate();
+        write(sessionId, state);
+        return sessionId;
+    }
+
+    @Override
+    public String update(String sessionId, byte[] state) {
+        if (load(sessionId) == null) {
+            return null;
+        }
+        write(sessionId, state);
+        return sessionId;
+    }
+
+    @Override
+    public void remove(String sessionId) {
+        if (SessionIds.isValid(sessionId)) {
+            delete(directory.resolve(sessionId));
+        }
+    }
+
+    private void write(String sessionId, byte[] state) {
+        byte[] content = ByteBuffer.allocate(Long.BYTES + state.length)
+                .putLong(clock.getAsLong() + timeToLiveMillis)
+                .put(state)
+                .array();
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, sessionId, TEMP_SUFFIX);
+            Files.write(temp, content);
+            Files.move(temp, directory.resolve(sessionId), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            if (temp != null) {
+                delete(temp);
+            }
+            throw new UncheckedIOException("Could not store session", ex);
+        }
+    }
+
+    private static byte[] read(Path file) {
+        try {
+            return Files.readAllBytes(file);
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not load session", ex);
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            LOGGER.warn("Could not delete session file {}", file.getFileName(), ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * Deletes the sessions that have expired, and the temporary files older than the time to live that a failed write
+     * on any node left behind. A file that cannot be read is skipped, so it never stops the sweeps that follow.
+     */
+    void sweep() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                try {
+                    String name = file.getFileName().toString();
+                    if (!name.endsWith(TEMP_SUFFIX)) {
+                        load(name);
+                    } else if (Files.getLastModifiedTime(file).toMillis() + timeToLiveMillis <= clock.getAsLong()) {
+                        delete(file);
+                    }
+                } catch (IOException | RuntimeException ex) {
+                    LOGGER.warn("Could not sweep session file {}", file.getFileName(), ex);
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            // A RuntimeException escaping the scheduled task would cancel all later sweeps.
+            LOGGER.warn("Could not sweep expired sessions", ex);
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+package nl.fortytwo.rest.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.security.web.csrf.CsrfTokenRepository;
+import org.springframework.security.web.csrf.DefaultCsrfToken;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * Stateless XSRF tokens using the (signed) double submit cookie pattern: nothing is stored on the server, so anonymous
+ * requests no longer need an HttpSession and any node can validate any token.
+ *
+ * A token is <code>nonce.signature</code>, where the signature is an HMAC over the random nonce and the name of the
+ * authenticated user (empty when anonymous). The token is handed to the client in the <code>XSRF-TOKEN</code> cookie by
+ * the XsrfHeaderFilter and is only accepted back from that cookie if the signature matches. A token therefore cannot be
+ * planted by another (sub)domain, and becomes invalid as soon as the user logs in or out.
+ */
+public class HmacCsrfTokenRepository implements CsrfTokenRepository {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final int NONCE_BYTES = 16;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+
+    private final ThreadLocal<Mac> mac;
+
+    private String headerName = "X-CSRF-TOKEN";
+
+    private String parameterName = "_csrf";
+
+    /**
+     * @param key the secret key, shared by all nodes.
+     */
+    public HmacCsrfTokenRepository(byte[] key) {
+        SecretKeySpec secret = new SecretKeySpec(key, ALGORITHM);
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac instance = Mac.getInstance(ALGORITHM);
+                instance.init(secret);
+                return instance;
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException(ALGORITHM + " is not available", ex);
+            }
+        });
+    }
+
+    /**
+     * @return a repository with a random key, only usable on a single node and invalidating all tokens on restart.
+     */
+    public static HmacCsrfTokenRepository withRandomKey() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return new HmacCsrfTokenRepository(key);
+    }
+
+    public void setHeaderName(String headerName) {
+        this.headerName = headerName;
+    }
+
+    public void setParameterName(String parameterName) {
+        this.parameterName = parameterName;
+    }
+
+    @Override
+    public CsrfToken generateToken(HttpServletRequest request) {
+        byte[] nonce = new byte[NONCE_BYTES];
+        random.nextBytes(nonce);
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return new DefaultCsrfToken(headerName, parameterName, encoder.encodeToString(nonce) + '.' + encoder.encodeToString(sign(nonce)));
+    }
+
+    /**
+     * Nothing to store, the XsrfHeaderFilter sends the token of the request to the client.
+     */
+    @Override
+    public void saveToken(CsrfToken token, HttpServletRequest request, HttpServletResponse response) {
+    }
+
+    @Override
+    public CsrfToken loadToken(HttpServletRequest request) {
+        Cookie cookie = WebUtils.getCookie(request, XsrfHeaderFilter.COOKIE_NAME);
+        if (cookie == null || !isValid(cookie.getValue())) {
+            return null;
+        }
+        return new DefaultCsrfToken(headerName, parameterName, cookie.getValue());
+    }
+
+    private boolean isValid(String token) {
+        int separator = token.indexOf('.');
+        if (separator < 0) {
+            return false;
+        }
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            byte[] nonce = decoder.decode(token.substring(0, separator));
+            byte[] signature = decoder.decode(token.substring(separator + 1));
+            return nonce.length == NONCE_BYTES && MessageDigest.isEqual(sign(nonce), signature);
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    private byte[] sign(byte[] nonce) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String principal = authentication == null || trustResolver.isAnonymous(authentication) ? "" : authentication.getName();
+        Mac instance = mac.get();
+        instance.update(nonce);
+        return instance.doFinal(principal.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,95 @@
+package nl.fortytwo.rest.security;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the sessions in memory of this node. Expired sessions are dropped when they are loaded and by a sweep that runs
+ * every {@value #SWEEP_INTERVAL} new sessions.
+ */
+public class InMemorySessionStore implements SessionStore {
+
+    private static final int SWEEP_INTERVAL = 1024;
+
+    private final ConcurrentHashMap<String, Entry> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    private final long timeToLiveMillis;
+
+    private final LongSupplier clock;
+
+    /**
+     * @param timeToLiveMillis the time a session is kept after it was last created or updated.
+     */
+    public InMemorySessionStore(long timeToLiveMillis) {
+        this(timeToLiveMillis, System::currentTimeMillis);
+    }
+
+    InMemorySessionStore(long timeToLiveMillis, LongSupplier clock) {
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.clock = clock;
+    }
+
+    @Override
+    public byte[] load(String sessionId) {
+        Entry entry = sessionId == null ? null : sessions.get(sessionId);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt <= clock.getAsLong()) {
+            sessions.remove(sessionId, entry);
+            return null;
+        }
+        return entry.state;
+    }
+
+    @Override
+    public String create(byte[] state) {
+        if (created.incrementAndGet() % SWEEP_INTERVAL == 0) {
+            sweep();
+        }
+        String sessionId = SessionIds.generate();
+        sessions.put(sessionId, new Entry(state, clock.getAsLong() + timeToLiveMillis));
+        return sessionId;
+    }
+
+    @Override
+    public String update(String sessionId, byte[] state) {
+        long now = clock.getAsLong();
+        Entry entry = new Entry(state, now + timeToLiveMillis);
+        // An expired session must not be revived, it is removed instead.
+        return sessions.computeIfPresent(sessionId, (id, current) -> current.expiresAt <= now ? null : entry) == null ? null : sessionId;
+    }
+
+    @Override
+    public void remove(String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    /**
+     * @return the number of sessions currently kept, including expired ones that have not been swept yet.
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    private void sweep() {
+        long now = clock.getAsLong();
+        sessions.values().removeIf(entry -> entry.expiresAt <= now);
+    }
+
+    private static final class Entry {
+
+        private final byte[] state;
+
+        private final long expiresAt;
+
+        private Entry(byte[] state, long expiresAt) {
+            this.state = state;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
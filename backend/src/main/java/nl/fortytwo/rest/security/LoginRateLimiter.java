@@ -0,0 +1,208 @@
+package nl.fortytwo.rest.security;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free token bucket rate limiter for login attempts, keyed by an arbitrary string (username or remote address).
+ *
+ * Each key gets a bucket holding at most <code>capacity</code> tokens, refilled with one token per refill interval. The
+ * state of a bucket (refill timestamp and token count) is packed in a single long and only ever updated by CAS. Buckets
+ * are spread over independent stripes to keep map contention low during a spray across many keys.
+ *
+ * A bucket that has refilled completely is indistinguishable from a new one, so it is dropped. Expiry is driven by a
+ * hashed timing wheel that is advanced by the callers themselves; no background thread is needed.
+ */
+public class LoginRateLimiter {
+
+    private static final int STRIPES = 16;
+
+    private static final int WHEEL_SLOTS = 64;
+
+    private static final long TOKEN_MASK = 0xFFFFL;
+
+    private static final int TOKEN_BITS = 16;
+
+    /**
+     * State of a bucket that has been removed from its stripe; callers holding on to it must look up a fresh one.
+     */
+    private static final long EXPIRED = -1L;
+
+    private final int capacity;
+
+    private final long refillIntervalMillis;
+
+    private final long tickMillis;
+
+    private final LongSupplier clock;
+
+    private final List<ConcurrentHashMap<String, Bucket>> stripes = new ArrayList<>(STRIPES);
+
+    private final List<Queue<Bucket>> wheel = new ArrayList<>(WHEEL_SLOTS);
+
+    private final AtomicLong currentTick;
+
+    /**
+     * @param capacity the maximum number of attempts in a burst.
+     * @param refillIntervalMillis the time it takes to regain one attempt.
+     */
+    public LoginRateLimiter(int capacity, long refillIntervalMillis) {
+        this(capacity, refillIntervalMillis, System::currentTimeMillis);
+    }
+
+    LoginRateLimiter(int capacity, long refillIntervalMillis, LongSupplier clock) {
+        if (capacity < 1 || capacity > TOKEN_MASK) {
+            throw new IllegalArgumentException("Capacity must be between 1 and " + TOKEN_MASK);
+        }
+        this.capacity = capacity;
+        this.refillIntervalMillis = refillIntervalMillis;
+        this.clock = clock;
+        // The wheel covers the time to refill a full bucket; later expiries wrap around and are rescheduled.
+        this.tickMillis = Math.max(1L, capacity * refillIntervalMillis / WHEEL_SLOTS);
+        for (int t = 0; t < STRIPES; t++) {
+            stripes.add(new ConcurrentHashMap<>());
+        }
+        for (int t = 0; t < WHEEL_SLOTS; t++) {
+            wheel.add(new ConcurrentLinkedQueue<>());
+        }
+        this.currentTick = new AtomicLong(clock.getAsLong() / tickMillis);
+    }
+
+    /**
+     * Takes a token from the bucket of the key.
+     * @param key the username or address.
+     * @return true if the attempt may proceed, false if the key is throttled.
+     */
+    public boolean tryAcquire(String key) {
+        long now = clock.getAsLong();
+        advance(now);
+        ConcurrentHashMap<String, Bucket> stripe = stripeOf(key);
+        while (true) {
+            Bucket bucket = stripe.get(key);
+            if (bucket == null) {
+                Bucket created = new Bucket(key, pack(now, capacity - 1));
+                bucket = stripe.putIfAbsent(key, created);
+                if (bucket == null) {
+                    schedule(created, now);
+                    return true;
+                }
+            }
+            int result = bucket.tryAcquire(now);
+            if (result >= 0) {
+                return result > 0;
+            }
+            // Expired concurrently, the next lookup creates a new bucket.
+        }
+    }
+
+    /**
+     * @return the number of keys currently tracked.
+     */
+    public int size() {
+        int size = 0;
+        for (ConcurrentHashMap<String, Bucket> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private ConcurrentHashMap<String, Bucket> stripeOf(String key) {
+        int h = key.hashCode();
+        return stripes.get((h ^ (h >>> 16)) & (STRIPES - 1));
+    }
+
+    private void advance(long now) {
+        long tick = now / tickMillis;
+        long last = currentTick.get();
+        if (tick > last && currentTick.compareAndSet(last, tick)) {
+            long from = Math.max(last + 1, tick - WHEEL_SLOTS + 1);
+            for (long t = from; t <= tick; t++) {
+                sweep(wheel.get((int) (t & (WHEEL_SLOTS - 1))), now);
+            }
+        }
+    }
+
+    private void sweep(Queue<Bucket> slot, long now) {
+        // Only drain what was present at the start, rescheduled buckets may land in this same slot.
+        for (int pending = slot.size(); pending > 0; pending--) {
+            Bucket bucket = slot.poll();
+            if (bucket == null) {
+                return;
+            }
+            if (bucket.expire(now)) {
+                stripeOf(bucket.key).remove(bucket.key, bucket);
+            } else {
+                schedule(bucket, now);
+            }
+        }
+    }
+
+    private void schedule(Bucket bucket, long now) {
+        long expiry = Math.max(bucket.expiresAt(), now + tickMillis);
+        wheel.get((int) ((expiry / tickMillis) & (WHEEL_SLOTS - 1))).add(bucket);
+    }
+
+    private static long pack(long millis, long tokens) {
+        return millis << TOKEN_BITS | tokens;
+    }
+
+    private final class Bucket {
+
+        private final String key;
+
+        private final AtomicLong state;
+
+        private Bucket(String key, long state) {
+            this.key = key;
+            this.state = new AtomicLong(state);
+        }
+
+        /**
+         * @return 1 if a token was taken, 0 if the bucket is empty, -1 if the bucket has expired.
+         */
+        private int tryAcquire(long now) {
+            while (true) {
+                long current = state.get();
+                if (current == EXPIRED) {
+                    return -1;
+                }
+                long last = current >>> TOKEN_BITS;
+                long tokens = current & TOKEN_MASK;
+                long refill = now > last ? (now - last) / refillIntervalMillis : 0;
+                if (refill > 0) {
+                    tokens = Math.min(capacity, tokens + refill);
+                    last = tokens == capacity ? now : last + refill * refillIntervalMillis;
+                }
+                if (tokens == 0) {
+                    return 0;
+                }
+                if (state.compareAndSet(current, pack(last, tokens - 1))) {
+                    return 1;
+                }
+            }
+        }
+
+        private long expiresAt() {
+            long current = state.get();
+            return (current >>> TOKEN_BITS) + (capacity - (current & TOKEN_MASK)) * refillIntervalMillis;
+        }
+
+        /**
+         * Marks the bucket as expired if it has completely refilled.
+         */
+        private boolean expire(long now) {
+            long current = state.get();
+            if (current == EXPIRED) {
+                return true;
+            }
+            long expiresAt = (current >>> TOKEN_BITS) + (capacity - (current & TOKEN_MASK)) * refillIntervalMillis;
+            return expiresAt <= now && state.compareAndSet(current, EXPIRED);
+        }
+    }
+
+}
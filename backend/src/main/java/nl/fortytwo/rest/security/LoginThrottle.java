@@ -0,0 +1,36 @@
+package nl.fortytwo.rest.security;
+
+import java.util.Locale;
+
+/**
+ * Throttles login attempts per client address and per account before any password is hashed. The account lockout in
+ * User only protects a single account, this also stops a spray of attempts across many accounts from one address.
+ */
+public class LoginThrottle {
+
+    private final LoginRateLimiter addressLimiter;
+
+    private final LoginRateLimiter usernameLimiter;
+
+    public LoginThrottle(LoginRateLimiter addressLimiter, LoginRateLimiter usernameLimiter) {
+        this.addressLimiter = addressLimiter;
+        this.usernameLimiter = usernameLimiter;
+    }
+
+    /**
+     * @param remoteAddress the address of the client.
+     * @return true if the client may attempt to login.
+     */
+    public boolean tryAcquireAddress(String remoteAddress) {
+        return addressLimiter.tryAcquire(remoteAddress == null ? "" : remoteAddress);
+    }
+
+    /**
+     * @param username the account the client attempts to login to.
+     * @return true if the account may be attempted.
+     */
+    public boolean tryAcquireUsername(String username) {
+        return usernameLimiter.tryAcquire(username == null ? "" : username.toLowerCase(Locale.ROOT));
+    }
+
+}
@@ -0,0 +1,53 @@
+package nl.fortytwo.rest.security;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.fortytwo.rest.user.PrincipalService;
+import nl.fortytwo.rest.user.User;
+
+/**
+ * Transparently re-hashes stored passwords that were hashed with a different BCrypt cost than the calibrated one. This can
+ * only be done right after a successful login, as that is the only moment the raw password is known.
+ */
+public class PasswordHashUpgrader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PasswordHashUpgrader.class);
+
+    private final CalibratedPasswordEncoder passwordEncoder;
+
+    private final Executor executor;
+
+    private final PrincipalService principalService;
+
+    public PasswordHashUpgrader(CalibratedPasswordEncoder passwordEncoder, Executor executor, PrincipalService principalService) {
+        this.passwordEncoder = passwordEncoder;
+        this.executor = executor;
+        this.principalService = principalService;
+    }
+
+    /**
+     * Schedules a re-hash in the background if the stored hash of the user has a different cost.
+     * @param user the user that has just been authenticated.
+     * @param rawPassword the verified password.
+     */
+    public void upgradeIfNeeded(User user, String rawPassword) {
+        String current = user.getPassword();
+        if (passwordEncoder.needsRehash(current)) {
+            try {
+                executor.execute(() -> {
+                    if (principalService.changePassword(user, current, passwordEncoder.encode(rawPassword))) {
+                        LOGGER.info("Upgraded password hash to BCrypt cost {}", passwordEncoder.getStrength());
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                // The workers are busy with logins, try again on the next login.
+                LOGGER.debug("Password hash upgrade postponed", ex);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package nl.fortytwo.rest.security;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.GenericFilterBean;
+
+import nl.fortytwo.rest.security.SpringUserDetailsService.UserDetailsAdapter;
+import nl.fortytwo.rest.user.PrincipalService;
+import nl.fortytwo.rest.user.User;
+
+/**
+ * Looks the user of the HttpSession up again once it was validated longer than the revalidation interval ago, like
+ * CookieSecurityContextRepository does for the cookie sessions. A store such as the JdbcUserRepository returns a copy
+ * of the user, so the principal held by the session would otherwise keep the role it had at login. The authentication
+ * is replaced with one of the current user, which the session then saves; a user that has been removed or deactivated
+ * is logged out.
+ */
+public class PrincipalRevalidationFilter extends GenericFilterBean {
+
+    private final PrincipalService principalService;
+
+    private final long revalidateMillis;
+
+    private final LongSupplier clock;
+
+    /**
+     * @param revalidateMillis the maximum time the principal of a session is trusted before the user is looked up again.
+     */
+    public PrincipalRevalidationFilter(PrincipalService principalService, long revalidateMillis) {
+        this(principalService, revalidateMillis, System::currentTimeMillis);
+    }
+
+    PrincipalRevalidationFilter(PrincipalService principalService, long revalidateMillis, LongSupplier clock) {
+        this.principalService = principalService;
+        this.revalidateMillis = revalidateMillis;
+        this.clock = clock;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        SecurityContext context = SecurityContextHolder.getContext();
+        Authentication authentication = context.getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof UserDetailsAdapter) {
+            UserDetailsAdapter principal = (UserDetailsAdapter) authentication.getPrincipal();
+            long now = clock.getAsLong();
+            if (now - principal.getValidatedAt() >= revalidateMillis) {
+                context.setAuthentication(revalidate(principal, authentication, now));
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    private Authentication revalidate(UserDetailsAdapter principal, Authentication authentication, long now) {
+        Optional<User> current = principalService.findByEmail(principal.getUsername());
+        if (!current.isPresent() || !current.get().isActive()) {
+            return null;
+        }
+        UserDetailsAdapter revalidated = new UserDetailsAdapter(current.get(), now);
+        UsernamePasswordAuthenticationToken token = new UsernamePasswordAuthenticationToken(revalidated, null, revalidated.getAuthorities());
+        token.setDetails(authentication.getDetails());
+        return token;
+    }
+
+}
@@ -0,0 +1,391 @@
+package nl.fortytwo.rest.security;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Guards the request body while it is read: the body is rejected when it grows larger than the limit of its path, or when
+ * a JSON string in it contains an ISO control character, raw or escaped. A body with a larger Content-Length is rejected
+ * before the chain sees it. Any other body is counted and scanned as the handler, or the login of
+ * RestAuthenticationFilter, reads it from the wrapped input stream, so nothing is buffered up front and a rejected body
+ * costs at most its limit in transfer. The read that crosses the limit or meets a control character fails, and once the
+ * chain returns the response is replaced with a 413 or 400. This guards every string of the body, where
+ * {@link nl.fortytwo.rest.validator.BasicString} only guards the annotated fields after binding.
+ *
+ * Form-encoded bodies that are read by getParameter() are parsed by the container from its own stream, they are left
+ * intact but limited by the maxPostSize of the container rather than by this filter.
+ */
+public class RequestBodyGuardFilter extends OncePerRequestFilter {
+
+    public static final int DEFAULT_MAX_BYTES = 16 * 1024;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestBodyGuardFilter.class);
+
+    private final int defaultMaxBytes;
+
+    private final List<PathLimit> pathLimits = new ArrayList<>();
+
+    public RequestBodyGuardFilter(int defaultMaxBytes) {
+        this.defaultMaxBytes = defaultMaxBytes;
+    }
+
+    /**
+     * @param pathPrefix the path (within the application) the limit applies to, e.g. <code>/users/batch</code>.
+     * @param maxBytes the maximum size of a request body for that path and everything below it.
+     * @return this filter.
+     */
+    public RequestBodyGuardFilter addLimit(String pathPrefix, int maxBytes) {
+        String prefix = pathPrefix.endsWith("/") ? pathPrefix.substring(0, pathPrefix.length() - 1) : pathPrefix;
+        pathLimits.add(new PathLimit(prefix, maxBytes));
+        pathLimits.sort(Comparator.comparingInt((PathLimit pathLimit) -> pathLimit.prefix.length()).reversed());
+        return this;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        // Unknown (-1) for chunked bodies and for lengths beyond an int, those are counted while they are read.
+        int contentLength = request.getContentLength();
+        if (contentLength == 0 || contentLength < 0 && request.getHeader("Transfer-Encoding") == null
+                && request.getHeader("Content-Length") == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        int maxBytes = maxBytesFor(request);
+        if (contentLength > maxBytes) {
+            reject(response, RejectedBodyException.tooLarge());
+            return;
+        }
+
+        GuardedBodyRequest guarded = new GuardedBodyRequest(request, maxBytes, isJson(request));
+        try {
+            filterChain.doFilter(guarded, response);
+        } catch (IOException | ServletException | RuntimeException ex) {
+            // The handler may let the failed read escape, wrapped or not.
+            if (guarded.rejection == null) {
+                throw ex;
+            }
+        }
+        if (guarded.rejection != null) {
+            if (response.isCommitted()) {
+                LOGGER.warn("Rejected request body after the response was committed: {}", guarded.rejection.getMessage());
+            } else {
+                // Replaces whatever the handler made of the failed read.
+                response.reset();
+                reject(response, guarded.rejection);
+            }
+        }
+    }
+
+    int maxBytesFor(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        int offset = request.getContextPath().length();
+        for (PathLimit pathLimit : pathLimits) {
+            if (pathLimit.matches(uri, offset)) {
+                return pathLimit.maxBytes;
+            }
+        }
+        return defaultMaxBytes;
+    }
+
+    /**
+     * Only UTF-8 (the default of JSON) is scanned, other encodings are left to the message converter.
+     */
+    private static boolean isJson(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        if (contentType == null) {
+            return false;
+        }
+        try {
+            MediaType mediaType = MediaType.parseMediaType(contentType);
+            return ("json".equals(mediaType.getSubtype()) || mediaType.getSubtype().endsWith("+json"))
+                    && (mediaType.getCharSet() == null || StandardCharsets.UTF_8.equals(mediaType.getCharSet()));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static void reject(HttpServletResponse response, RejectedBodyException rejection) throws IOException {
+        LOGGER.warn("Rejected request body: {}", rejection.status.getReasonPhrase());
+        response.setStatus(rejection.status.value());
+        response.setContentType("application/json;charset=UTF-8");
+        rejection.body.writeTo(response);
+    }
+
+    /**
+     * Fails the read of a body that is too large or contains control characters. As an IOException it is handled by the
+     * readers of the body as any failed read; the filter answers with the status and body of the rejection afterwards.
+     */
+    static final class RejectedBodyException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final HttpStatus status;
+
+        private final ErrorBody body;
+
+        private RejectedBodyException(HttpStatus status, ErrorBody body, String message) {
+            super(message);
+            this.status = status;
+            this.body = body;
+        }
+
+        static RejectedBodyException tooLarge() {
+            return new RejectedBodyException(HttpStatus.PAYLOAD_TOO_LARGE, ErrorBody.REQUEST_TOO_LARGE,
+                    "Request body too large");
+        }
+
+        static RejectedBodyException controlCharacters() {
+            return new RejectedBodyException(HttpStatus.BAD_REQUEST, ErrorBody.CONTROL_CHARACTERS,
+                    "Request body contains control characters");
+        }
+
+        // Thrown for every rejected body, the stack trace would only show the guard's own read method.
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+
+    }
+
+    private static final class PathLimit {
+
+        private final String prefix;
+
+        private final int maxBytes;
+
+        private PathLimit(String prefix, int maxBytes) {
+            this.prefix = prefix;
+            this.maxBytes = maxBytes;
+        }
+
+        /**
+         * Matches the prefix itself and everything below it, but not <code>/users/batches</code> for
+         * <code>/users/batch</code>.
+         */
+        private boolean matches(String uri, int offset) {
+            int end = offset + prefix.length();
+            return uri.startsWith(prefix, offset) && (uri.length() == end || uri.charAt(end) == '/');
+        }
+    }
+
+    /**
+     * Follows the strings of UTF-8 encoded JSON over any number of chunks. Only the strings are checked, invalid JSON
+     * is left to the parser.
+     */
+    static final class JsonStringScanner {
+
+        private static final int OUTSIDE = 0;
+
+        private static final int STRING = 1;
+
+        private static final int ESCAPE = 2;
+
+        private static final int AFTER_C2 = 3;
+
+        private static final int UNICODE = 4;
+
+        private int state = OUTSIDE;
+
+        private int digits;
+
+        private int codePoint;
+
+        /**
+         * @return false if a string contains a control character.
+         */
+        boolean scan(byte[] bytes, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                int b = bytes[i] & 0xff;
+                switch (state) {
+                case OUTSIDE:
+                    if (b == '"') {
+                        state = STRING;
+                    }
+                    break;
+                case AFTER_C2:
+                    // U+0080 to U+009F are encoded as C2 80 to C2 9F.
+                    if (b >= 0x80 && b <= 0x9f) {
+                        return false;
+                    }
+                    state = STRING;
+                    if (!scanString(b)) {
+                        return false;
+                    }
+                    break;
+                case STRING:
+                    if (!scanString(b)) {
+                        return false;
+                    }
+                    break;
+                case ESCAPE:
+                    if (b == 'b' || b == 'f' || b == 'n' || b == 'r' || b == 't') {
+                        return false;
+                    }
+                    if (b == 'u') {
+                        state = UNICODE;
+                        digits = 0;
+                        codePoint = 0;
+                    } else {
+                        state = STRING;
+                    }
+                    break;
+                default:
+                    int digit = Character.digit(b, 16);
+                    if (digit < 0) {
+                        state = STRING;
+                        if (!scanString(b)) {
+                            return false;
+                        }
+                    } else {
+                        codePoint = codePoint << 4 | digit;
+                        if (++digits == 4) {
+                            if (Character.isISOControl(codePoint)) {
+                                return false;
+                            }
+                            state = STRING;
+                        }
+                    }
+                    break;
+                }
+            }
+            return true;
+        }
+
+        private boolean scanString(int b) {
+            if (b < 0x20 || b == 0x7f) {
+                return false;
+            }
+            if (b == '"') {
+                state = OUTSIDE;
+            } else if (b == '\\') {
+                state = ESCAPE;
+            } else if (b == 0xc2) {
+                state = AFTER_C2;
+            }
+            return true;
+        }
+
+    }
+
+    /**
+     * Hands out an input stream that counts and scans the body as it is read.
+     */
+    private static final class GuardedBodyRequest extends HttpServletRequestWrapper {
+
+        private final int maxBytes;
+
+        private final boolean json;
+
+        private GuardedInputStream in;
+
+        private BufferedReader reader;
+
+        private RejectedBodyException rejection;
+
+        GuardedBodyRequest(HttpServletRequest request, int maxBytes, boolean json) {
+            super(request);
+            this.maxBytes = maxBytes;
+            this.json = json;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (in == null) {
+                in = new GuardedInputStream(super.getInputStream());
+            }
+            return in;
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            if (reader == null) {
+                String encoding = getCharacterEncoding();
+                reader = new BufferedReader(new InputStreamReader(getInputStream(),
+                        encoding == null ? StandardCharsets.ISO_8859_1 : Charset.forName(encoding)));
+            }
+            return reader;
+        }
+
+        private final class GuardedInputStream extends ServletInputStream {
+
+            private final ServletInputStream in;
+
+            private final JsonStringScanner scanner = json ? new JsonStringScanner() : null;
+
+            private long count;
+
+            GuardedInputStream(ServletInputStream in) {
+                this.in = in;
+            }
+
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (rejection != null) {
+                    throw rejection;
+                }
+                int read = in.read(b, off, len);
+                if (read <= 0) {
+                    return read;
+                }
+                count += read;
+                if (count > maxBytes) {
+                    rejection = RejectedBodyException.tooLarge();
+                } else if (scanner != null && !scanner.scan(b, off, read)) {
+                    rejection = RejectedBodyException.controlCharacters();
+                } else {
+                    return read;
+                }
+                throw rejection;
+            }
+
+            @Override
+            public boolean isFinished() {
+                return rejection != null || in.isFinished();
+            }
+
+            @Override
+            public boolean isReady() {
+                return rejection == null && in.isReady();
+            }
+
+            @Override
+            public void setReadListener(ReadListener readListener) {
+                in.setReadListener(readListener);
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        }
+
+    }
+
+}
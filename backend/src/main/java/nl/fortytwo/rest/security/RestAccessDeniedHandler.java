@@ -6,8 +6,6 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.authentication.InsufficientAuthenticationException;
@@ -15,17 +13,15 @@ import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.web.AuthenticationEntryPoint;
 import org.springframework.security.web.access.AccessDeniedHandler;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import nl.fortytwo.rest.security.dto.ErrorDto;
-
 public class RestAccessDeniedHandler implements AccessDeniedHandler, AuthenticationEntryPoint {
 
-    private ObjectMapper objectMapper;
+    private AuditLog auditLog;
 
-    @Autowired
-    public RestAccessDeniedHandler() {
-        this.objectMapper = new ObjectMapper();
+    /**
+     * @param auditLog records the denied requests.
+     */
+    public void setAuditLog(AuditLog auditLog) {
+        this.auditLog = auditLog;
     }
 
     /**
@@ -34,11 +30,12 @@ public class RestAccessDeniedHandler implements AccessDeniedHandler, Authenticat
      */
     @Override
     public void handle(HttpServletRequest request, HttpServletResponse response, AccessDeniedException ex) throws IOException, ServletException {
-        LoggerFactory.getLogger(getClass()).info("Forbidden: " + ex.getMessage());
+        if (auditLog != null) {
+            auditLog.record(AuditLog.Type.ACCESS_DENIED, request.getRemoteUser(), request.getRemoteAddr(), request.getRequestURI());
+        }
         response.setStatus(HttpStatus.FORBIDDEN.value());
         response.setContentType("application/json");
-        objectMapper.writeValue(response.getWriter(), new ErrorDto(ex.getMessage()));
-        response.getWriter().flush();
+        ErrorBody.of(ex.getMessage()).writeTo(response);
     }
 
     /**
@@ -46,12 +43,12 @@ public class RestAccessDeniedHandler implements AccessDeniedHandler, Authenticat
      */
     @Override
     public void commence(HttpServletRequest request, HttpServletResponse response, AuthenticationException authException) throws IOException, ServletException {
-        LoggerFactory.getLogger(getClass()).info("Unauthorized: " + authException.getMessage());
+        if (auditLog != null) {
+            auditLog.record(AuditLog.Type.UNAUTHORIZED, null, request.getRemoteAddr(), request.getRequestURI());
+        }
         response.setStatus(HttpStatus.UNAUTHORIZED.value());
         response.setContentType("application/json");
-        ErrorDto body = new ErrorDto(isInitialRequest(authException) ? "Please Login." : "Authentication failed.");
-        objectMapper.writeValue(response.getWriter(), body);
-        response.getWriter().flush();
+        (isInitialRequest(authException) ? ErrorBody.PLEASE_LOGIN : ErrorBody.AUTHENTICATION_FAILED).writeTo(response);
     }
 
     private boolean isInitialRequest(AuthenticationException authException) {
@@ -1,7 +1,14 @@
 package nl.fortytwo.rest.security;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
@@ -21,51 +28,117 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 import org.springframework.web.filter.GenericFilterBean;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import nl.fortytwo.rest.security.dto.ErrorDto;
+import nl.fortytwo.rest.security.SpringUserDetailsService.UserDetailsAdapter;
 import nl.fortytwo.rest.user.PrincipalService;
+import nl.fortytwo.rest.user.User;
+import nl.fortytwo.rest.util.JsonCodec;
 
 public class RestAuthenticationFilter extends GenericFilterBean {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RestAuthenticationFilter.class);
 
+    /**
+     * Request attribute holding the outcome of an asynchronous login until the request is dispatched back to the filter chain.
+     */
+    static final String LOGIN_ATTEMPT_ATTRIBUTE = RestAuthenticationFilter.class.getName() + ".LOGIN_ATTEMPT";
+
+    private static final long DEFAULT_ASYNC_TIMEOUT_MILLIS = 30000L;
+
     private final AntPathRequestMatcher matcher;
 
     private final AuthenticationManager authenticationManager;
 
-    private final ObjectMapper objectMapper;
-
     private final PrincipalService principalService;
 
+    private JsonCodec jsonCodec;
+
+    private PasswordHashUpgrader passwordHashUpgrader;
+
+    private LoginThrottle loginThrottle;
+
+    private Executor authenticationExecutor;
+
+    private AuditLog auditLog;
+
+    private long asyncTimeout = DEFAULT_ASYNC_TIMEOUT_MILLIS;
+
     public RestAuthenticationFilter(AntPathRequestMatcher matcher, AuthenticationManager authenticationManager, PrincipalService principalService) {
         this.matcher = matcher;
         this.authenticationManager = authenticationManager;
         this.principalService = principalService;
-        this.objectMapper = new ObjectMapper();
+        this.jsonCodec = new JsonCodec();
+    }
+
+    /**
+     * @param jsonCodec the shared codec, used to read the login form.
+     */
+    public void setJsonCodec(JsonCodec jsonCodec) {
+        this.jsonCodec = jsonCodec;
+    }
+
+    /**
+     * @param passwordHashUpgrader re-hashes the password after a successful login if its BCrypt cost is outdated.
+     */
+    public void setPasswordHashUpgrader(PasswordHashUpgrader passwordHashUpgrader) {
+        this.passwordHashUpgrader = passwordHashUpgrader;
+    }
+
+    /**
+     * @param loginThrottle limits the login attempts per address and account before the credentials are checked.
+     */
+    public void setLoginThrottle(LoginThrottle loginThrottle) {
+        this.loginThrottle = loginThrottle;
+    }
+
+    /**
+     * Enables the asynchronous login mode. The (BCrypt) credential check is handed to the given executor and the servlet
+     * thread is released until the outcome is known, after which the request is dispatched back into the filter chain.
+     * Without an executor, or when the request does not support async processing, logins are handled on the request thread.
+     * @param authenticationExecutor the (bounded) executor running the authentication manager.
+     */
+    public void setAuthenticationExecutor(Executor authenticationExecutor) {
+        this.authenticationExecutor = authenticationExecutor;
+    }
+
+    /**
+     * @param auditLog records the successful, failed and throttled logins.
+     */
+    public void setAuditLog(AuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
+
+    /**
+     * @param asyncTimeout the maximum time in milliseconds an asynchronous login may wait for the executor.
+     */
+    public void setAsyncTimeout(long asyncTimeout) {
+        this.asyncTimeout = asyncTimeout;
     }
 
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
         if (request instanceof HttpServletRequest && matcher.matches((HttpServletRequest) request)) {
             HttpServletResponse httpResponse = (HttpServletResponse) response;
+            LoginAttempt completed = (LoginAttempt) request.getAttribute(LOGIN_ATTEMPT_ATTRIBUTE);
+            if (completed != null && request.getDispatcherType() == DispatcherType.ASYNC) {
+                request.removeAttribute(LOGIN_ATTEMPT_ATTRIBUTE);
+                complete(completed, request, httpResponse, chain);
+                return;
+            }
+            if (loginThrottle != null && !loginThrottle.tryAcquireAddress(request.getRemoteAddr())) {
+                handleThrottled(request, httpResponse, null);
+                return;
+            }
             try {
-                LoginForm form = objectMapper.readValue(request.getInputStream(), LoginForm.class);
-
-                UsernamePasswordAuthenticationToken token = new UsernamePasswordAuthenticationToken(form.getUsername(), form.getPassword());
-
-                try {
-                    Authentication authentication = authenticationManager.authenticate(token);
-                    SecurityContextHolder.getContext().setAuthentication(authentication);
-
-                    principalService.markLoginSuccess(form.getUsername());
-
-                    chain.doFilter(request, response);
+                LoginForm form = jsonCodec.read(request.getInputStream(), LoginForm.class);
 
-                } catch (BadCredentialsException ae) {
-                    handleLoginFailure(httpResponse, form, ae);
-                } catch (AuthenticationException ex) {
-                    handleLoginFailure(httpResponse, form, ex);
+                if (loginThrottle != null && !loginThrottle.tryAcquireUsername(form.getUsername())) {
+                    handleThrottled(request, httpResponse, form.getUsername());
+                    return;
+                }
+                if (authenticationExecutor != null && request.isAsyncSupported()) {
+                    authenticateAsync(form, request, httpResponse);
+                } else {
+                    complete(authenticate(form), request, httpResponse, chain);
                 }
             } catch (IOException ex) {
                 httpResponse.setStatus(HttpStatus.BAD_REQUEST.value());
@@ -76,12 +149,144 @@ public class RestAuthenticationFilter extends GenericFilterBean {
         }
     }
 
-    private void handleLoginFailure(HttpServletResponse httpResponse, LoginForm form, AuthenticationException ae) throws IOException {
+    private LoginAttempt authenticate(LoginForm form) {
+        UsernamePasswordAuthenticationToken token = new UsernamePasswordAuthenticationToken(form.getUsername(), form.getPassword());
+        try {
+            return new LoginAttempt(form, authenticationManager.authenticate(token), null);
+        } catch (BadCredentialsException ae) {
+            return new LoginAttempt(form, null, ae);
+        } catch (AuthenticationException ex) {
+            return new LoginAttempt(form, null, ex);
+        }
+    }
+
+    private void authenticateAsync(LoginForm form, ServletRequest request, HttpServletResponse httpResponse) throws IOException {
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(asyncTimeout);
+        AtomicBoolean finished = new AtomicBoolean();
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if (finished.compareAndSet(false, true)) {
+                    LOGGER.warn("Login timed out waiting for a password hash worker");
+                    handleOverload(httpResponse);
+                    asyncContext.complete();
+                }
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+        try {
+            authenticationExecutor.execute(() -> {
+                LoginAttempt attempt;
+                try {
+                    attempt = authenticate(form);
+                } catch (RuntimeException ex) {
+                    attempt = new LoginAttempt(form, ex);
+                }
+                if (finished.compareAndSet(false, true)) {
+                    request.setAttribute(LOGIN_ATTEMPT_ATTRIBUTE, attempt);
+                    asyncContext.dispatch();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            if (finished.compareAndSet(false, true)) {
+                LOGGER.warn("Login rejected, all password hash workers are busy");
+                handleOverload(httpResponse);
+                asyncContext.complete();
+            }
+        }
+    }
+
+    private void complete(LoginAttempt attempt, ServletRequest request, HttpServletResponse httpResponse, FilterChain chain) throws IOException, ServletException {
+        if (attempt.error != null) {
+            throw attempt.error;
+        }
+        if (attempt.failure != null) {
+            handleLoginFailure(request, httpResponse, attempt.form, attempt.failure);
+            return;
+        }
+        SecurityContextHolder.getContext().setAuthentication(attempt.authentication);
+
+        Object principal = attempt.authentication == null ? null : attempt.authentication.getPrincipal();
+        if (principal instanceof UserDetailsAdapter) {
+            User user = ((UserDetailsAdapter) principal).getUser();
+            principalService.markLoginSuccess(user);
+            if (passwordHashUpgrader != null) {
+                passwordHashUpgrader.upgradeIfNeeded(user, attempt.form.getPassword());
+            }
+        } else {
+            principalService.markLoginSuccess(attempt.form.getUsername());
+        }
+        audit(AuditLog.Type.LOGIN_SUCCEEDED, attempt.form.getUsername(), request, null);
+
+        chain.doFilter(request, httpResponse);
+    }
+
+    private void handleLoginFailure(ServletRequest request, HttpServletResponse httpResponse, LoginForm form, AuthenticationException ae)
+            throws IOException {
         httpResponse.setStatus(HttpStatus.FORBIDDEN.value());
         httpResponse.setContentType("application/json;charset=UTF-8");
-        objectMapper.writeValue(httpResponse.getOutputStream(), new ErrorDto("Login failed; Invalid userID or password"));
+        ErrorBody.LOGIN_FAILED.writeTo(httpResponse);
         principalService.markLoginFailed(form.getUsername());
-        LOGGER.warn("Login failure", ae.getMessage());
+        audit(AuditLog.Type.LOGIN_FAILED, form.getUsername(), request, ae.getMessage());
+    }
+
+    private void handleThrottled(ServletRequest request, HttpServletResponse httpResponse, String username) throws IOException {
+        httpResponse.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        httpResponse.setContentType("application/json;charset=UTF-8");
+        ErrorBody.LOGIN_THROTTLED.writeTo(httpResponse);
+        audit(AuditLog.Type.LOGIN_THROTTLED, username, request, null);
+    }
+
+    private void handleOverload(HttpServletResponse httpResponse) throws IOException {
+        httpResponse.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        httpResponse.setContentType("application/json;charset=UTF-8");
+        ErrorBody.LOGIN_UNAVAILABLE.writeTo(httpResponse);
+    }
+
+    private void audit(AuditLog.Type type, String username, ServletRequest request, String detail) {
+        if (auditLog != null) {
+            auditLog.record(type, username, request.getRemoteAddr(), detail);
+        }
+    }
+
+    /**
+     * Outcome of an authentication attempt, carried from the password hash worker back to the request.
+     */
+    static final class LoginAttempt {
+
+        private final LoginForm form;
+
+        private final Authentication authentication;
+
+        private final AuthenticationException failure;
+
+        private final RuntimeException error;
+
+        LoginAttempt(LoginForm form, Authentication authentication, AuthenticationException failure) {
+            this.form = form;
+            this.authentication = authentication;
+            this.failure = failure;
+            this.error = null;
+        }
+
+        LoginAttempt(LoginForm form, RuntimeException error) {
+            this.form = form;
+            this.authentication = null;
+            this.failure = null;
+            this.error = error;
+        }
     }
 
     public static class LoginForm {
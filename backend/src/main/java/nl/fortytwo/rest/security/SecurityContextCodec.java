@@ -0,0 +1,90 @@
+package nl.fortytwo.rest.security;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import nl.fortytwo.rest.user.Role;
+import nl.fortytwo.rest.user.User;
+
+/**
+ * Compact binary form of the security context of a session, used instead of Java serialization. Only what is needed to
+ * rebuild the principal is kept: the email, the role ordinal and the version of the user, plus the time the user was
+ * last validated. The password hash and the lockout state never leave the node.
+ *
+ * Layout: <code>format (1) | role ordinal (1) | version (8) | validated at (8) | email (UTF-8)</code>.
+ */
+public final class SecurityContextCodec {
+
+    private static final byte FORMAT = 2;
+
+    private static final int HEADER_LENGTH = 18;
+
+    private static final Role[] ROLES = Role.values();
+
+    private SecurityContextCodec() {
+    }
+
+    /**
+     * @param user the authenticated user.
+     * @param validatedAt the time the user was last looked up.
+     * @return the encoded state.
+     */
+    public static byte[] encode(User user, long validatedAt) {
+        byte[] email = user.getEmail().getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(HEADER_LENGTH + email.length)
+                .put(FORMAT)
+                .put((byte) user.getRole().ordinal())
+                .putLong(user.getVersion())
+                .putLong(validatedAt)
+                .put(email)
+                .array();
+    }
+
+    /**
+     * @param state the encoded state.
+     * @return the decoded state or null if it is not in the current format.
+     */
+    public static State decode(byte[] state) {
+        if (state == null || state.length < HEADER_LENGTH || state[0] != FORMAT || (state[1] & 0xFF) >= ROLES.length) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(state, 2, HEADER_LENGTH - 2);
+        return new State(new String(state, HEADER_LENGTH, state.length - HEADER_LENGTH, StandardCharsets.UTF_8),
+                ROLES[state[1] & 0xFF], buffer.getLong(), buffer.getLong());
+    }
+
+    public static final class State {
+
+        private final String email;
+
+        private final Role role;
+
+        private final long version;
+
+        private final long validatedAt;
+
+        private State(String email, Role role, long version, long validatedAt) {
+            this.email = email;
+            this.role = role;
+            this.version = version;
+            this.validatedAt = validatedAt;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public Role getRole() {
+            return role;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public long getValidatedAt() {
+            return validatedAt;
+        }
+    }
+
+}
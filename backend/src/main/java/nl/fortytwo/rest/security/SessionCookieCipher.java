@@ -0,0 +1,139 @@
+package nl.fortytwo.rest.security;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Authenticated encryption (AES-GCM) of session cookie values, with support for key rotation.
+ *
+ * A sealed value is <code>key id | iv | ciphertext | tag</code>, encoded as URL-safe Base64 without padding. New values
+ * are always sealed with the first (current) key; values sealed with any of the other keys can still be opened, so a
+ * new key can be rolled out to all nodes before the old one is retired.
+ */
+public class SessionCookieCipher {
+
+    private static final String ALGORITHM = "AES/GCM/NoPadding";
+
+    private static final int IV_LENGTH = 12;
+
+    private static final int TAG_BITS = 128;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final byte currentKeyId;
+
+    private final SecretKey[] keys = new SecretKey[256];
+
+    /**
+     * @param keys the AES keys by id; the first entry is used to seal new values.
+     */
+    public SessionCookieCipher(Map<Integer, SecretKey> keys) {
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("At least one key is required");
+        }
+        this.currentKeyId = keys.keySet().iterator().next().byteValue();
+        for (Map.Entry<Integer, SecretKey> key : keys.entrySet()) {
+            if (key.getKey() < 0 || key.getKey() > 255) {
+                throw new IllegalArgumentException("Key ids must be between 0 and 255");
+            }
+            this.keys[key.getKey()] = key.getValue();
+        }
+    }
+
+    /**
+     * Parses a key specification of the form <code>id:base64key,id:base64key</code>, current key first.
+     * @param specification the keys, e.g. from <code>security.session.cookie.keys</code>.
+     * @return the cipher.
+     * @throws IllegalArgumentException if an entry is malformed or a key is not a valid AES key.
+     */
+    public static SessionCookieCipher fromSpecification(String specification) {
+        Map<Integer, SecretKey> keys = new LinkedHashMap<>();
+        for (String entry : specification.split(",")) {
+            int separator = entry.indexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected id:base64key but was " + entry.trim());
+            }
+            byte[] key = Base64.getDecoder().decode(entry.substring(separator + 1).trim());
+            if (key.length != 16 && key.length != 24 && key.length != 32) {
+                throw new IllegalArgumentException(
+                        "AES keys are 16, 24 or 32 bytes, key " + entry.substring(0, separator).trim() + " has " + key.length);
+            }
+            keys.put(Integer.valueOf(entry.substring(0, separator).trim()), new SecretKeySpec(key, "AES"));
+        }
+        return new SessionCookieCipher(keys);
+    }
+
+    /**
+     * @return a cipher with a single random key, only usable on a single node and lost on restart.
+     */
+    public static SessionCookieCipher withRandomKey() {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(128);
+            Map<Integer, SecretKey> keys = new LinkedHashMap<>();
+            keys.put(0, generator.generateKey());
+            return new SessionCookieCipher(keys);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("AES is not available", ex);
+        }
+    }
+
+    /**
+     * @param plaintext the value to protect.
+     * @return the sealed value, safe to use as a cookie value.
+     */
+    public String seal(byte[] plaintext) {
+        byte[] sealed = new byte[1 + IV_LENGTH + plaintext.length + TAG_BITS / 8];
+        sealed[0] = currentKeyId;
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        System.arraycopy(iv, 0, sealed, 1, IV_LENGTH);
+        try {
+            Cipher cipher = Cipher.getInstance(ALGORITHM);
+            cipher.init(Cipher.ENCRYPT_MODE, keys[currentKeyId & 0xFF], new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(sealed, 0, 1);
+            cipher.doFinal(plaintext, 0, plaintext.length, sealed, 1 + IV_LENGTH);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Could not seal the session cookie", ex);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(sealed);
+    }
+
+    /**
+     * @param value a value as returned by {@link #seal(byte[])}.
+     * @return the plaintext, or null if the value was tampered with, truncated or sealed with an unknown key.
+     */
+    public byte[] open(String value) {
+        byte[] sealed;
+        try {
+            sealed = Base64.getUrlDecoder().decode(value);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+        if (sealed.length < 1 + IV_LENGTH + TAG_BITS / 8) {
+            return null;
+        }
+        SecretKey key = keys[sealed[0] & 0xFF];
+        if (key == null) {
+            return null;
+        }
+        try {
+            Cipher cipher = Cipher.getInstance(ALGORITHM);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, sealed, 1, IV_LENGTH));
+            cipher.updateAAD(sealed, 0, 1);
+            return cipher.doFinal(sealed, 1 + IV_LENGTH, sealed.length - 1 - IV_LENGTH);
+        } catch (GeneralSecurityException ex) {
+            return null;
+        }
+    }
+
+}
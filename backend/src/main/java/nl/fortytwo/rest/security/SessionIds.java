@@ -0,0 +1,34 @@
+package nl.fortytwo.rest.security;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.regex.Pattern;
+
+/**
+ * Random session ids for the server side session stores.
+ */
+final class SessionIds {
+
+    private static final int ID_BYTES = 32;
+
+    private static final Pattern ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{43}");
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private SessionIds() {
+    }
+
+    static String generate() {
+        byte[] id = new byte[ID_BYTES];
+        RANDOM.nextBytes(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id);
+    }
+
+    /**
+     * @return true if the id could have been generated, anything else is rejected before it reaches a store.
+     */
+    static boolean isValid(String sessionId) {
+        return sessionId != null && ID_PATTERN.matcher(sessionId).matches();
+    }
+
+}
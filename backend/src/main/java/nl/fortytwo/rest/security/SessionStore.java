@@ -0,0 +1,36 @@
+package nl.fortytwo.rest.security;
+
+/**
+ * Holds the encoded security context (see {@link SecurityContextCodec}) of a session, referenced by the value of the
+ * session cookie. Implementations shared by all nodes remove the need for sticky sessions or session replication.
+ */
+public interface SessionStore {
+
+    /**
+     * @param sessionId the value of the session cookie.
+     * @return the state of the session, or null if the session is unknown or has expired.
+     */
+    byte[] load(String sessionId);
+
+    /**
+     * Starts a new session, e.g. after a login. A new session always gets a new id.
+     * @param state the state of the session.
+     * @return the value for the session cookie.
+     */
+    String create(byte[] state);
+
+    /**
+     * Replaces the state of an existing session and extends its lifetime.
+     * @param sessionId the value of the session cookie.
+     * @param state the new state of the session.
+     * @return the (possibly changed) value for the session cookie, or null if the session no longer exists.
+     */
+    String update(String sessionId, byte[] state);
+
+    /**
+     * Ends a session, e.g. on logout.
+     * @param sessionId the value of the session cookie.
+     */
+    void remove(String sessionId);
+
+}
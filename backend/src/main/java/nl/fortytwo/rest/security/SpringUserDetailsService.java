@@ -13,6 +13,7 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
 import nl.fortytwo.rest.user.PrincipalService;
 import nl.fortytwo.rest.user.User;
+import nl.fortytwo.rest.user.dto.UserDTO;
 
 public class SpringUserDetailsService implements UserDetailsService {
 
@@ -28,12 +29,52 @@ public class SpringUserDetailsService implements UserDetailsService {
         return new UserDetailsAdapter(user.orElseThrow(() -> new UsernameNotFoundException(email)));
     }
 
+    /**
+     * Adapts the User to Spring Security. The adapter is the principal of the Authentication, so the User resolved during
+     * login travels along in the security context and is only looked up again once the revalidation interval has passed.
+     */
     public final static class UserDetailsAdapter implements UserDetails {
 
         private final User user;
 
-        private UserDetailsAdapter(User user) {
+        private final long validatedAt;
+
+        private transient volatile Snapshot snapshot;
+
+        UserDetailsAdapter(User user) {
+            this(user, System.currentTimeMillis());
+        }
+
+        /**
+         * @param validatedAt the time the user was read from the repository.
+         */
+        UserDetailsAdapter(User user, long validatedAt) {
             this.user = user;
+            this.validatedAt = validatedAt;
+        }
+
+        public User getUser() {
+            return user;
+        }
+
+        /**
+         * @return the time the user was read from the repository, see PrincipalRevalidationFilter.
+         */
+        public long getValidatedAt() {
+            return validatedAt;
+        }
+
+        /**
+         * @return the DTO of the user, only mapped again if the user has changed since the last call.
+         */
+        public UserDTO getSnapshot() {
+            Snapshot current = snapshot;
+            long version = user.getVersion();
+            if (current == null || current.version != version) {
+                current = new Snapshot(version, UserDTO.toResultDTO(user));
+                snapshot = current;
+            }
+            return current.dto;
         }
 
         @Override
@@ -72,4 +113,16 @@ public class SpringUserDetailsService implements UserDetailsService {
         }
 
     }
+
+    private static final class Snapshot {
+
+        private final long version;
+
+        private final UserDTO dto;
+
+        private Snapshot(long version, UserDTO dto) {
+            this.version = version;
+            this.dto = dto;
+        }
+    }
 }
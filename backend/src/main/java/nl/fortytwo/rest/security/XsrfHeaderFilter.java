@@ -14,16 +14,19 @@ import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.web.util.WebUtils;
 
 public class XsrfHeaderFilter extends OncePerRequestFilter {
+
+    public static final String COOKIE_NAME = "XSRF-TOKEN";
+
     @Override
     protected void doFilterInternal(HttpServletRequest request,
             HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
         CsrfToken csrf = (CsrfToken) request.getAttribute(CsrfToken.class.getName());
         if (csrf != null) {
-            Cookie cookie = WebUtils.getCookie(request, "XSRF-TOKEN");
+            Cookie cookie = WebUtils.getCookie(request, COOKIE_NAME);
             String token = csrf.getToken();
             if (cookie == null || token != null && !token.equals(cookie.getValue())) {
-                cookie = new Cookie("XSRF-TOKEN", token);
+                cookie = new Cookie(COOKIE_NAME, token);
                 cookie.setSecure(request.isSecure());
                 cookie.setPath(StringUtils.isEmpty(request.getContextPath()) ? "/" : request.getContextPath());
                 response.addCookie(cookie);
@@ -0,0 +1,312 @@
+package nl.fortytwo.rest.user;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import com.google.common.collect.Iterables;
+
+import nl.fortytwo.rest.util.Page;
+
+/**
+ * Keeps the users in memory, with secondary indexes so that the users sorted by email, the users with a role, the users
+ * of an email domain and the locked users can be found without a scan. The indexes are updated by {@link #create},
+ * {@link #createAll}, {@link #changeRole}, {@link #markLoginFailed} and {@link #markLoginSuccess}.
+ */
+public class InMemoryUserRepository implements UserRepository {
+
+    private Map<String, User> users = new ConcurrentHashMap<String, User>();
+
+    /**
+     * All users sorted by email. The array is replaced as a whole on every create (once per batch), so a page is always read from one
+     * consistent snapshot and costs O(log n + size) instead of a scan.
+     */
+    private volatile User[] ordered = new User[0];
+
+    private final Map<Role, NavigableMap<String, User>> byRole = new EnumMap<>(Role.class);
+
+    private final Map<String, NavigableMap<String, User>> byDomain = new ConcurrentHashMap<>();
+
+    /**
+     * Users that have been locked. A lock expires by itself, so expired entries are skipped when reading and removed
+     * on the next successful login.
+     */
+    private final NavigableMap<String, User> locked = new ConcurrentSkipListMap<>();
+
+    /**
+     * The time the repository was created, the versions start over on a restart.
+     */
+    private final long epoch = System.currentTimeMillis();
+
+    private final AtomicLong modifications = new AtomicLong();
+
+    /**
+     * Creates a repository with the example users.
+     */
+    public InMemoryUserRepository(PasswordEncoder encoder) {
+        this();
+        seed(encoder);
+    }
+
+    /**
+     * Creates an empty repository.
+     */
+    protected InMemoryUserRepository() {
+        for (Role role : Role.values()) {
+            byRole.put(role, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    /**
+     * Creates the example users.
+     */
+    protected void seed(PasswordEncoder encoder) {
+        create(new User("user@42.nl", encoder.encode("123456"), Role.ROLE_USER));
+        create(new User("admin@42.nl", encoder.encode("123456"), Role.ROLE_ADMIN));
+        create(new User("random@42.nl", encoder.encode("123456"), Role.ROLE_USER));
+    }
+
+    @Override
+    public long getEpoch() {
+        return epoch;
+    }
+
+    @Override
+    public long getVersion() {
+        return modifications.get();
+    }
+
+    @Override
+    public Iterable<User> findAll() {
+        return users.values();
+    }
+
+    @Override
+    public Optional<User> findByEmail(String email) {
+        return Optional.ofNullable(users.getOrDefault(email == null ? "" : email, null));
+    }
+
+    @Override
+    public List<User> findAllAfter(String email) {
+        User[] snapshot = ordered;
+        int index = indexOf(snapshot, email);
+        int from = index < 0 ? -index - 1 : index + 1;
+        return slice(snapshot, from, snapshot.length);
+    }
+
+    @Override
+    public Iterable<User> findByRole(Role role) {
+        return findByRoleAfter(role, "");
+    }
+
+    @Override
+    public Iterable<User> findByRoleAfter(Role role, String email) {
+        // A user is briefly in two role indexes while its role changes, see changeRole.
+        return Iterables.filter(tail(byRole.get(role), email).values(), user -> user.getRole() == role);
+    }
+
+    @Override
+    public Iterable<User> findByDomain(String domain) {
+        return findByDomainAfter(domain, "");
+    }
+
+    @Override
+    public Iterable<User> findByDomainAfter(String domain, String email) {
+        NavigableMap<String, User> users = byDomain.get(domain.toLowerCase(Locale.ROOT));
+        return users == null ? Collections.emptyList() : tail(users, email).values();
+    }
+
+    @Override
+    public Iterable<User> findLocked() {
+        return findLockedAfter("");
+    }
+
+    @Override
+    public Iterable<User> findLockedAfter(String email) {
+        return Iterables.filter(tail(locked, email).values(), User::isLocked);
+    }
+
+    @Override
+    public Page<User> findPage(int page, int size) {
+        User[] snapshot = ordered;
+        int from = (int) Math.min((long) page * size, snapshot.length);
+        return Page.numbered(slice(snapshot, from, size), page, size, snapshot.length);
+    }
+
+    @Override
+    public Page<User> findAfter(String email, int size) {
+        User[] snapshot = ordered;
+        int index = indexOf(snapshot, email);
+        int from = index < 0 ? -index - 1 : index + 1;
+        List<User> content = slice(snapshot, from, size);
+        String next = from + content.size() < snapshot.length ? content.get(content.size() - 1).getEmail() : null;
+        return Page.cursor(content, email.isEmpty(), size, (long) snapshot.length, next);
+    }
+
+    @Override
+    public synchronized User create(User user) {
+        user.markModified(modifications.incrementAndGet());
+        index(user);
+
+        User[] snapshot = ordered;
+        int index = indexOf(snapshot, user.getEmail());
+        if (index >= 0) {
+            snapshot = snapshot.clone();
+            snapshot[index] = user;
+        } else {
+            index = -index - 1;
+            User[] grown = new User[snapshot.length + 1];
+            System.arraycopy(snapshot, 0, grown, 0, index);
+            grown[index] = user;
+            System.arraycopy(snapshot, index, grown, index + 1, snapshot.length - index);
+            snapshot = grown;
+        }
+        ordered = snapshot;
+        return user;
+    }
+
+    /**
+     * Sorts the batch and merges it into the sorted users in one pass, instead of copying them for every user.
+     */
+    @Override
+    public synchronized void createAll(Collection<User> users) {
+        // The last user with an email wins, as with consecutive creates.
+        NavigableMap<String, User> batch = new TreeMap<>();
+        for (User user : users) {
+            user.markModified(modifications.incrementAndGet());
+            batch.put(user.getEmail(), user);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        User[] snapshot = ordered;
+        User[] merged = new User[snapshot.length + batch.size()];
+        int count = 0;
+        int i = 0;
+        for (User user : batch.values()) {
+            while (i < snapshot.length && snapshot[i].getEmail().compareTo(user.getEmail()) < 0) {
+                merged[count++] = snapshot[i++];
+            }
+            if (i < snapshot.length && snapshot[i].getEmail().equals(user.getEmail())) {
+                i++;
+            }
+            merged[count++] = user;
+        }
+        while (i < snapshot.length) {
+            merged[count++] = snapshot[i++];
+        }
+        ordered = count == merged.length ? merged : Arrays.copyOf(merged, count);
+
+        batch.values().forEach(this::index);
+    }
+
+    /**
+     * Adds the user to the secondary indexes, replacing a user with the same email.
+     */
+    private void index(User user) {
+        User previous = users.put(user.getEmail(), user);
+        if (previous != null) {
+            byRole.get(previous.getRole()).remove(previous.getEmail());
+            locked.remove(previous.getEmail());
+        }
+        byRole.get(user.getRole()).put(user.getEmail(), user);
+        byDomain.computeIfAbsent(domainOf(user.getEmail()), domain -> new ConcurrentSkipListMap<>()).put(user.getEmail(), user);
+        if (user.isLocked()) {
+            locked.put(user.getEmail(), user);
+        }
+    }
+
+    @Override
+    public synchronized void changeRole(User user, Role role) {
+        Role current = user.getRole();
+        if (current == role) {
+            return;
+        }
+        // Add before removing, so a reader of either index never misses the user (findByRole checks the role).
+        byRole.get(role).put(user.getEmail(), user);
+        user.changeRole(role);
+        user.markModified(modifications.incrementAndGet());
+        byRole.get(current).remove(user.getEmail(), user);
+    }
+
+    @Override
+    public void markLoginFailed(User user) {
+        if (user.markLoginFailed()) {
+            locked.put(user.getEmail(), user);
+            if (!user.isLocked()) {
+                // A concurrent successful login reset the lock in the meantime.
+                locked.remove(user.getEmail(), user);
+            }
+        }
+    }
+
+    @Override
+    public void markLoginSuccess(User user) {
+        user.markLoginSuccess();
+        if (locked.remove(user.getEmail(), user) && user.isLocked()) {
+            // A concurrent failed login locked the account again in the meantime.
+            locked.put(user.getEmail(), user);
+        }
+    }
+
+    /**
+     * Replaces the lockout state of the user, e.g. when it is read back from storage.
+     */
+    protected void restoreLoginState(User user, long loginState) {
+        user.restoreLoginState(loginState);
+        if (user.isLocked()) {
+            locked.put(user.getEmail(), user);
+        } else {
+            locked.remove(user.getEmail(), user);
+        }
+    }
+
+    @Override
+    public boolean changePassword(User user, String currentPassword, String newPassword) {
+        return user.changePassword(currentPassword, newPassword);
+    }
+
+    private static String domainOf(String email) {
+        return email.substring(email.lastIndexOf('@') + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static NavigableMap<String, User> tail(NavigableMap<String, User> users, String email) {
+        return email.isEmpty() ? users : users.tailMap(email, false);
+    }
+
+    private static List<User> slice(User[] snapshot, int from, int size) {
+        int to = (int) Math.min((long) from + size, snapshot.length);
+        return from >= to ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(snapshot).subList(from, to));
+    }
+
+    private static int indexOf(User[] snapshot, String email) {
+        int low = 0;
+        int high = snapshot.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = snapshot[mid].getEmail().compareTo(email);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+}
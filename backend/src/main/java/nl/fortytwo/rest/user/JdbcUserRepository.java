@@ -0,0 +1,348 @@
+package nl.fortytwo.rest.user;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.sql.DataSource;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterables;
+
+import nl.fortytwo.rest.util.Page;
+
+/**
+ * Keeps the users in a relational database, in the tables of <code>users-schema.sql</code> which are created if they do
+ * not exist. The indexes of InMemoryUserRepository are database indexes here.
+ *
+ * Users are read in chunks of <code>fetchSize</code> rows sorted by email, each chunk continuing after the last email of
+ * the previous one. Only one chunk is in memory at a time and no connection is held in between, so streaming all users
+ * to a slow client neither grows the heap nor keeps a connection from the pool.
+ *
+ * The version of the repository is the highest version of a user, the versions are taken from a sequence so all nodes
+ * using the database agree on them.
+ */
+public class JdbcUserRepository implements UserRepository {
+
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
+    private static final String COLUMNS = "email, password, role, login_state, version";
+
+    private static final String SELECT = "SELECT " + COLUMNS + " FROM users";
+
+    private static final String UPDATE = "UPDATE users SET password = ?, role = ?, domain = ?, login_state = ?, "
+            + "version = NEXT VALUE FOR user_versions WHERE email = ?";
+
+    private static final String INSERT = "INSERT INTO users (password, role, domain, login_state, version, email) "
+            + "VALUES (?, ?, ?, ?, NEXT VALUE FOR user_versions, ?)";
+
+    private static final String SELECT_EPOCH = "SELECT epoch FROM user_store WHERE id = 1";
+
+    private static final RowMapper<User> USER_MAPPER = JdbcUserRepository::mapUser;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int fetchSize;
+
+    private final long epoch;
+
+    /**
+     * @param dataSource the (pooled) database.
+     * @param fetchSize the number of users read at once.
+     * @param encoder used to create the example users when the database holds no users yet.
+     */
+    public JdbcUserRepository(DataSource dataSource, int fetchSize, PasswordEncoder encoder) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.fetchSize = fetchSize;
+        DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource("users-schema.sql")), dataSource);
+        this.epoch = loadEpoch();
+        if (count() == 0L) {
+            createAll(Arrays.asList(
+                    new User("user@42.nl", encoder.encode("123456"), Role.ROLE_USER),
+                    new User("admin@42.nl", encoder.encode("123456"), Role.ROLE_ADMIN),
+                    new User("random@42.nl", encoder.encode("123456"), Role.ROLE_USER)));
+        }
+    }
+
+    /**
+     * The epoch is stored with the users, so the versions only start over when the database does. The store is a single
+     * keyed row: of nodes starting against an empty database at the same time only one inserts it, the others read it.
+     */
+    private long loadEpoch() {
+        List<Long> epochs = jdbcTemplate.queryForList(SELECT_EPOCH, Long.class);
+        if (!epochs.isEmpty()) {
+            return epochs.get(0);
+        }
+        try {
+            jdbcTemplate.update("INSERT INTO user_store (id, epoch) VALUES (1, ?)", System.currentTimeMillis());
+        } catch (DuplicateKeyException ex) {
+            // Inserted by another node in the meantime.
+        }
+        return jdbcTemplate.queryForObject(SELECT_EPOCH, Long.class);
+    }
+
+    @Override
+    public long getEpoch() {
+        return epoch;
+    }
+
+    @Override
+    public long getVersion() {
+        return jdbcTemplate.queryForObject("SELECT COALESCE(MAX(version), 0) FROM users", Long.class);
+    }
+
+    @Override
+    public Iterable<User> findAll() {
+        return scan("", "");
+    }
+
+    @Override
+    public Optional<User> findByEmail(String email) {
+        return jdbcTemplate.query(SELECT + " WHERE email = ?", USER_MAPPER, email == null ? "" : email).stream().findFirst();
+    }
+
+    @Override
+    public Iterable<User> findAllAfter(String email) {
+        return scan("", email);
+    }
+
+    @Override
+    public Iterable<User> findByRole(Role role) {
+        return findByRoleAfter(role, "");
+    }
+
+    @Override
+    public Iterable<User> findByRoleAfter(Role role, String email) {
+        return scan("role = ? AND ", email, role.name());
+    }
+
+    @Override
+    public Iterable<User> findByDomain(String domain) {
+        return findByDomainAfter(domain, "");
+    }
+
+    @Override
+    public Iterable<User> findByDomainAfter(String domain, String email) {
+        return scan("domain = ? AND ", email, domain.toLowerCase(Locale.ROOT));
+    }
+
+    @Override
+    public Iterable<User> findLocked() {
+        return findLockedAfter("");
+    }
+
+    @Override
+    public Iterable<User> findLockedAfter(String email) {
+        long minimum = User.minimumLockedState(System.currentTimeMillis());
+        return Iterables.filter(scan("login_state >= ? AND ", email, minimum), User::isLocked);
+    }
+
+    @Override
+    public Page<User> findPage(int page, int size) {
+        List<User> content = jdbcTemplate.query(SELECT + " ORDER BY email LIMIT ? OFFSET ?", USER_MAPPER, size, (long) page * size);
+        return Page.numbered(content, page, size, count());
+    }
+
+    @Override
+    public Page<User> findAfter(String email, int size) {
+        List<User> content = jdbcTemplate.query(SELECT + " WHERE email > ? ORDER BY email LIMIT ?", USER_MAPPER, email, size + 1);
+        String next = null;
+        if (content.size() > size) {
+            content = content.subList(0, size);
+            next = content.get(size - 1).getEmail();
+        }
+        return Page.cursor(content, email.isEmpty(), size, count(), next);
+    }
+
+    @Override
+    public User create(User user) {
+        Object[] values = values(user);
+        if (jdbcTemplate.update(UPDATE, values) == 0) {
+            try {
+                jdbcTemplate.update(INSERT, values);
+            } catch (DuplicateKeyException ex) {
+                // Inserted concurrently in the meantime.
+                jdbcTemplate.update(UPDATE, values);
+            }
+        }
+        user.markModified(readVersion(user));
+        return user;
+    }
+
+    /**
+     * Updates the existing users in one batch and inserts the others in a second one, in a single transaction. The
+     * versions of the given User objects are not updated, they are read along with the users. When another node inserts
+     * one of the users in between, the inserts are rolled back to before the batch and retried one by one, updating
+     * the users that now exist, as {@link #create} does.
+     */
+    @Override
+    public void createAll(Collection<User> users) {
+        Map<String, Object[]> rows = new LinkedHashMap<>();
+        for (User user : users) {
+            rows.put(user.getEmail(), values(user));
+        }
+        List<Object[]> updates = new ArrayList<>(rows.values());
+        transactionTemplate.execute(status -> {
+            int[] updated = jdbcTemplate.batchUpdate(UPDATE, updates);
+            List<Object[]> inserts = new ArrayList<>();
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] == 0) {
+                    inserts.add(updates.get(i));
+                }
+            }
+            if (!inserts.isEmpty()) {
+                Object savepoint = status.createSavepoint();
+                try {
+                    jdbcTemplate.batchUpdate(INSERT, inserts);
+                } catch (DuplicateKeyException ex) {
+                    status.rollbackToSavepoint(savepoint);
+                    for (Object[] values : inserts) {
+                        if (jdbcTemplate.update(UPDATE, values) == 0) {
+                            jdbcTemplate.update(INSERT, values);
+                        }
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void changeRole(User user, Role role) {
+        if (user.getRole() == role) {
+            return;
+        }
+        jdbcTemplate.update("UPDATE users SET role = ?, version = NEXT VALUE FOR user_versions WHERE email = ?", role.name(), user.getEmail());
+        user.changeRole(role);
+        user.markModified(readVersion(user));
+    }
+
+    @Override
+    public boolean changePassword(User user, String currentPassword, String newPassword) {
+        int updated = currentPassword == null
+                ? jdbcTemplate.update("UPDATE users SET password = ? WHERE email = ? AND password IS NULL", newPassword, user.getEmail())
+                : jdbcTemplate.update("UPDATE users SET password = ? WHERE email = ? AND password = ?", newPassword, user.getEmail(),
+                        currentPassword);
+        if (updated == 0) {
+            return false;
+        }
+        user.changePassword(currentPassword, newPassword);
+        return true;
+    }
+
+    /**
+     * Updates the stored state only if nobody else did in the meantime, e.g. a login on another node, otherwise the
+     * attempt is counted again on the stored state.
+     */
+    @Override
+    public void markLoginFailed(User user) {
+        while (true) {
+            long current = user.getLoginState();
+            user.markLoginFailed();
+            if (jdbcTemplate.update("UPDATE users SET login_state = ? WHERE email = ? AND login_state = ?", user.getLoginState(),
+                    user.getEmail(), current) > 0) {
+                return;
+            }
+            List<Long> stored = jdbcTemplate.queryForList("SELECT login_state FROM users WHERE email = ?", Long.class, user.getEmail());
+            if (stored.isEmpty()) {
+                return;
+            }
+            user.restoreLoginState(stored.get(0));
+        }
+    }
+
+    @Override
+    public void markLoginSuccess(User user) {
+        // The user was read for this login, so most successful logins have nothing to reset.
+        if (user.getLoginState() != 0L) {
+            user.markLoginSuccess();
+            jdbcTemplate.update("UPDATE users SET login_state = 0 WHERE email = ?", user.getEmail());
+        }
+    }
+
+    private long count() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Long.class);
+    }
+
+    private long readVersion(User user) {
+        return jdbcTemplate.queryForObject("SELECT version FROM users WHERE email = ?", Long.class, user.getEmail());
+    }
+
+    /**
+     * @param condition the condition on the other columns, followed by AND.
+     * @param email the email to continue after, empty to start at the first user.
+     * @return the users sorted by email, read a chunk at a time while iterating.
+     */
+    private Iterable<User> scan(String condition, String email, Object... arguments) {
+        String sql = SELECT + " WHERE " + condition + "email > ? ORDER BY email LIMIT ?";
+        Object[] chunkArguments = Arrays.copyOf(arguments, arguments.length + 2);
+        chunkArguments[arguments.length + 1] = fetchSize;
+        return () -> new AbstractIterator<User>() {
+
+            private Iterator<User> chunk = Collections.emptyIterator();
+
+            private String after = email;
+
+            private boolean last;
+
+            @Override
+            protected User computeNext() {
+                if (!chunk.hasNext()) {
+                    if (last) {
+                        return endOfData();
+                    }
+                    Object[] values = chunkArguments.clone();
+                    values[arguments.length] = after;
+                    List<User> users = jdbcTemplate.query(sql, USER_MAPPER, values);
+                    last = users.size() < fetchSize;
+                    if (users.isEmpty()) {
+                        return endOfData();
+                    }
+                    after = users.get(users.size() - 1).getEmail();
+                    chunk = users.iterator();
+                }
+                return chunk.next();
+            }
+
+        };
+    }
+
+    private static Object[] values(User user) {
+        return new Object[] { user.getPassword(), user.getRole().name(), domainOf(user.getEmail()), user.getLoginState(), user.getEmail() };
+    }
+
+    private static User mapUser(ResultSet rs, int row) throws SQLException {
+        User user = new User(rs.getString("email"), rs.getString("password"), Role.valueOf(rs.getString("role")));
+        user.restoreLoginState(rs.getLong("login_state"));
+        user.markModified(rs.getLong("version"));
+        return user;
+    }
+
+    private static String domainOf(String email) {
+        return email.substring(email.lastIndexOf('@') + 1).toLowerCase(Locale.ROOT);
+    }
+
+}
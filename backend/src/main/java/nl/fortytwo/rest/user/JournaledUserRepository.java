@@ -0,0 +1,203 @@
+package nl.fortytwo.rest.user;
+
+import java.io.Closeable;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Keeps the users in memory like {@link InMemoryUserRepository}, and writes every change to a {@link UserJournal} before
+ * it is acknowledged. On startup the users are recovered from the latest snapshot and the journal that follows it.
+ *
+ * Every <code>snapshotRecords</code> changes the journal starts a new segment and a snapshot of the users is written in
+ * the background, after which the older segments are deleted. This bounds both the disk usage and the recovery time.
+ */
+public class JournaledUserRepository extends InMemoryUserRepository implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JournaledUserRepository.class);
+
+    private final UserJournal journal;
+
+    private final int snapshotRecords;
+
+    private final AtomicBoolean snapshotting = new AtomicBoolean();
+
+    private final ExecutorService snapshotExecutor;
+
+    /**
+     * @param directory the directory holding the journal and snapshots, created if it does not exist.
+     * @param snapshotRecords the number of changes after which a snapshot is taken.
+     * @param encoder used to create the example users when the directory holds no users yet.
+     */
+    public JournaledUserRepository(Path directory, int snapshotRecords, PasswordEncoder encoder) {
+        this.journal = new UserJournal(directory);
+        this.snapshotRecords = snapshotRecords;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("user-snapshot-");
+        threadFactory.setDaemon(true);
+        this.snapshotExecutor = Executors.newSingleThreadExecutor(threadFactory);
+        long started = System.nanoTime();
+        journal.recover(new Recovery());
+        LOGGER.info("Recovered {} user changes in {} ms", getVersion(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        if (!findAll().iterator().hasNext()) {
+            seed(encoder);
+        }
+    }
+
+    @Override
+    public User create(User user) {
+        long sequence;
+        // Keeps the journal in the order of the in memory creates when the same email is created concurrently.
+        synchronized (this) {
+            super.create(user);
+            sequence = journal.create(user);
+        }
+        sync(sequence);
+        return user;
+    }
+
+    /**
+     * Writes the records of all users before waiting for a single fsync.
+     */
+    @Override
+    public void createAll(Collection<User> users) {
+        long sequence = 0L;
+        synchronized (this) {
+            super.createAll(users);
+            for (User user : users) {
+                sequence = journal.create(user);
+            }
+        }
+        sync(sequence);
+    }
+
+    @Override
+    public void changeRole(User user, Role role) {
+        super.changeRole(user, role);
+        sync(journal.changeRole(user));
+    }
+
+    @Override
+    public boolean changePassword(User user, String currentPassword, String newPassword) {
+        long sequence;
+        synchronized (user) {
+            if (!super.changePassword(user, currentPassword, newPassword)) {
+                return false;
+            }
+            sequence = journal.changePassword(user);
+        }
+        sync(sequence);
+        return true;
+    }
+
+    @Override
+    public void markLoginFailed(User user) {
+        super.markLoginFailed(user);
+        sync(journal.changeLoginState(user));
+    }
+
+    @Override
+    public void markLoginSuccess(User user) {
+        boolean reset = user.getLoginState() != 0L;
+        super.markLoginSuccess(user);
+        // Most logins succeed without earlier failures, these do not change the state.
+        if (reset || user.getLoginState() != 0L) {
+            sync(journal.changeLoginState(user));
+        }
+    }
+
+    /**
+     * Waits for the fsync of the record, and starts a snapshot once the current segment is full.
+     */
+    private void sync(long sequence) {
+        journal.sync(sequence);
+        if (journal.getSegmentRecords() >= snapshotRecords && snapshotting.compareAndSet(false, true)) {
+            snapshotExecutor.execute(() -> {
+                try {
+                    snapshot();
+                } catch (UncheckedIOException ex) {
+                    LOGGER.warn("Could not snapshot the users, the journal is kept instead", ex);
+                } finally {
+                    snapshotting.set(false);
+                }
+            });
+        }
+    }
+
+    private void snapshot() {
+        long segment = journal.rotate();
+        journal.snapshot(segment, findAll());
+    }
+
+    /**
+     * Waits for a running snapshot and writes a final one, so the next start does not need to replay the journal.
+     */
+    @Override
+    public void close() {
+        snapshotExecutor.shutdown();
+        try {
+            snapshotExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            snapshot();
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * Applies the recovered changes without writing them to the journal again. The users of the snapshot, written in
+     * no particular order, are created in one batch, so they are sorted once instead of inserted one by one; the
+     * creates of the journal that follows are applied one at a time.
+     */
+    private final class Recovery implements UserJournal.Replay {
+
+        private List<User> snapshot = new ArrayList<>();
+
+        @Override
+        public void create(String email, String password, Role role, long loginState) {
+            User user = new User(email, password, role);
+            user.restoreLoginState(loginState);
+            if (snapshot != null) {
+                snapshot.add(user);
+            } else {
+                JournaledUserRepository.super.create(user);
+            }
+        }
+
+        @Override
+        public void endOfSnapshot() {
+            JournaledUserRepository.super.createAll(snapshot);
+            snapshot = null;
+        }
+
+        @Override
+        public void changeRole(String email, Role role) {
+            findByEmail(email).ifPresent(user -> JournaledUserRepository.super.changeRole(user, role));
+        }
+
+        @Override
+        public void changePassword(String email, String password) {
+            findByEmail(email).ifPresent(user -> JournaledUserRepository.super.changePassword(user, user.getPassword(), password));
+        }
+
+        @Override
+        public void changeLoginState(String email, long loginState) {
+            findByEmail(email).ifPresent(user -> restoreLoginState(user, loginState));
+        }
+
+    }
+
+}
@@ -1,38 +1,128 @@
 package nl.fortytwo.rest.user;
 
-import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.Charset;
-import java.util.HashSet;
-import java.util.Set;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
-@Component
-public class PasswordBlacklist {
+/**
+ * Rejects passwords from a {@link PasswordBlacklistIndex}, e.g. one built from a breach corpus with
+ * {@link #buildIndex(Path, Path)}. The index is memory mapped, so its size affects neither the startup time nor the heap.
+ *
+ * The index file is checked every <code>reloadSeconds</code>. When it was replaced, the new index is mapped and swapped
+ * in, checks in progress finish on the previous one. Replace the file by moving a new index over it, as
+ * {@link #buildIndex(Path, Path)} does; an incomplete file is ignored and the current index stays in use.
+ */
+public class PasswordBlacklist implements Closeable {
 
-    private Set<String> blacklist = new HashSet<>();
+    private static final Logger LOGGER = LoggerFactory.getLogger(PasswordBlacklist.class);
 
+    private final Path file;
+
+    private final ScheduledExecutorService reloader;
+
+    private volatile PasswordBlacklistIndex index;
+
+    private Object fileVersion;
+
+    /**
+     * Blacklists the 100 most used passwords, from an index built in a temporary file.
+     */
     public PasswordBlacklist() throws IOException {
-        load(getClass().getResourceAsStream("/top100-passwords.txt"));
+        this(defaultIndex(), 0);
     }
 
-    private void load(InputStream src) throws IOException {
-        BufferedReader in = new BufferedReader(new InputStreamReader(src, Charset.forName("UTF-8")));
-        try {
-            String pwd = null;
-            while ((pwd = in.readLine()) != null) {
-                blacklist.add(pwd);
-            }
+    /**
+     * @param file the index file.
+     * @param reloadSeconds the interval between checks for a new index file, 0 to never reload.
+     */
+    public PasswordBlacklist(Path file, int reloadSeconds) throws IOException {
+        this.file = file;
+        this.fileVersion = fileVersion();
+        this.index = PasswordBlacklistIndex.open(file);
+        LOGGER.info("Blacklisted {} passwords from {}", index.getEntries(), file);
+        if (reloadSeconds > 0) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("password-blacklist-");
+            threadFactory.setDaemon(true);
+            this.reloader = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            this.reloader.scheduleWithFixedDelay(this::reloadIfReplaced, reloadSeconds, reloadSeconds, TimeUnit.SECONDS);
+        } else {
+            this.reloader = null;
+        }
+    }
+
+    /**
+     * Builds an index of a text file with one password per line, and moves it over <code>target</code>.
+     */
+    public static void buildIndex(Path passwords, Path target) throws IOException {
+        PasswordBlacklistIndex.build(passwords, target);
+    }
+
+    private static Path defaultIndex() throws IOException {
+        Path passwords = Files.createTempFile("top100-passwords", ".txt");
+        Path index = Files.createTempFile("top100-passwords", ".idx");
+        try (InputStream in = PasswordBlacklist.class.getResourceAsStream("/top100-passwords.txt")) {
+            Files.copy(in, passwords, StandardCopyOption.REPLACE_EXISTING);
+            buildIndex(passwords, index);
         } finally {
-            in.close();
+            Files.delete(passwords);
         }
+        // The mapping stays valid after the file is gone.
+        index.toFile().deleteOnExit();
+        return index;
     }
 
     public boolean isBlacklisted(String pwd) {
-        return blacklist.contains(pwd);
+        return index.contains(pwd);
+    }
+
+    /**
+     * Maps the index file again if it was replaced since it was last mapped.
+     *
+     * @return whether a new index is in use.
+     */
+    public synchronized boolean reloadIfReplaced() {
+        try {
+            Object version = fileVersion();
+            if (Objects.equals(version, fileVersion)) {
+                return false;
+            }
+            PasswordBlacklistIndex replacement = PasswordBlacklistIndex.open(file);
+            index = replacement;
+            fileVersion = version;
+            LOGGER.info("Reloaded {} blacklisted passwords from {}", replacement.getEntries(), file);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Keeping the current password blacklist, cannot load {}", file, e);
+            return false;
+        }
+    }
+
+    /**
+     * A moved file has another file key (inode), a rewritten one another modification time or size.
+     */
+    private Object fileVersion() throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return Arrays.asList(attributes.fileKey(), attributes.lastModifiedTime(), attributes.size());
+    }
+
+    @Override
+    public void close() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+        }
     }
 
 }
@@ -0,0 +1,227 @@
+package nl.fortytwo.rest.user;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read only set of hashed passwords in a file, which is memory mapped rather than loaded so opening it takes the same
+ * time for a hundred passwords as for a hundred million. The pages are read by the operating system as they are probed,
+ * and shared with every other process mapping the same file.
+ *
+ * The file holds a header, a Bloom filter and an open addressing hash table of 64-bit fingerprints:
+ *
+ * <pre>
+ * [int magic][int version][long entries][long bloom bits][int hashes][long slots][padding to 64 bytes]
+ * [long * bloom bits / 64]
+ * [long * slots]
+ * </pre>
+ *
+ * The Bloom filter is probed first, it answers most passwords that are not in the set from a handful of cache lines.
+ * Only the others probe the hash table, which is at most half full so a probe ends at an empty slot after about two reads.
+ * Passwords are hashed over their chars, so a probe neither encodes nor allocates. Two different passwords with the same
+ * fingerprint are considered equal, the chance of that is below one in 10^11 for a set of 100 million passwords.
+ */
+final class PasswordBlacklistIndex {
+
+    private static final int MAGIC = 0x50574249;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64;
+
+    private static final int BLOOM_BITS_PER_ENTRY = 10;
+
+    private static final int BLOOM_HASHES = 7;
+
+    private static final int REGION_SHIFT = 30;
+
+    private static final long REGION_MASK = (1L << REGION_SHIFT) - 1;
+
+    private static final long FIRST_SEED = 0xcbf29ce484222325L;
+
+    private static final long SECOND_SEED = 0x9e3779b97f4a7c15L;
+
+    private final MappedByteBuffer[] regions;
+
+    private final long entries;
+
+    private final long bloomMask;
+
+    private final int hashes;
+
+    private final long tableOffset;
+
+    private final long slotMask;
+
+    private PasswordBlacklistIndex(MappedByteBuffer[] regions, long entries, long bloomBits, int hashes, long slots) {
+        this.regions = regions;
+        this.entries = entries;
+        this.bloomMask = bloomBits - 1;
+        this.hashes = hashes;
+        this.tableOffset = HEADER_SIZE + bloomBits / 8;
+        this.slotMask = slots - 1;
+    }
+
+    /**
+     * Maps an index file, it stays usable after the file is replaced or deleted.
+     *
+     * @throws IOException if the file cannot be read or is not a complete index.
+     */
+    static PasswordBlacklistIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a password blacklist index");
+            }
+            MappedByteBuffer[] regions = map(channel, MapMode.READ_ONLY, size);
+            ByteBuffer header = regions[0];
+            long bloomBits = header.getLong(16);
+            int hashes = header.getInt(24);
+            long slots = header.getLong(28);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || Long.bitCount(bloomBits) != 1 || bloomBits < 64
+                    || Long.bitCount(slots) != 1 || hashes < 1 || size != HEADER_SIZE + bloomBits / 8 + slots * 8) {
+                throw new IOException("Not a complete password blacklist index");
+            }
+            return new PasswordBlacklistIndex(regions, header.getLong(8), bloomBits, hashes, slots);
+        }
+    }
+
+    /**
+     * Builds an index of the passwords in a text file with one password per line. The file is read twice, once to count
+     * the passwords and once to add them, so the memory use does not depend on its size. The index is written next to
+     * the target and then moved over it, so a blacklist watching the target never sees a partial index.
+     */
+    static void build(Path passwords, Path target) throws IOException {
+        long count = 0L;
+        try (BufferedReader in = Files.newBufferedReader(passwords, StandardCharsets.UTF_8)) {
+            while (in.readLine() != null) {
+                count++;
+            }
+        }
+        long bloomBits = Math.max(64L, Long.highestOneBit(Math.max(1L, count * BLOOM_BITS_PER_ENTRY) * 2 - 1));
+        long slots = Math.max(8L, Long.highestOneBit(Math.max(1L, count * 2) * 2 - 1));
+        long size = HEADER_SIZE + bloomBits / 8 + slots * 8;
+
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer[] regions = map(channel, MapMode.READ_WRITE, size);
+            PasswordBlacklistIndex index = new PasswordBlacklistIndex(regions, 0L, bloomBits, BLOOM_HASHES, slots);
+            long entries = 0L;
+            try (BufferedReader in = Files.newBufferedReader(passwords, StandardCharsets.UTF_8)) {
+                String password;
+                while ((password = in.readLine()) != null) {
+                    if (index.add(password)) {
+                        entries++;
+                    }
+                }
+            }
+            ByteBuffer header = regions[0];
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putLong(8, entries);
+            header.putLong(16, bloomBits);
+            header.putInt(24, BLOOM_HASHES);
+            header.putLong(28, slots);
+            for (MappedByteBuffer region : regions) {
+                region.force();
+            }
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    long getEntries() {
+        return entries;
+    }
+
+    boolean contains(String password) {
+        long first = hash(password, FIRST_SEED);
+        long second = hash(password, SECOND_SEED) | 1L;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (first + i * second) & bloomMask;
+            if ((getLong(HEADER_SIZE + (bit >>> 6) * 8) & (1L << bit)) == 0L) {
+                return false;
+            }
+        }
+        long fingerprint = first == 0L ? 1L : first;
+        for (long slot = second & slotMask;; slot = (slot + 1) & slotMask) {
+            long stored = getLong(tableOffset + slot * 8);
+            if (stored == fingerprint) {
+                return true;
+            }
+            if (stored == 0L) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return false if the password was added before.
+     */
+    private boolean add(String password) {
+        long first = hash(password, FIRST_SEED);
+        long second = hash(password, SECOND_SEED) | 1L;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (first + i * second) & bloomMask;
+            long position = HEADER_SIZE + (bit >>> 6) * 8;
+            putLong(position, getLong(position) | (1L << bit));
+        }
+        long fingerprint = first == 0L ? 1L : first;
+        for (long slot = second & slotMask;; slot = (slot + 1) & slotMask) {
+            long stored = getLong(tableOffset + slot * 8);
+            if (stored == fingerprint) {
+                return false;
+            }
+            if (stored == 0L) {
+                putLong(tableOffset + slot * 8, fingerprint);
+                return true;
+            }
+        }
+    }
+
+    private long getLong(long position) {
+        return regions[(int) (position >>> REGION_SHIFT)].getLong((int) (position & REGION_MASK));
+    }
+
+    private void putLong(long position, long value) {
+        regions[(int) (position >>> REGION_SHIFT)].putLong((int) (position & REGION_MASK), value);
+    }
+
+    /**
+     * FNV-1a over the chars, followed by the MurmurHash3 finalizer to spread the bits.
+     */
+    private static long hash(String password, long seed) {
+        long hash = seed;
+        for (int i = 0; i < password.length(); i++) {
+            hash = (hash ^ password.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * Maps the file in regions of 1 GiB, a single buffer cannot exceed 2 GiB. All longs are aligned, so none of them
+     * crosses the border of two regions.
+     */
+    private static MappedByteBuffer[] map(FileChannel channel, MapMode mode, long size) throws IOException {
+        MappedByteBuffer[] regions = new MappedByteBuffer[(int) ((size + REGION_MASK) >>> REGION_SHIFT)];
+        for (int i = 0; i < regions.length; i++) {
+            long offset = (long) i << REGION_SHIFT;
+            regions[i] = channel.map(mode, offset, Math.min(REGION_MASK + 1, size - offset));
+        }
+        return regions;
+    }
+
+}
@@ -27,7 +27,7 @@ public class PrincipalService {
     public void markLoginFailed(String email) {
         Optional<User> user = userRepository.findByEmail(email);
         if (user.isPresent()) {
-            user.get().markLoginFailed();
+            userRepository.markLoginFailed(user.get());
         }
     }
 
@@ -38,8 +38,27 @@ public class PrincipalService {
     public void markLoginSuccess(String email) {
         Optional<User> user = userRepository.findByEmail(email);
         if (user.isPresent()) {
-            user.get().markLoginFailed();
+            markLoginSuccess(user.get());
         }
     }
 
+    /**
+     * marks a login attempt as successful.
+     * @param user the user that was just authenticated, avoids looking it up again.
+     */
+    public void markLoginSuccess(User user) {
+        userRepository.markLoginSuccess(user);
+    }
+
+    /**
+     * Replaces the password hash of the user, but only if it has not been changed in the meantime.
+     * @param user the user.
+     * @param currentPassword the hash that is expected to be stored.
+     * @param newPassword the replacement hash.
+     * @return true if the hash was replaced.
+     */
+    public boolean changePassword(User user, String currentPassword, String newPassword) {
+        return userRepository.changePassword(user, currentPassword, newPassword);
+    }
+
 }
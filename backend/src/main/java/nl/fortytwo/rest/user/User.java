@@ -1,7 +1,8 @@
 package nl.fortytwo.rest.user;
 
 import java.io.Serializable;
-import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class User implements Serializable {
 
@@ -16,17 +17,31 @@ public class User implements Serializable {
      */
     public static final long LOCK_TIMEOUT_IN_MINUTES = 10;
 
-    private Date lastAttempt = new Date(0);
+    private static final long LOCK_TIMEOUT_IN_MILLIS = TimeUnit.MINUTES.toMillis(LOCK_TIMEOUT_IN_MINUTES);
 
-    private int failedAttempts = 0;
+    private static final int ATTEMPT_BITS = 16;
 
-    private Role role;
+    private static final long ATTEMPT_MASK = (1L << ATTEMPT_BITS) - 1;
+
+    /**
+     * The lockout state packed in a single value so it can be updated atomically: the time the account was locked in
+     * the high bits and the number of failed attempts since in the low {@value #ATTEMPT_BITS} bits.
+     */
+    private final AtomicLong loginState = new AtomicLong();
+
+    private volatile Role role;
 
     private String email;
 
+    /**
+     * Incremented on every change that is visible outside the security module (e.g. the role), so that cached
+     * representations of the user can tell they are stale.
+     */
+    private volatile long version;
+
     private boolean active = true;
 
-    private String password;
+    private volatile String password;
 
     public User() {
         this("", Role.ROLE_ANONYMOUS);
@@ -43,23 +58,52 @@ public class User implements Serializable {
     }
 
     public boolean isLocked() {
-        Date unlock = new Date(System.currentTimeMillis() - LOCK_TIMEOUT_IN_MINUTES * 60L * 1000L);
-        return unlock.before(lastAttempt);
+        return (loginState.get() >>> ATTEMPT_BITS) > System.currentTimeMillis() - LOCK_TIMEOUT_IN_MILLIS;
+    }
+
+    /**
+     * @return the lowest packed login state of an account that is locked at the given time, so stored states can be
+     *         compared without unpacking them.
+     */
+    static long minimumLockedState(long now) {
+        return (now - LOCK_TIMEOUT_IN_MILLIS + 1) << ATTEMPT_BITS;
     }
 
     public void markLoginSuccess() {
-        failedAttempts = 0;
-        lastAttempt = new Date(0);
+        loginState.set(0L);
     }
 
-    public void markLoginFailed() {
-        failedAttempts++;
-        if (failedAttempts >= MAX_FAILED_LOGIN_ATTEMPTS_BEFORE_LOCK) {
-            lastAttempt = new Date();
-            failedAttempts = 0;
+    /**
+     * @return true if this attempt locked the account.
+     */
+    public boolean markLoginFailed() {
+        long now = System.currentTimeMillis();
+        while (true) {
+            long current = loginState.get();
+            long attempts = (current & ATTEMPT_MASK) + 1;
+            boolean lock = attempts >= MAX_FAILED_LOGIN_ATTEMPTS_BEFORE_LOCK;
+            long next = lock ? now << ATTEMPT_BITS : (current & ~ATTEMPT_MASK) | attempts;
+            if (loginState.compareAndSet(current, next)) {
+                return lock;
+            }
         }
     }
 
+    int getFailedAttempts() {
+        return (int) (loginState.get() & ATTEMPT_MASK);
+    }
+
+    /**
+     * @return the packed lockout state, so it can be stored and restored.
+     */
+    long getLoginState() {
+        return loginState.get();
+    }
+
+    void restoreLoginState(long state) {
+        loginState.set(state);
+    }
+
     public String getEmail() {
         return email;
     }
@@ -72,7 +116,40 @@ public class User implements Serializable {
         return role;
     }
 
+    public synchronized void changeRole(Role role) {
+        if (this.role != role) {
+            this.role = role;
+            version++;
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Moves the version to a repository wide modification number, so the version also changes when the user is replaced
+     * by another one with the same email.
+     */
+    synchronized void markModified(long modification) {
+        version = Math.max(version + 1, modification);
+    }
+
     public String getPassword() {
         return password;
     }
+
+    /**
+     * Replaces the password hash, but only if it has not been changed in the meantime.
+     * @param currentPassword the hash that is expected to be stored.
+     * @param newPassword the replacement hash.
+     * @return true if the hash was replaced.
+     */
+    public synchronized boolean changePassword(String currentPassword, String newPassword) {
+        if (password == null ? currentPassword != null : !password.equals(currentPassword)) {
+            return false;
+        }
+        password = newPassword;
+        return true;
+    }
 }
@@ -1,43 +1,117 @@
 package nl.fortytwo.rest.user;
 
-import static java.util.stream.Collectors.toList;
-import static java.util.stream.StreamSupport.stream;
-
 import java.util.List;
+import java.util.Optional;
 
 import javax.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import com.google.common.collect.Iterables;
 
 import nl.fortytwo.rest.user.dto.CreateUserDTO;
+import nl.fortytwo.rest.user.dto.CreateUserResultDTO;
 import nl.fortytwo.rest.user.dto.UserDTO;
+import nl.fortytwo.rest.util.ETags;
+import nl.fortytwo.rest.util.Page;
 
+/**
+ * The GET requests answer with an ETag derived from the version of the user or of the repository. The If-None-Match
+ * header is evaluated before the users are read or mapped, so a client that polls for changes mostly gets an empty 304.
+ */
 @RestController
 @RequestMapping("/users")
 public class UserController {
+
+    static final int DEFAULT_PAGE_SIZE = 20;
+
+    static final int MAX_PAGE_SIZE = 100;
+
     private final UserService userService;
 
+    private final UserQueryParser queryParser = new UserQueryParser();
+
     @Autowired
     public UserController(UserService userService) {
         this.userService = userService;
     }
 
-    @RequestMapping(value = "/{email}", method = RequestMethod.GET)
-    public UserDTO findById(@PathVariable String email) {
-        return UserDTO.toResultDTO(userService.findByEmail(email));
+    @RequestMapping(value = "/{email:.+}", method = RequestMethod.GET)
+    public UserDTO findById(@PathVariable String email, ServletWebRequest request) {
+        Optional<User> user = userService.findByEmail(email);
+        if (user.isPresent() && ETags.checkNotModified(request, userService.getETag(user.get()))) {
+            return null;
+        }
+        return UserDTO.toResultDTO(user);
+    }
+
+    /**
+     * Streams the users: the DTO's are created while Jackson writes the array to the response, one element at a time,
+     * so the memory used does not depend on the number of users. Accepts the filters and sort of UserQueryParser.
+     */
+    @RequestMapping(method = RequestMethod.GET, params = { "!page", "!size", "!cursor" })
+    public Iterable<UserDTO> get(@RequestParam MultiValueMap<String, String> parameters, ServletWebRequest request) {
+        UserQuery query = queryParser.parse(parameters);
+        if (isNotModified(query, request)) {
+            return null;
+        }
+        return Iterables.transform(userService.find(query), UserDTO::toResultDTO);
     }
 
-    @RequestMapping(method = RequestMethod.GET)
-    public List<UserDTO> get() {
-        return stream(userService.findAll().spliterator(), false).map(user -> UserDTO.toResultDTO(user)).collect(toList());
+    /**
+     * A numbered page of users sorted by email: <code>GET /users?page=2&amp;size=20</code>, optionally filtered and
+     * sorted, e.g. <code>GET /users?page=0&amp;role=ROLE_ADMIN&amp;sort=domain,desc</code>.
+     */
+    @RequestMapping(method = RequestMethod.GET, params = "!cursor")
+    public Page<UserDTO> findPage(@RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size,
+            @RequestParam MultiValueMap<String, String> parameters, ServletWebRequest request) {
+        if (page < 0) {
+            throw new IllegalArgumentException("Page must not be negative");
+        }
+        int limit = pageSize(size);
+        UserQuery query = queryParser.parse(parameters);
+        if (isNotModified(query, request)) {
+            return null;
+        }
+        return userService.findPage(query, page, limit).map(UserDTO::toResultDTO);
     }
 
-    @RequestMapping(value = "/{email}", method = RequestMethod.PUT)
+    /**
+     * A page of users sorted by email following a cursor: <code>GET /users?cursor=</code> for the first page, then
+     * <code>GET /users?cursor=[next]</code> with the <code>next</code> value of the previous page. Accepts the filters of
+     * UserQueryParser, but no other sort order than by email.
+     */
+    @RequestMapping(method = RequestMethod.GET, params = "cursor")
+    public Page<UserDTO> findAfter(@RequestParam String cursor, @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size,
+            @RequestParam MultiValueMap<String, String> parameters, ServletWebRequest request) {
+        int limit = pageSize(size);
+        UserQuery query = queryParser.parse(parameters);
+        if (isNotModified(query, request)) {
+            return null;
+        }
+        return userService.findAfter(query, cursor, limit).map(UserDTO::toResultDTO);
+    }
+
+    private boolean isNotModified(UserQuery query, ServletWebRequest request) {
+        return query.isVersioned() && ETags.checkNotModified(request, userService.getETag());
+    }
+
+    private static int pageSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Size must be positive");
+        }
+        return Math.min(size, MAX_PAGE_SIZE);
+    }
+
+    @RequestMapping(value = "/{email:.+}", method = RequestMethod.PUT)
     public UserDTO update(@PathVariable String email, @Valid @RequestBody UserDTO form) {
         return UserDTO.toResultDTO(userService.update(email, form));
     }
@@ -46,4 +120,14 @@ public class UserController {
     public UserDTO create(@Valid @RequestBody CreateUserDTO form) {
         return UserDTO.toResultDTO(userService.create(form));
     }
+
+    /**
+     * Creates up to UserService.MAX_BATCH_SIZE users at once: <code>POST /users/batch</code> with an array of users.
+     * Invalid users do not fail the batch, the response has the created user or the errors of every user in the same
+     * order.
+     */
+    @RequestMapping(value = "/batch", method = RequestMethod.POST)
+    public List<CreateUserResultDTO> createAll(@RequestBody List<CreateUserDTO> forms) {
+        return userService.createAll(forms);
+    }
 }
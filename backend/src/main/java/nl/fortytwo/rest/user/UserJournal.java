@@ -0,0 +1,541 @@
+package nl.fortytwo.rest.user;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The files of a {@link JournaledUserRepository}: journal segments with the changes of the users, and snapshots with all
+ * users at the start of a segment.
+ *
+ * A change is appended to the current segment as a record of [length][type][data][CRC32], which returns the sequence
+ * number of the record. {@link #sync} then waits until the record is on disk: the first waiting thread forces the
+ * segment for every record written so far while the others wait for it, so concurrent changes share one fsync.
+ *
+ * A record holds the new value (e.g. the new role) rather than the change, so replaying a record on a state that already
+ * contains it is harmless. This allows a snapshot to be taken from the live users while they are being changed: the
+ * records of the segment it starts are replayed on top of it during recovery.
+ */
+final class UserJournal implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserJournal.class);
+
+    private static final byte CREATE_USER = 1;
+
+    private static final byte CHANGE_ROLE = 2;
+
+    private static final byte CHANGE_PASSWORD = 3;
+
+    private static final byte CHANGE_LOGIN_STATE = 4;
+
+    private static final byte END_OF_SNAPSHOT = 5;
+
+    private static final int SNAPSHOT_MAGIC = 0x55534e50;
+
+    private static final int SNAPSHOT_HEADER_SIZE = Integer.BYTES + Long.BYTES;
+
+    private static final int MAP_SIZE = 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Receives the recovered users and changes.
+     */
+    interface Replay {
+
+        void create(String email, String password, Role role, long loginState);
+
+        void changeRole(String email, Role role);
+
+        void changePassword(String email, String password);
+
+        void changeLoginState(String email, long loginState);
+
+        /**
+         * Called once the snapshot, if any, has been loaded and before the segments that follow it are replayed.
+         */
+        void endOfSnapshot();
+
+    }
+
+    @FunctionalInterface
+    private interface RecordWriter {
+
+        void write(DataOutputStream out) throws IOException;
+
+    }
+
+    private final Path directory;
+
+    /**
+     * Guards the writes to the segment and the rotation of segments.
+     */
+    private final Object appendLock = new Object();
+
+    private final Lock syncLock = new ReentrantLock();
+
+    private final Condition forced = syncLock.newCondition();
+
+    private volatile FileChannel channel;
+
+    private volatile long segment;
+
+    private volatile int segmentRecords;
+
+    private volatile long written;
+
+    // Guarded by syncLock.
+    private long synced;
+
+    // Guarded by syncLock.
+    private boolean syncing;
+
+    /**
+     * @param directory the directory holding the journal, created if it does not exist.
+     */
+    UserJournal(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not create user journal directory " + directory, ex);
+        }
+    }
+
+    /**
+     * Loads the latest complete snapshot and replays the segments that follow it, then starts a new segment. A segment
+     * that ends with a partially written or damaged record is truncated before it.
+     */
+    void recover(Replay replay) {
+        try {
+            for (Path temp : list("*" + TEMP_SUFFIX)) {
+                Files.delete(temp);
+            }
+            long from = 0L;
+            List<Long> snapshots = numbers(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+            Collections.reverse(snapshots);
+            for (long number : snapshots) {
+                if (loadSnapshot(number, replay)) {
+                    from = number;
+                    break;
+                }
+                LOGGER.warn("Skipping incomplete user snapshot {}", snapshotFile(number).getFileName());
+            }
+            replay.endOfSnapshot();
+            long last = from;
+            for (long number : numbers(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+                if (number >= from) {
+                    replaySegment(number, replay);
+                    last = Math.max(last, number);
+                }
+            }
+            openSegment(last + 1);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not recover the users from " + directory, ex);
+        }
+    }
+
+    long create(User user) {
+        return append(CREATE_USER, out -> writeUser(out, user));
+    }
+
+    long changeRole(User user) {
+        return append(CHANGE_ROLE, out -> {
+            out.writeUTF(user.getEmail());
+            out.writeUTF(user.getRole().name());
+        });
+    }
+
+    long changePassword(User user) {
+        return append(CHANGE_PASSWORD, out -> {
+            out.writeUTF(user.getEmail());
+            writePassword(out, user.getPassword());
+        });
+    }
+
+    long changeLoginState(User user) {
+        return append(CHANGE_LOGIN_STATE, out -> {
+            out.writeUTF(user.getEmail());
+            out.writeLong(user.getLoginState());
+        });
+    }
+
+    /**
+     * @return the number of records in the current segment.
+     */
+    int getSegmentRecords() {
+        return segmentRecords;
+    }
+
+    /**
+     * The state of the user is read while holding the append lock, so when the same user is changed concurrently the
+     * last record in the journal has its latest state.
+     */
+    private long append(byte type, RecordWriter writer) {
+        synchronized (appendLock) {
+            try {
+                ByteBuffer record = frame(type, writer);
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Could not append to the user journal", ex);
+            }
+            segmentRecords++;
+            return ++written;
+        }
+    }
+
+    /**
+     * Waits until the record with the sequence number is on disk.
+     */
+    void sync(long sequence) {
+        syncLock.lock();
+        try {
+            while (synced < sequence) {
+                if (syncing) {
+                    forced.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                long target = written;
+                syncLock.unlock();
+                try {
+                    channel.force(false);
+                } finally {
+                    syncLock.lock();
+                    syncing = false;
+                    forced.signalAll();
+                }
+                synced = Math.max(synced, target);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not sync the user journal", ex);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Closes the current segment and starts the next one.
+     * @return the number of the new segment, a snapshot with this number replaces the segments before it.
+     */
+    long rotate() {
+        synchronized (appendLock) {
+            closeSegment();
+            try {
+                openSegment(segment + 1);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Could not start a user journal segment", ex);
+            }
+            return segment;
+        }
+    }
+
+    /**
+     * Writes the users as the state at the start of the segment through a memory mapped file, then deletes the segments
+     * and snapshots it replaces.
+     */
+    void snapshot(long number, Iterable<User> users) {
+        Path temp = directory.resolve(snapshotFile(number).getFileName() + TEMP_SUFFIX);
+        try {
+            try (FileChannel file = FileChannel.open(temp, CREATE, TRUNCATE_EXISTING, READ, WRITE)) {
+                MappedWriter writer = new MappedWriter(file);
+                writer.put((ByteBuffer) ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE).putInt(SNAPSHOT_MAGIC).putLong(number).flip());
+                int count = 0;
+                for (User user : users) {
+                    writer.put(frame(CREATE_USER, out -> writeUser(out, user)));
+                    count++;
+                }
+                int total = count;
+                writer.put(frame(END_OF_SNAPSHOT, out -> out.writeInt(total)));
+                writer.finish();
+            }
+            Files.move(temp, snapshotFile(number), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not write user snapshot " + number, ex);
+        }
+        deleteBefore(number);
+    }
+
+    @Override
+    public void close() {
+        synchronized (appendLock) {
+            closeSegment();
+        }
+    }
+
+    private void openSegment(long number) throws IOException {
+        channel = FileChannel.open(segmentFile(number), CREATE_NEW, WRITE);
+        segment = number;
+        segmentRecords = 0;
+    }
+
+    /**
+     * Forces and closes the segment once a running sync is done, must hold the append lock.
+     */
+    private void closeSegment() {
+        syncLock.lock();
+        try {
+            while (syncing) {
+                forced.awaitUninterruptibly();
+            }
+            channel.force(false);
+            channel.close();
+            synced = written;
+            forced.signalAll();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not close user journal segment " + segment, ex);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private boolean loadSnapshot(long number, Replay replay) throws IOException {
+        try (FileChannel file = FileChannel.open(snapshotFile(number), READ)) {
+            MappedByteBuffer mapped = file.map(MapMode.READ_ONLY, 0, file.size());
+            if (!isComplete(mapped.duplicate(), number)) {
+                return false;
+            }
+            mapped.position(SNAPSHOT_HEADER_SIZE);
+            for (ByteBuffer record = next(mapped); record.get(0) != END_OF_SNAPSHOT; record = next(mapped)) {
+                apply(record, replay);
+            }
+            return true;
+        }
+    }
+
+    private static boolean isComplete(ByteBuffer snapshot, long number) {
+        if (snapshot.remaining() < SNAPSHOT_HEADER_SIZE || snapshot.getInt() != SNAPSHOT_MAGIC || snapshot.getLong() != number) {
+            return false;
+        }
+        int count = 0;
+        for (ByteBuffer record = next(snapshot); record != null; record = next(snapshot)) {
+            if (record.get(0) == END_OF_SNAPSHOT) {
+                return record.getInt(1) == count;
+            }
+            count++;
+        }
+        return false;
+    }
+
+    private void replaySegment(long number, Replay replay) throws IOException {
+        Path path = segmentFile(number);
+        try (FileChannel file = FileChannel.open(path, READ, WRITE)) {
+            MappedByteBuffer mapped = file.map(MapMode.READ_ONLY, 0, file.size());
+            for (ByteBuffer record = next(mapped); record != null; record = next(mapped)) {
+                apply(record, replay);
+            }
+            if (mapped.hasRemaining()) {
+                LOGGER.warn("Truncating {} at {} of {} bytes, the rest was not completely written", path.getFileName(),
+                        mapped.position(), file.size());
+                file.truncate(mapped.position());
+            }
+        }
+    }
+
+    /**
+     * @return the payload of the next record, or null if the buffer does not continue with a complete and intact record
+     *         (in which case its position is left before it).
+     */
+    private static ByteBuffer next(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < 2 * Integer.BYTES + 1) {
+            return null;
+        }
+        int length = buffer.getInt();
+        if (length < 1 || length > buffer.remaining() - Integer.BYTES) {
+            buffer.position(start);
+            return null;
+        }
+        ByteBuffer record = buffer.slice();
+        record.limit(length);
+        buffer.position(buffer.position() + length);
+        CRC32 crc = new CRC32();
+        crc.update(record.duplicate());
+        if (buffer.getInt() != (int) crc.getValue()) {
+            buffer.position(start);
+            return null;
+        }
+        return record;
+    }
+
+    private static void apply(ByteBuffer record, Replay replay) throws IOException {
+        byte type = record.get();
+        byte[] data = new byte[record.remaining()];
+        record.get(data);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        String email = in.readUTF();
+        switch (type) {
+        case CREATE_USER:
+            replay.create(email, readPassword(in), Role.valueOf(in.readUTF()), in.readLong());
+            break;
+        case CHANGE_ROLE:
+            replay.changeRole(email, Role.valueOf(in.readUTF()));
+            break;
+        case CHANGE_PASSWORD:
+            replay.changePassword(email, readPassword(in));
+            break;
+        case CHANGE_LOGIN_STATE:
+            replay.changeLoginState(email, in.readLong());
+            break;
+        default:
+            throw new IOException("Unknown user journal record type " + type);
+        }
+    }
+
+    private static ByteBuffer frame(byte type, RecordWriter writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        writer.write(out);
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer record = ByteBuffer.allocate(payload.length + 2 * Integer.BYTES);
+        record.putInt(payload.length).put(payload).putInt((int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private static void writeUser(DataOutputStream out, User user) throws IOException {
+        out.writeUTF(user.getEmail());
+        writePassword(out, user.getPassword());
+        out.writeUTF(user.getRole().name());
+        out.writeLong(user.getLoginState());
+    }
+
+    private static void writePassword(DataOutputStream out, String password) throws IOException {
+        out.writeBoolean(password != null);
+        if (password != null) {
+            out.writeUTF(password);
+        }
+    }
+
+    private static String readPassword(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private void deleteBefore(long number) {
+        try {
+            for (long old : numbers(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+                if (old < number) {
+                    Files.deleteIfExists(segmentFile(old));
+                }
+            }
+            for (long old : numbers(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+                if (old < number) {
+                    Files.deleteIfExists(snapshotFile(old));
+                }
+            }
+        } catch (IOException ex) {
+            LOGGER.warn("Could not delete the user journal before snapshot {}", number, ex);
+        }
+    }
+
+    private Path segmentFile(long number) {
+        return directory.resolve(String.format("%s%016x%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private Path snapshotFile(long number) {
+        return directory.resolve(String.format("%s%016x%s", SNAPSHOT_PREFIX, number, SNAPSHOT_SUFFIX));
+    }
+
+    /**
+     * @return the numbers of the files with the prefix and suffix, in ascending order.
+     */
+    private List<Long> numbers(String prefix, String suffix) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        for (Path file : list(prefix + "*" + suffix)) {
+            String name = file.getFileName().toString();
+            try {
+                numbers.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()), 16));
+            } catch (NumberFormatException ex) {
+                LOGGER.warn("Ignoring unknown file {} in the user journal", name);
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private List<Path> list(String glob) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            stream.forEach(files::add);
+        }
+        return files;
+    }
+
+    /**
+     * Writes to a file through memory mapped regions, mapping the next region when the current one is full.
+     */
+    private static final class MappedWriter {
+
+        private final FileChannel file;
+
+        private MappedByteBuffer region;
+
+        private long offset;
+
+        MappedWriter(FileChannel file) throws IOException {
+            this.file = file;
+            this.region = file.map(MapMode.READ_WRITE, 0, MAP_SIZE);
+        }
+
+        void put(ByteBuffer bytes) throws IOException {
+            if (region.remaining() < bytes.remaining()) {
+                region.force();
+                offset += region.position();
+                region = file.map(MapMode.READ_WRITE, offset, Math.max(MAP_SIZE, bytes.remaining()));
+            }
+            region.put(bytes);
+        }
+
+        /**
+         * Forces the written regions and cuts off the unused part of the last one.
+         */
+        void finish() throws IOException {
+            region.force();
+            file.truncate(offset + region.position());
+            file.force(true);
+        }
+
+    }
+
+}
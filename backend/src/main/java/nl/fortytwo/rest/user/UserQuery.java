@@ -0,0 +1,129 @@
+package nl.fortytwo.rest.user;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Ordering;
+
+import nl.fortytwo.rest.util.Page;
+
+/**
+ * A compiled filter and sort query over the users, see UserQueryParser. It consists of the source of the candidates, an
+ * index of the repository when one of the filters is indexed, a predicate for the remaining filters and a comparator for
+ * the sort order. Queries hold no state of a request and are shared between requests.
+ */
+public final class UserQuery {
+
+    static final Comparator<User> BY_EMAIL = Comparator.comparing(User::getEmail);
+
+    /**
+     * The candidates sorted by email following the given email, empty to start at the first user.
+     */
+    private final BiFunction<UserRepository, String, Iterable<User>> source;
+
+    private final Predicate<User> filter;
+
+    /**
+     * The sort order, or null when sorted by email, which is the order of the sources.
+     */
+    private final Comparator<User> comparator;
+
+    private final List<Page.Order> orders;
+
+    private final boolean filtered;
+
+    private final boolean versioned;
+
+    private final String description;
+
+    UserQuery(String description, BiFunction<UserRepository, String, Iterable<User>> source, Predicate<User> filter, boolean filtered,
+            boolean versioned, Comparator<User> comparator, List<Page.Order> orders) {
+        this.description = description;
+        this.source = source;
+        this.filter = filter;
+        this.filtered = filtered;
+        this.versioned = versioned;
+        this.comparator = comparator;
+        this.orders = Collections.unmodifiableList(orders);
+    }
+
+    /**
+     * @return all matching users, sorted by email unless another order was requested.
+     */
+    public Iterable<User> find(UserRepository repository) {
+        Iterable<User> matches = Iterables.filter(source.apply(repository, ""), filter::test);
+        return comparator == null ? matches : Ordering.from(comparator).sortedCopy(matches);
+    }
+
+    /**
+     * @param page the zero based page number.
+     * @param size the page size.
+     * @return the matching users of the page.
+     */
+    public Page<User> findPage(UserRepository repository, int page, int size) {
+        if (!filtered && comparator == null) {
+            return repository.findPage(page, size).sortedBy(orders);
+        }
+        List<User> matches = FluentIterable.from(find(repository)).toList();
+        int from = (int) Math.min((long) page * size, matches.size());
+        int to = (int) Math.min((long) from + size, matches.size());
+        return Page.numbered(matches.subList(from, to), page, size, matches.size()).sortedBy(orders);
+    }
+
+    /**
+     * Reads only the candidates following the cursor, so the total number of matches is unknown for a filtered query.
+     *
+     * @param email the email to continue after, empty to start at the first user.
+     * @param size the page size.
+     * @return the matching users sorted by email following the given email.
+     */
+    public Page<User> findAfter(UserRepository repository, String email, int size) {
+        if (comparator != null) {
+            throw new IllegalArgumentException("Cursor pages can only be sorted by email");
+        }
+        if (!filtered) {
+            return repository.findAfter(email, size).sortedBy(orders);
+        }
+        List<User> content = new ArrayList<>(size);
+        boolean more = false;
+        for (User user : source.apply(repository, email)) {
+            if (filter.test(user)) {
+                if (content.size() == size) {
+                    more = true;
+                    break;
+                }
+                content.add(user);
+            }
+        }
+        String next = more ? content.get(content.size() - 1).getEmail() : null;
+        return Page.cursor(content, email.isEmpty(), size, null, next).sortedBy(orders);
+    }
+
+    public boolean isFiltered() {
+        return filtered;
+    }
+
+    /**
+     * @return true if the result only changes with the version of the repository, which is not the case when filtering
+     *         on the lockout state.
+     */
+    public boolean isVersioned() {
+        return versioned;
+    }
+
+    public List<Page.Order> getOrders() {
+        return orders;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+}
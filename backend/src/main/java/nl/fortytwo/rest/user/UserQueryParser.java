@@ -0,0 +1,245 @@
+package nl.fortytwo.rest.user;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+
+import nl.fortytwo.rest.util.Page;
+
+/**
+ * Compiles the filter and sort parameters of <code>GET /users</code> into a UserQuery, e.g.
+ * <code>?role=ROLE_ADMIN&amp;role=ROLE_USER&amp;email=j&amp;sort=role,desc</code>.
+ *
+ * <ul>
+ * <li><code>email</code>: the email starts with the value.</li>
+ * <li><code>domain</code>: the part of the email after the @ equals the value.</li>
+ * <li><code>role</code>: the role equals the value.</li>
+ * <li><code>locked</code> and <code>active</code>: <code>true</code> or <code>false</code>.</li>
+ * <li><code>sort</code>: <code>email</code>, <code>domain</code> or <code>role</code>, optionally followed by
+ * <code>,asc</code> or <code>,desc</code>. Ties are sorted by email.</li>
+ * </ul>
+ *
+ * Filters and values are case insensitive. Multiple values of a filter match any of them, multiple filters must all match.
+ * When the role, the domain or <code>locked=true</code> is filtered on, the candidates are read from the index of the
+ * UserRepository instead of scanning all users.
+ *
+ * Compiled queries are cached by their normalized form, so the same query in another parameter order or case is only
+ * compiled once.
+ */
+public class UserQueryParser {
+
+    public static final String SORT = "sort";
+
+    private static final long MAX_CACHED_QUERIES = 1000L;
+
+    /**
+     * Parameters that select the page, not the users.
+     */
+    private static final ImmutableSet<String> PAGING = ImmutableSet.of("page", "size", "cursor");
+
+    private final Cache<String, UserQuery> queries = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_QUERIES).build();
+
+    /**
+     * @param parameters the request parameters.
+     * @return the compiled query, shared with earlier requests for the same query.
+     * @throws IllegalArgumentException for an unknown filter or an invalid value.
+     */
+    public UserQuery parse(Map<String, List<String>> parameters) {
+        Map<String, SortedSet<String>> filters = new TreeMap<>();
+        List<String> sort = new ArrayList<>();
+        for (Map.Entry<String, List<String>> parameter : parameters.entrySet()) {
+            String name = normalize(parameter.getKey());
+            if (PAGING.contains(name)) {
+                continue;
+            }
+            for (String value : parameter.getValue()) {
+                if (SORT.equals(name)) {
+                    sort.add(normalize(value));
+                } else {
+                    filters.computeIfAbsent(name, key -> new TreeSet<>()).add(normalize(value));
+                }
+            }
+        }
+        String key = key(filters, sort);
+        UserQuery query = queries.getIfPresent(key);
+        if (query == null) {
+            query = compile(key, filters, sort);
+            queries.put(key, query);
+        }
+        return query;
+    }
+
+    /**
+     * @return the number of cached queries.
+     */
+    long size() {
+        return queries.size();
+    }
+
+    /**
+     * @return the normalized query, e.g. <code>domain=42.nl&amp;role=role_admin&amp;sort=role,desc</code>.
+     */
+    private static String key(Map<String, SortedSet<String>> filters, List<String> sort) {
+        StringBuilder key = new StringBuilder();
+        for (Map.Entry<String, SortedSet<String>> filter : filters.entrySet()) {
+            for (String value : filter.getValue()) {
+                key.append(key.length() == 0 ? "" : "&").append(filter.getKey()).append('=').append(value);
+            }
+        }
+        for (String value : sort) {
+            key.append(key.length() == 0 ? "" : "&").append(SORT).append('=').append(value);
+        }
+        return key.toString();
+    }
+
+    private static UserQuery compile(String key, Map<String, SortedSet<String>> filters, List<String> sort) {
+        // The most selective index wins, the other filters are applied to its users.
+        BiFunction<UserRepository, String, Iterable<User>> source = UserRepository::findAllAfter;
+        String indexed = null;
+        if (filters.containsKey("locked") && filters.get("locked").equals(ImmutableSet.of("true"))) {
+            source = UserRepository::findLockedAfter;
+            indexed = "locked";
+        } else if (filters.containsKey("domain")) {
+            source = merge(filters.get("domain"), domain -> domain, UserRepository::findByDomainAfter);
+            indexed = "domain";
+        } else if (filters.containsKey("role")) {
+            source = merge(filters.get("role"), UserQueryParser::role, UserRepository::findByRoleAfter);
+            indexed = "role";
+        }
+
+        Predicate<User> filter = user -> true;
+        for (Map.Entry<String, SortedSet<String>> entry : filters.entrySet()) {
+            if (!entry.getKey().equals(indexed)) {
+                filter = filter.and(filter(entry.getKey(), entry.getValue()));
+            }
+        }
+        List<Page.Order> orders = new ArrayList<>();
+        Comparator<User> comparator = null;
+        for (String value : sort) {
+            Page.Order order = order(value);
+            orders.add(order);
+            Comparator<User> next = comparator(order.getProperty());
+            next = order.isAscending() ? next : next.reversed();
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        if (orders.size() == 1 && "email".equals(orders.get(0).getProperty()) && orders.get(0).isAscending()) {
+            // The order of the sources.
+            comparator = null;
+        } else if (comparator != null) {
+            comparator = comparator.thenComparing(UserQuery.BY_EMAIL);
+        }
+        return new UserQuery(key, source, filter, !filters.isEmpty(), !filters.containsKey("locked"), comparator, orders);
+    }
+
+    /**
+     * @return the users of the index for any of the values, merged in email order.
+     */
+    private static <T> BiFunction<UserRepository, String, Iterable<User>> merge(Collection<String> values, Function<String, T> converter,
+            IndexLookup<T> lookup) {
+        List<T> keys = new ArrayList<>();
+        for (String value : values) {
+            keys.add(converter.apply(value));
+        }
+        if (keys.size() == 1) {
+            T single = keys.get(0);
+            return (repository, after) -> lookup.find(repository, single, after);
+        }
+        return (repository, after) -> Iterables.mergeSorted(
+                Iterables.transform(keys, key -> lookup.find(repository, key, after)), UserQuery.BY_EMAIL);
+    }
+
+    private static Predicate<User> filter(String name, Collection<String> values) {
+        switch (name) {
+        case "email":
+            return user -> {
+                String email = user.getEmail().toLowerCase(Locale.ROOT);
+                return values.stream().anyMatch(email::startsWith);
+            };
+        case "domain":
+            return user -> values.contains(domainOf(user));
+        case "role":
+            List<Role> roles = new ArrayList<>();
+            values.forEach(value -> roles.add(role(value)));
+            return user -> roles.contains(user.getRole());
+        case "locked":
+            return bool(name, values, User::isLocked);
+        case "active":
+            return bool(name, values, User::isActive);
+        default:
+            throw new IllegalArgumentException("Unknown filter: " + name);
+        }
+    }
+
+    private static Predicate<User> bool(String name, Collection<String> values, Predicate<User> property) {
+        for (String value : values) {
+            if (!"true".equals(value) && !"false".equals(value)) {
+                throw new IllegalArgumentException("Filter " + name + " must be true or false");
+            }
+        }
+        if (values.size() > 1) {
+            // Both true and false.
+            return user -> true;
+        }
+        return "true".equals(values.iterator().next()) ? property : property.negate();
+    }
+
+    private static Page.Order order(String value) {
+        List<String> parts = Arrays.asList(value.split("( )*,( )*"));
+        if (parts.size() > 2 || parts.size() == 2 && !"asc".equals(parts.get(1)) && !"desc".equals(parts.get(1))) {
+            throw new IllegalArgumentException("Invalid sort: " + value);
+        }
+        return new Page.Order(parts.get(0), parts.size() == 1 || "asc".equals(parts.get(1)));
+    }
+
+    private static Comparator<User> comparator(String property) {
+        switch (property) {
+        case "email":
+            return UserQuery.BY_EMAIL;
+        case "domain":
+            return Comparator.comparing(UserQueryParser::domainOf);
+        case "role":
+            return Comparator.comparing(user -> user.getRole().name());
+        default:
+            throw new IllegalArgumentException("Cannot sort on: " + property);
+        }
+    }
+
+    private static Role role(String value) {
+        try {
+            return Role.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Unknown role: " + value, ex);
+        }
+    }
+
+    private static String domainOf(User user) {
+        String email = user.getEmail();
+        return email.substring(email.lastIndexOf('@') + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    @FunctionalInterface
+    private interface IndexLookup<T> {
+
+        Iterable<User> find(UserRepository repository, T key, String after);
+    }
+
+}
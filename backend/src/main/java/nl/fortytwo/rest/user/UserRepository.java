@@ -1,37 +1,119 @@
 package nl.fortytwo.rest.user;
 
 import java.util.Collection;
-import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
 
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.stereotype.Repository;
+import nl.fortytwo.rest.util.Page;
 
-@Repository
-public class UserRepository {
+/**
+ * Stores the users. State changes of a stored user must go through the repository, which keeps its indexes (and its
+ * storage) up to date.
+ *
+ * Every change that is visible in a UserDTO increments the modification version of the repository and moves the version
+ * of the changed user to it, so both can be used to tell whether a representation of the users is still current.
+ */
+public interface UserRepository {
 
-    private Map<String, User> users = new ConcurrentHashMap<String, User>();
+    /**
+     * @return the time the versions started counting, the versions start over when it changes.
+     */
+    long getEpoch();
 
-    @Autowired
-    public UserRepository(PasswordEncoder encoder) {
-        users.put("user@42.nl", new User("user@42.nl", encoder.encode("123456"), Role.ROLE_USER));
-        users.put("admin@42.nl", new User("admin@42.nl", encoder.encode("123456"), Role.ROLE_ADMIN));
-        users.put("random@42.nl", new User("random@42.nl", encoder.encode("123456"), Role.ROLE_USER));
-    }
+    /**
+     * @return the number of modifications since the epoch.
+     */
+    long getVersion();
 
-    public Collection<User> findAll() {
-        return users.values();
-    }
+    Iterable<User> findAll();
 
-    public Optional<User> findByEmail(String email) {
-        return Optional.ofNullable(users.getOrDefault(email == null ? "" : email, null));
-    }
+    Optional<User> findByEmail(String email);
+
+    /**
+     * @param email the email to continue after, empty to start at the first user.
+     * @return the users sorted by email following the given email.
+     */
+    Iterable<User> findAllAfter(String email);
+
+    /**
+     * @return the users with the role, sorted by email.
+     */
+    Iterable<User> findByRole(Role role);
+
+    /**
+     * @param email the email to continue after, empty to start at the first user.
+     * @return the users with the role sorted by email following the given email.
+     */
+    Iterable<User> findByRoleAfter(Role role, String email);
+
+    /**
+     * @param domain the part of the email after the @, case insensitive.
+     * @return the users of the domain, sorted by email.
+     */
+    Iterable<User> findByDomain(String domain);
+
+    /**
+     * @param domain the part of the email after the @, case insensitive.
+     * @param email the email to continue after, empty to start at the first user.
+     * @return the users of the domain sorted by email following the given email.
+     */
+    Iterable<User> findByDomainAfter(String domain, String email);
+
+    /**
+     * @return the users that are currently locked, sorted by email.
+     */
+    Iterable<User> findLocked();
 
-    public User create(User user) {
-        users.put(user.getEmail(), user);
-        return user;
+    /**
+     * @param email the email to continue after, empty to start at the first user.
+     * @return the users that are currently locked sorted by email following the given email.
+     */
+    Iterable<User> findLockedAfter(String email);
+
+    /**
+     * @param page the zero based page number.
+     * @param size the page size.
+     * @return the users of the page, sorted by email.
+     */
+    Page<User> findPage(int page, int size);
+
+    /**
+     * @param email the email to continue after, empty to start at the first user.
+     * @param size the page size.
+     * @return the users sorted by email following the given email.
+     */
+    Page<User> findAfter(String email, int size);
+
+    /**
+     * Stores the user, replacing a user with the same email.
+     */
+    User create(User user);
+
+    /**
+     * Stores the users, replacing users with the same email. A store that writes to a database does so in batches.
+     */
+    default void createAll(Collection<User> users) {
+        users.forEach(this::create);
     }
 
+    /**
+     * Changes the role of the user.
+     */
+    void changeRole(User user, Role role);
+
+    /**
+     * Replaces the password hash of the user, but only if it has not been changed in the meantime.
+     * @return true if the hash was replaced.
+     */
+    boolean changePassword(User user, String currentPassword, String newPassword);
+
+    /**
+     * Registers a failed login, which may lock the account.
+     */
+    void markLoginFailed(User user);
+
+    /**
+     * Registers a successful login, which resets the failed attempts and the lock.
+     */
+    void markLoginSuccess(User user);
+
 }
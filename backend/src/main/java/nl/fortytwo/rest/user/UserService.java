@@ -1,6 +1,15 @@
 package nl.fortytwo.rest.user;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,53 +18,217 @@ import org.springframework.security.access.annotation.Secured;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import nl.fortytwo.rest.security.AuditLog;
 import nl.fortytwo.rest.user.dto.CreateUserDTO;
+import nl.fortytwo.rest.user.dto.CreateUserResultDTO;
 import nl.fortytwo.rest.user.dto.UserDTO;
+import nl.fortytwo.rest.util.ETags;
+import nl.fortytwo.rest.util.Page;
 
 @Service
 public class UserService {
 
     private static final Logger LOG = LoggerFactory.getLogger(UserService.class);
 
+    /**
+     * The maximum number of users of a batch, which takes about as many BCrypt hashes divided by the number of cores.
+     */
+    public static final int MAX_BATCH_SIZE = 1000;
+
     private final UserRepository userRepository;
 
     private final PasswordBlacklist blacklist;
 
     private final PasswordEncoder passwordEncoder;
 
+    private final Validator validator;
+
+    private final ForkJoinPool passwordBatchPool;
+
+    private AuditLog auditLog;
+
     @Autowired
-    public UserService(UserRepository userRepository, PasswordBlacklist blacklist, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, PasswordBlacklist blacklist, PasswordEncoder passwordEncoder, Validator validator,
+            ForkJoinPool passwordBatchPool) {
         this.userRepository = userRepository;
         this.blacklist = blacklist;
         this.passwordEncoder = passwordEncoder;
+        this.validator = validator;
+        this.passwordBatchPool = passwordBatchPool;
+    }
+
+    /**
+     * @param auditLog records the users created by an admin.
+     */
+    @Autowired
+    public void setAuditLog(AuditLog auditLog) {
+        this.auditLog = auditLog;
     }
 
     public Optional<User> findByEmail(String email) {
-        LOG.info("User.findById(" + email + ")");
+        LOG.info("User.findById({})", email);
         return userRepository.findByEmail(email);
     }
 
+    /**
+     * @return the strong ETag of the current state of all users.
+     */
+    public String getETag() {
+        return ETags.of(userRepository.getEpoch(), userRepository.getVersion());
+    }
+
+    /**
+     * @return the strong ETag of the current state of the user.
+     */
+    public String getETag(User user) {
+        return ETags.of(userRepository.getEpoch(), user.getVersion());
+    }
+
     public Iterable<User> findAll() {
         LOG.info("User.findAll()");
         return userRepository.findAll();
     }
 
+    /**
+     * @return the users with the role sorted by email, read from the role index.
+     */
+    public Iterable<User> findByRole(Role role) {
+        LOG.info("User.findByRole({})", role);
+        return userRepository.findByRole(role);
+    }
+
+    /**
+     * @return the users that are currently locked out, sorted by email.
+     */
+    public Iterable<User> findLocked() {
+        LOG.info("User.findLocked()");
+        return userRepository.findLocked();
+    }
+
+    /**
+     * @return the users matching the query.
+     */
+    public Iterable<User> find(UserQuery query) {
+        LOG.info("User.find({})", query);
+        return query.find(userRepository);
+    }
+
+    public Page<User> findPage(UserQuery query, int page, int size) {
+        LOG.info("User.findPage({}, {}, {})", query, page, size);
+        return query.findPage(userRepository, page, size);
+    }
+
+    /**
+     * @param cursor the cursor of a previous page, empty for the first page.
+     */
+    public Page<User> findAfter(UserQuery query, String cursor, int size) {
+        LOG.info("User.findAfter({}, {}, {})", query, cursor, size);
+        return query.findAfter(userRepository, Page.decodeCursor(cursor), size);
+    }
+
     @Secured("ROLE_ADMIN")
     public User create(CreateUserDTO form) {
-        LOG.info("User.create(" + form + ")");
-        if (form.getPassword().length() < 8) {
-            throw new IllegalArgumentException("Password is too short");
-        }
-        if (blacklist.isBlacklisted(form.getPassword())) {
-            throw new IllegalArgumentException("Password is blacklisted");
+        LOG.info("User.create({})", form);
+        String error = checkPassword(form.getPassword());
+        if (error != null) {
+            throw new IllegalArgumentException(error);
         }
         User user = new User(form.getEmail(), passwordEncoder.encode(form.getPassword()), form.getRole());
         userRepository.create(user);
+        audit(user);
         return user;
     }
 
+    /**
+     * Creates the valid users of the batch and rejects the others. All users are validated before the first password is
+     * hashed, the hashes are spread over the cores and the users are stored in a single batch.
+     *
+     * @return the result of every user, in the order of the forms.
+     */
+    @Secured("ROLE_ADMIN")
+    public List<CreateUserResultDTO> createAll(List<CreateUserDTO> forms) {
+        LOG.info("User.createAll({} users)", forms.size());
+        if (forms.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("A batch has at most " + MAX_BATCH_SIZE + " users");
+        }
+        List<List<String>> errors = new ArrayList<>(forms.size());
+        Set<String> emails = new HashSet<>();
+        for (CreateUserDTO form : forms) {
+            errors.add(validate(form, emails));
+        }
+
+        List<ForkJoinTask<User>> hashes = new ArrayList<>(forms.size());
+        for (int i = 0; i < forms.size(); i++) {
+            CreateUserDTO form = forms.get(i);
+            hashes.add(!errors.get(i).isEmpty() ? null
+                    : passwordBatchPool.submit(() -> new User(form.getEmail(), passwordEncoder.encode(form.getPassword()), form.getRole())));
+        }
+
+        List<User> users = new ArrayList<>(forms.size());
+        List<CreateUserResultDTO> results = new ArrayList<>(forms.size());
+        for (int i = 0; i < forms.size(); i++) {
+            if (hashes.get(i) == null) {
+                results.add(CreateUserResultDTO.rejected(errors.get(i)));
+            } else {
+                User user = hashes.get(i).join();
+                users.add(user);
+                results.add(CreateUserResultDTO.created(user));
+            }
+        }
+        userRepository.createAll(users);
+        users.forEach(this::audit);
+        return results;
+    }
+
+    /**
+     * @param emails the emails of the batch so far, a user with an email that occurs earlier in the batch is rejected.
+     * @return the reasons to reject the user, empty if it is valid.
+     */
+    private List<String> validate(CreateUserDTO form, Set<String> emails) {
+        List<String> errors = new ArrayList<>();
+        if (form == null) {
+            errors.add("User is required");
+            return errors;
+        }
+        for (ConstraintViolation<CreateUserDTO> violation : validator.validate(form)) {
+            errors.add(violation.getPropertyPath() + " " + violation.getMessage());
+        }
+        if (form.getRole() == null) {
+            errors.add("role may not be null");
+        }
+        if (form.getPassword() != null) {
+            String error = checkPassword(form.getPassword());
+            if (error != null) {
+                errors.add(error);
+            }
+        }
+        if (form.getEmail() != null && !emails.add(form.getEmail())) {
+            errors.add("Email occurs more than once in the batch");
+        }
+        return errors;
+    }
+
+    private void audit(User user) {
+        if (auditLog != null) {
+            auditLog.record(AuditLog.Type.USER_CREATED, user.getEmail() + " " + user.getRole());
+        }
+    }
+
+    /**
+     * @return the reason the password is not allowed, or null if it is.
+     */
+    private String checkPassword(String password) {
+        if (password.length() < 8) {
+            return "Password is too short";
+        }
+        if (blacklist.isBlacklisted(password)) {
+            return "Password is blacklisted";
+        }
+        return null;
+    }
+
     public User update(String email, UserDTO form) {
-        LOG.info("User.update(" + form + ")");
+        LOG.info("User.update({})", form);
         // TODO
         return null;
     }
@@ -0,0 +1,39 @@
+package nl.fortytwo.rest.user.dto;
+
+import java.util.Collections;
+import java.util.List;
+
+import nl.fortytwo.rest.user.User;
+
+/**
+ * The result of one user of a batch, at the same position as its CreateUserDTO: either the created user or the reasons
+ * it was rejected.
+ */
+public class CreateUserResultDTO {
+
+    public static CreateUserResultDTO created(User user) {
+        return new CreateUserResultDTO(new UserDTO(user), Collections.emptyList());
+    }
+
+    public static CreateUserResultDTO rejected(List<String> errors) {
+        return new CreateUserResultDTO(null, errors);
+    }
+
+    private final UserDTO user;
+
+    private final List<String> errors;
+
+    private CreateUserResultDTO(UserDTO user, List<String> errors) {
+        this.user = user;
+        this.errors = errors;
+    }
+
+    public UserDTO getUser() {
+        return user;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+}
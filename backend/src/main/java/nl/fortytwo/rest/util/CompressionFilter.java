@@ -0,0 +1,614 @@
+package nl.fortytwo.rest.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Compresses responses with gzip or deflate, as negotiated with the Accept-Encoding header of the request.
+ *
+ * The first {@link #getThreshold() threshold} bytes of the body are held back: a smaller body is sent as is, with a
+ * Content-Length. Once the body grows past the threshold the held back bytes and everything after them are compressed
+ * while they are written, so a large (streamed) response is never buffered as a whole. Only textual content types are
+ * compressed, and never a response that already has a Content-Encoding.
+ *
+ * The compressed bytes of a successful GET response with a strong ETag are cached by URL, encoding and ETag. When a
+ * later response for the same URL carries the same ETag, the cached bytes are sent and the body written by the handler is
+ * discarded instead of compressed again. A strong ETag identifies the representation, so this holds as long as the ETags
+ * of a URL do not depend on who is asking.
+ *
+ * A compressed representation differs from the uncompressed one byte for byte, so a strong ETag gets the coding as a
+ * suffix (<code>"k5x3yfnc-1f-gzip"</code>) when the body is compressed. The suffix is stripped from the If-None-Match
+ * header before the handler sees it, so the handler keeps comparing its own tags, and restored on a 304 response.
+ */
+public class CompressionFilter extends OncePerRequestFilter {
+
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    public static final long DEFAULT_CACHE_BYTES = 8L * 1024 * 1024;
+
+    static final String GZIP = "gzip";
+
+    static final String DEFLATE = "deflate";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int threshold;
+
+    /**
+     * Compressed bodies are only cached up to this size, so a single response cannot evict the whole cache.
+     */
+    private final int maxCachedBody;
+
+    private final Cache<String, byte[]> compressed;
+
+    public CompressionFilter() {
+        this(DEFAULT_THRESHOLD, DEFAULT_CACHE_BYTES);
+    }
+
+    /**
+     * @param threshold the minimum size of a body to compress it, in bytes.
+     * @param cacheBytes the maximum total size of the cached compressed bodies, 0 disables the cache.
+     */
+    public CompressionFilter(int threshold, long cacheBytes) {
+        this.threshold = threshold;
+        this.maxCachedBody = (int) Math.min(Integer.MAX_VALUE, cacheBytes / 8);
+        this.compressed = CacheBuilder.newBuilder().maximumWeight(cacheBytes)
+                .<String, byte[]> weigher((key, body) -> key.length() + body.length)
+                .build();
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if ("HEAD".equals(request.getMethod())) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        String encoding = negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        String stripped = ifNoneMatch == null ? null : stripCodings(ifNoneMatch);
+        HttpServletRequest filtered = stripped == null || stripped.equals(ifNoneMatch) ? request
+                : new StrippedRequest(request, stripped);
+        CompressingResponse compressing = new CompressingResponse(filtered, response, encoding, filtered != request);
+        try {
+            filterChain.doFilter(filtered, compressing);
+            compressing.finish();
+        } finally {
+            // Also when the chain failed, or sent an error, while compressing.
+            compressing.stream.end();
+        }
+    }
+
+    /**
+     * @param acceptEncoding the Accept-Encoding header, may be null.
+     * @return gzip or deflate, gzip if both are accepted, or null if neither is.
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        boolean gzip = false;
+        boolean deflate = false;
+        boolean any = false;
+        boolean gzipListed = false;
+        boolean deflateListed = false;
+        for (String coding : acceptEncoding.split(",")) {
+            int parameters = coding.indexOf(';');
+            String name = (parameters < 0 ? coding : coding.substring(0, parameters)).trim().toLowerCase(Locale.ROOT);
+            boolean accepted = parameters < 0 || isAccepted(coding.substring(parameters + 1));
+            if (GZIP.equals(name) || "x-gzip".equals(name)) {
+                gzip = accepted;
+                gzipListed = true;
+            } else if (DEFLATE.equals(name)) {
+                deflate = accepted;
+                deflateListed = true;
+            } else if ("*".equals(name)) {
+                any = accepted;
+            }
+        }
+        if (gzip || any && !gzipListed) {
+            return GZIP;
+        }
+        return deflate || any && !deflateListed ? DEFLATE : null;
+    }
+
+    private static boolean isAccepted(String parameters) {
+        for (String parameter : parameters.split(";")) {
+            String[] nameAndValue = parameter.trim().split("=", 2);
+            if ("q".equalsIgnoreCase(nameAndValue[0]) && nameAndValue.length == 2) {
+                try {
+                    return Double.parseDouble(nameAndValue[1].trim()) > 0;
+                } catch (NumberFormatException ex) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param etag an ETag, may be null.
+     * @return the strong ETag with the coding as suffix, or the ETag as is if it is weak or null.
+     */
+    static String withCoding(String etag, String coding) {
+        if (etag == null || etag.startsWith("W/") || etag.length() < 2 || !etag.endsWith("\"")) {
+            return etag;
+        }
+        return etag.substring(0, etag.length() - 1) + '-' + coding + '"';
+    }
+
+    /**
+     * @param ifNoneMatch the If-None-Match header.
+     * @return the header with the coding suffixes removed from its strong tags.
+     */
+    static String stripCodings(String ifNoneMatch) {
+        return ifNoneMatch.replaceAll("-(" + GZIP + "|" + DEFLATE + ")\"", "\"");
+    }
+
+    private static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.startsWith("text/") || type.startsWith("application/json") || type.startsWith("application/javascript")
+                || type.startsWith("application/xml") || type.contains("+json") || type.contains("+xml");
+    }
+
+    private enum State {
+        /**
+         * Holding back the body until it exceeds the threshold.
+         */
+        BUFFERING,
+        /**
+         * Sending the body as is.
+         */
+        PASSING,
+        /**
+         * Compressing the body while it is written.
+         */
+        COMPRESSING,
+        /**
+         * Discarding the body, the cached compressed body has been sent instead.
+         */
+        CACHED,
+        /**
+         * Done, an error was sent or the body was completed.
+         */
+        CLOSED
+    }
+
+    private final class CompressingResponse extends HttpServletResponseWrapper {
+
+        private final HttpServletRequest request;
+
+        private final String encoding;
+
+        /**
+         * Whether the If-None-Match header carried a coding suffix, which then also goes into the ETag of a 304.
+         */
+        private final boolean coded;
+
+        private final CompressingStream stream = new CompressingStream();
+
+        private PrintWriter writer;
+
+        /**
+         * The Content-Length set by the handler, only sent if the body is not compressed.
+         */
+        private long contentLength = -1L;
+
+        private CompressingResponse(HttpServletRequest request, HttpServletResponse response, String encoding, boolean coded) {
+            super(response);
+            this.request = request;
+            this.encoding = encoding;
+            this.coded = coded;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void setContentLength(int length) {
+            setContentLengthLong(length);
+        }
+
+        @Override
+        public void setContentLengthLong(long length) {
+            if (stream.state == State.PASSING) {
+                super.setContentLengthLong(length);
+            } else {
+                contentLength = length;
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(value == null ? -1L : Long.parseLong(value));
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setHeader(name, value);
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            stream.flush();
+        }
+
+        @Override
+        public void resetBuffer() {
+            stream.resetBuffer();
+            super.resetBuffer();
+        }
+
+        @Override
+        public void reset() {
+            stream.resetBuffer();
+            contentLength = -1L;
+            super.reset();
+        }
+
+        @Override
+        public void sendError(int status) throws IOException {
+            stream.abandon();
+            super.sendError(status);
+        }
+
+        @Override
+        public void sendError(int status, String message) throws IOException {
+            stream.abandon();
+            super.sendError(status, message);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            stream.abandon();
+            super.sendRedirect(location);
+        }
+
+        private void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            stream.close();
+        }
+
+        /**
+         * @return the key of the cached compressed body, or null if the response may not be cached.
+         */
+        private String cacheKey() {
+            String etag = getHeader(HttpHeaders.ETAG);
+            if (etag == null || etag.startsWith("W/") || getStatus() != SC_OK || !"GET".equals(request.getMethod())) {
+                return null;
+            }
+            String query = request.getQueryString();
+            return encoding + ' ' + etag + ' ' + request.getRequestURI() + (query == null ? "" : '?' + query);
+        }
+
+        private final class CompressingStream extends ServletOutputStream {
+
+            private State state = State.BUFFERING;
+
+            private byte[] buffer = new byte[Math.min(threshold, BUFFER_SIZE)];
+
+            private int count;
+
+            private OutputStream target;
+
+            /**
+             * The native zlib memory of the compressor is released by {@link #end()}, rather than when it is finalized.
+             */
+            private Deflater deflater;
+
+            private ByteArrayOutputStream capture;
+
+            private String key;
+
+            @Override
+            public void write(int b) throws IOException {
+                if (state == State.BUFFERING && count < threshold) {
+                    ensureCapacity(count + 1);
+                    buffer[count++] = (byte) b;
+                } else {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                switch (state) {
+                case BUFFERING:
+                    if (count + length <= threshold) {
+                        ensureCapacity(count + length);
+                        System.arraycopy(bytes, offset, buffer, count, length);
+                        count += length;
+                        return;
+                    }
+                    start(true);
+                    write(bytes, offset, length);
+                    return;
+                case PASSING:
+                case COMPRESSING:
+                    target.write(bytes, offset, length);
+                    return;
+                default:
+                    // Discarded.
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                // While buffering a flush is postponed, the body may still grow past the threshold.
+                if (state == State.PASSING || state == State.COMPRESSING) {
+                    target.flush();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (state == State.BUFFERING) {
+                    start(false);
+                }
+                if (state == State.COMPRESSING) {
+                    try {
+                        target.close();
+                    } finally {
+                        end();
+                    }
+                    if (key != null && capture != null && capture.size() <= maxCachedBody) {
+                        compressed.put(key, capture.toByteArray());
+                    }
+                } else if (state == State.PASSING) {
+                    getResponse().getOutputStream().flush();
+                }
+                state = State.CLOSED;
+            }
+
+            @Override
+            public boolean isReady() {
+                try {
+                    return getResponse().getOutputStream().isReady();
+                } catch (IOException ex) {
+                    return false;
+                }
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                try {
+                    getResponse().getOutputStream().setWriteListener(writeListener);
+                } catch (IOException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+
+            private void ensureCapacity(int capacity) {
+                if (capacity > buffer.length) {
+                    byte[] grown = new byte[Math.min(threshold, Math.max(capacity, buffer.length * 2))];
+                    System.arraycopy(buffer, 0, grown, 0, count);
+                    buffer = grown;
+                }
+            }
+
+            /**
+             * Decides how to send the body, once it exceeds the threshold or is complete.
+             */
+            private void start(boolean exceeded) throws IOException {
+                HttpServletResponse response = (HttpServletResponse) getResponse();
+                boolean compressible = exceeded && isCompressible(getContentType()) && !containsHeader(HttpHeaders.CONTENT_ENCODING);
+                if (compressible) {
+                    addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+                }
+                if (!compressible || encoding == null) {
+                    state = State.PASSING;
+                    if (coded && encoding != null && getStatus() == SC_NOT_MODIFIED) {
+                        response.setHeader(HttpHeaders.ETAG, withCoding(getHeader(HttpHeaders.ETAG), encoding));
+                    }
+                    if (contentLength >= 0) {
+                        response.setContentLengthLong(contentLength);
+                    } else if (!exceeded && count > 0) {
+                        response.setContentLength(count);
+                    }
+                    target = response.getOutputStream();
+                    if (count > 0) {
+                        target.write(buffer, 0, count);
+                    }
+                    return;
+                }
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+                key = cacheKey();
+                if (containsHeader(HttpHeaders.ETAG)) {
+                    response.setHeader(HttpHeaders.ETAG, withCoding(getHeader(HttpHeaders.ETAG), encoding));
+                }
+                byte[] cached = key == null ? null : compressed.getIfPresent(key);
+                if (cached != null) {
+                    state = State.CACHED;
+                    response.setContentLength(cached.length);
+                    response.getOutputStream().write(cached);
+                    return;
+                }
+                state = State.COMPRESSING;
+                OutputStream out = response.getOutputStream();
+                if (key != null && maxCachedBody > 0) {
+                    capture = new ByteArrayOutputStream(BUFFER_SIZE);
+                    out = new TeeOutputStream(out, capture, maxCachedBody);
+                }
+                if (GZIP.equals(encoding)) {
+                    GzipStream gzip = new GzipStream(out);
+                    deflater = gzip.deflater();
+                    target = gzip;
+                } else {
+                    deflater = new Deflater();
+                    target = new DeflaterOutputStream(out, deflater, BUFFER_SIZE, true);
+                }
+                target.write(buffer, 0, count);
+            }
+
+            private void resetBuffer() {
+                if (state == State.BUFFERING) {
+                    count = 0;
+                }
+            }
+
+            /**
+             * The container writes the body of an error or redirect itself.
+             */
+            private void abandon() {
+                if (state == State.BUFFERING) {
+                    count = 0;
+                }
+                state = State.CLOSED;
+            }
+
+            /**
+             * Releases the compressor, whether or not the body was completed.
+             */
+            private void end() {
+                if (deflater != null) {
+                    deflater.end();
+                    deflater = null;
+                }
+                state = State.CLOSED;
+            }
+        }
+    }
+
+    /**
+     * Exposes the Deflater of the gzip stream, which it only ends itself when it is closed successfully.
+     */
+    private static final class GzipStream extends GZIPOutputStream {
+
+        private GzipStream(OutputStream out) throws IOException {
+            super(out, BUFFER_SIZE, true);
+        }
+
+        private Deflater deflater() {
+            return def;
+        }
+    }
+
+    /**
+     * Presents the If-None-Match header without the coding suffixes of the ETags.
+     */
+    private static final class StrippedRequest extends HttpServletRequestWrapper {
+
+        private final String ifNoneMatch;
+
+        private StrippedRequest(HttpServletRequest request, String ifNoneMatch) {
+            super(request);
+            this.ifNoneMatch = ifNoneMatch;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return HttpHeaders.IF_NONE_MATCH.equalsIgnoreCase(name) ? ifNoneMatch : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            if (!HttpHeaders.IF_NONE_MATCH.equalsIgnoreCase(name)) {
+                return super.getHeaders(name);
+            }
+            List<String> values = new ArrayList<>();
+            for (Enumeration<String> headers = super.getHeaders(name); headers.hasMoreElements();) {
+                values.add(stripCodings(headers.nextElement()));
+            }
+            return Collections.enumeration(values);
+        }
+    }
+
+    /**
+     * Writes to the response and keeps a copy of the bytes, until the copy exceeds its maximum size.
+     */
+    private static final class TeeOutputStream extends OutputStream {
+
+        private final OutputStream out;
+
+        private final ByteArrayOutputStream copy;
+
+        private final int maxCopy;
+
+        private TeeOutputStream(OutputStream out, ByteArrayOutputStream copy, int maxCopy) {
+            this.out = out;
+            this.copy = copy;
+            this.maxCopy = maxCopy;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            if (copy.size() <= maxCopy) {
+                copy.write(bytes, offset, Math.min(length, maxCopy + 1 - copy.size()));
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Leaves closing the response to the container.
+            out.flush();
+        }
+    }
+
+}
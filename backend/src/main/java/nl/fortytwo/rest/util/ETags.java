@@ -0,0 +1,49 @@
+package nl.fortytwo.rest.util;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.ServletWebRequest;
+
+/**
+ * Strong entity tags derived from versions, see the "304 / Apply cache" section of 04-http-response-status-codes.md.
+ *
+ * A tag combines the epoch in which the versions are counted (e.g. the start of the application) with the version, so
+ * a version that is counted again after a restart never matches a tag of before the restart.
+ */
+public final class ETags {
+
+    /**
+     * Clients may cache the (private) response, but have to revalidate it on every use.
+     */
+    public static final String CACHE_CONTROL = "private, no-cache";
+
+    private ETags() {
+    }
+
+    /**
+     * @return the quoted tag, e.g. <code>"k5x3yfnc-1f"</code>.
+     */
+    public static String of(long epoch, long version) {
+        return '"' + Long.toString(epoch, Character.MAX_RADIX) + '-' + Long.toString(version, Character.MAX_RADIX) + '"';
+    }
+
+    /**
+     * Evaluates the If-None-Match header of the request against the current tag and adds the ETag to the response. Call
+     * this before loading or mapping the resource: when it returns true the status is 304 and the handler should return
+     * null, which leaves the body empty.
+     *
+     * @param request the current request.
+     * @param etag the current tag of the resource.
+     * @return true if the client already has the current representation.
+     */
+    public static boolean checkNotModified(ServletWebRequest request, String etag) {
+        HttpServletResponse response = request.getResponse();
+        if (response != null) {
+            // Replaces the no-cache, no-store default of Spring Security, which would prevent revalidation.
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+        }
+        return request.checkNotModified(etag);
+    }
+
+}
@@ -0,0 +1,115 @@
+package nl.fortytwo.rest.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+/**
+ * The single ObjectMapper of the application, with an ObjectReader and ObjectWriter per type that are built once and
+ * reused. A reader or writer holds on to its root (de)serializer, so a request no longer looks it up in the caches of
+ * the ObjectMapper.
+ *
+ * Modules are discovered on the classpath, except for the Afterburner module which is only registered on request. It
+ * replaces reflection with generated bytecode for public getters, setters and constructors; the DTO's mostly have
+ * private fields and constructors, so the gain is small and depends on the response.
+ * Output goes straight to the given stream through Jackson's own recycled buffers, nothing is copied into an
+ * intermediate String or byte array.
+ */
+public class JsonCodec {
+
+    private static final String AFTERBURNER = "com.fasterxml.jackson.module.afterburner.AfterburnerModule";
+
+    private final ObjectMapper objectMapper;
+
+    private boolean afterburnerEnabled;
+
+    private final ConcurrentMap<JavaType, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<JavaType, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    public JsonCodec() {
+        this(false);
+    }
+
+    /**
+     * @param afterburner whether to use the Afterburner module if it is on the classpath.
+     */
+    public JsonCodec(boolean afterburner) {
+        objectMapper = new ObjectMapper();
+        for (Module module : ObjectMapper.findModules()) {
+            boolean isAfterburner = AFTERBURNER.equals(module.getClass().getName());
+            if (afterburner || !isAfterburner) {
+                objectMapper.registerModule(module);
+                afterburnerEnabled |= isAfterburner;
+            }
+        }
+
+        SimpleModule module = new SimpleModule("RestAPI", new Version(1, 0, 0, null, "nl.fortytwo.rest", "RestAPI"));
+        objectMapper.registerModule(module);
+
+        objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    }
+
+    /**
+     * Builds the readers and writers of the given types up front, so the first request does not pay for it.
+     *
+     * @return this codec.
+     */
+    public JsonCodec preload(Class<?>... types) {
+        for (Class<?> type : types) {
+            reader(type);
+            writer(type);
+        }
+        return this;
+    }
+
+    /**
+     * @return the configured ObjectMapper, do not change its configuration as the readers and writers would not follow.
+     */
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    public boolean isAfterburnerEnabled() {
+        return afterburnerEnabled;
+    }
+
+    public ObjectReader reader(Type type) {
+        return reader(objectMapper.getTypeFactory().constructType(type));
+    }
+
+    public ObjectReader reader(JavaType type) {
+        ObjectReader reader = readers.get(type);
+        return reader == null ? readers.computeIfAbsent(type, objectMapper::reader) : reader;
+    }
+
+    public ObjectWriter writer(Type type) {
+        return writer(objectMapper.getTypeFactory().constructType(type));
+    }
+
+    public ObjectWriter writer(JavaType type) {
+        ObjectWriter writer = writers.get(type);
+        return writer == null ? writers.computeIfAbsent(type, objectMapper::writerFor) : writer;
+    }
+
+    public <T> T read(InputStream in, Class<T> type) throws IOException {
+        return reader(type).readValue(in);
+    }
+
+    public void write(OutputStream out, Object value) throws IOException {
+        writer(value.getClass()).writeValue(out, value);
+    }
+
+}
@@ -0,0 +1,71 @@
+package nl.fortytwo.rest.util;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.util.TypeUtils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+
+/**
+ * Reads and writes request and response bodies with the cached readers and writers of the JsonCodec. A
+ * MappingJacksonValue (JSON views, filters, JSONP) is left to the default implementation.
+ */
+public class JsonCodecHttpMessageConverter extends MappingJackson2HttpMessageConverter {
+
+    private final JsonCodec jsonCodec;
+
+    public JsonCodecHttpMessageConverter(JsonCodec jsonCodec) {
+        super(jsonCodec.getObjectMapper());
+        this.jsonCodec = jsonCodec;
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        return read(getJavaType(clazz, null), inputMessage);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        return read(getJavaType(type, contextClass), inputMessage);
+    }
+
+    private Object read(JavaType javaType, HttpInputMessage inputMessage) throws IOException {
+        try {
+            return jsonCodec.reader(javaType).readValue(inputMessage.getBody());
+        } catch (JsonProcessingException ex) {
+            throw new HttpMessageNotReadableException("Could not read document: " + ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException {
+        if (object instanceof MappingJacksonValue) {
+            super.writeInternal(object, type, outputMessage);
+            return;
+        }
+        JavaType javaType = type != null && object != null && TypeUtils.isAssignable(type, object.getClass())
+                ? getJavaType(type, null) : null;
+        JsonGenerator generator = jsonCodec.getObjectMapper().getFactory()
+                .createGenerator(outputMessage.getBody(), getJsonEncoding(outputMessage.getHeaders().getContentType()));
+        try {
+            if (javaType == null) {
+                jsonCodec.writer(object == null ? Object.class : object.getClass()).writeValue(generator, object);
+            } else {
+                jsonCodec.writer(javaType).writeValue(generator, object);
+            }
+            generator.flush();
+        } catch (JsonProcessingException ex) {
+            throw new HttpMessageNotWritableException("Could not write content: " + ex.getMessage(), ex);
+        }
+    }
+
+}
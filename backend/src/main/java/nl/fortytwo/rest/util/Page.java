@@ -0,0 +1,180 @@
+package nl.fortytwo.rest.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * The envelope of a paginated collection, see 05-pagination-querying.md. A page is either numbered (<code>page</code>
+ * and <code>size</code>) or follows a cursor: the opaque <code>next</code> value that continues after the last element
+ * of the page. Cursor pages are keyed on the sort order instead of on an offset, so they neither skip nor repeat
+ * elements when elements are added concurrently.
+ */
+public final class Page<T> {
+
+    private final List<T> content;
+
+    private final Integer number;
+
+    private final int size;
+
+    private final boolean first;
+
+    private final boolean last;
+
+    private final Long totalElements;
+
+    private final String next;
+
+    private final List<Order> sort;
+
+    private Page(List<T> content, Integer number, int size, boolean first, boolean last, Long totalElements, String next, List<Order> sort) {
+        this.content = content;
+        this.number = number;
+        this.size = size;
+        this.first = first;
+        this.last = last;
+        this.totalElements = totalElements;
+        this.next = next;
+        this.sort = sort;
+    }
+
+    /**
+     * @param content the elements of the page.
+     * @param number the zero based number of the page.
+     * @param size the requested page size.
+     * @param totalElements the number of elements in all pages.
+     */
+    public static <T> Page<T> numbered(List<T> content, int number, int size, long totalElements) {
+        return new Page<>(content, number, size, number == 0, (long) (number + 1) * size >= totalElements, totalElements, null, null);
+    }
+
+    /**
+     * @param content the elements of the page.
+     * @param first whether the page starts at the first element.
+     * @param size the requested page size.
+     * @param totalElements the number of elements in all pages, null if counting them would require a scan.
+     * @param nextKey the sort key of the last element if there are more elements, otherwise null.
+     */
+    public static <T> Page<T> cursor(List<T> content, boolean first, int size, Long totalElements, String nextKey) {
+        return new Page<>(content, null, size, first, nextKey == null, totalElements, nextKey == null ? null : encodeCursor(nextKey), null);
+    }
+
+    /**
+     * @return the same page with the elements converted, e.g. to their DTO.
+     */
+    public <R> Page<R> map(Function<? super T, ? extends R> mapper) {
+        List<R> mapped = content.stream().map(mapper).collect(Collectors.toList());
+        return new Page<>(mapped, number, size, first, last, totalElements, next, sort);
+    }
+
+    /**
+     * @return the same page, reporting the sort order that was applied.
+     */
+    public Page<T> sortedBy(List<Order> orders) {
+        return new Page<>(content, number, size, first, last, totalElements, next, orders.isEmpty() ? null : Collections.unmodifiableList(orders));
+    }
+
+    public static String encodeCursor(String key) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor the cursor as received from the client, empty for the first page.
+     * @return the sort key to continue after, empty for the first page.
+     * @throws IllegalArgumentException if the cursor is malformed.
+     */
+    public static String decodeCursor(String cursor) {
+        return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    /**
+     * @return the zero based page number, null for a cursor page.
+     */
+    public Integer getNumber() {
+        return number;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isFirst() {
+        return first;
+    }
+
+    public boolean isLast() {
+        return last;
+    }
+
+    /**
+     * @return the number of elements in all pages, null if unknown.
+     */
+    public Long getTotalElements() {
+        return totalElements;
+    }
+
+    /**
+     * @return the total number of pages, null for a cursor page.
+     */
+    public Integer getTotalPages() {
+        return number == null ? null : (int) ((totalElements + size - 1) / size);
+    }
+
+    /**
+     * @return the applied sort order, null for the default order.
+     */
+    public List<Order> getSort() {
+        return sort;
+    }
+
+    /**
+     * @return the cursor of the next page, null on the last page or for a numbered page.
+     */
+    public String getNext() {
+        return next;
+    }
+
+    /**
+     * One property of the sort order, e.g. <code>{"property": "email", "direction": "DESC"}</code>.
+     */
+    public static final class Order {
+
+        private final String property;
+
+        private final boolean ascending;
+
+        public Order(String property, boolean ascending) {
+            this.property = property;
+            this.ascending = ascending;
+        }
+
+        public String getProperty() {
+            return property;
+        }
+
+        public String getDirection() {
+            return ascending ? "ASC" : "DESC";
+        }
+
+        @JsonIgnore
+        public boolean isAscending() {
+            return ascending;
+        }
+
+        @Override
+        public String toString() {
+            return property + (ascending ? "" : ",desc");
+        }
+    }
+
+}
@@ -0,0 +1,456 @@
+package nl.fortytwo.rest.validator;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import javax.validation.Constraint;
+import javax.validation.ConstraintViolation;
+import javax.validation.ElementKind;
+import javax.validation.GroupSequence;
+import javax.validation.MessageInterpolator;
+import javax.validation.Path;
+import javax.validation.ValidationException;
+import javax.validation.constraints.NotNull;
+import javax.validation.groups.Default;
+import javax.validation.metadata.BeanDescriptor;
+import javax.validation.metadata.ConstraintDescriptor;
+import javax.validation.metadata.PropertyDescriptor;
+
+import org.hibernate.validator.constraints.Email;
+import org.hibernate.validator.constraints.NotEmpty;
+import org.hibernate.validator.group.GroupSequenceProvider;
+import org.springframework.validation.Errors;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+/**
+ * Validates the default group with a validator compiled per class, rather than walking the Bean Validation metadata and
+ * invoking the constraint validators reflectively for every object. A class is compiled once, from the same metadata:
+ * each constrained field gets a method handle to read it and a direct check per constraint, @Email is checked by
+ * {@link LinearEmailValidator}. The violations are the same as those of Hibernate Validator, the messages are
+ * interpolated the same way when a check fails. They are instances of our own {@link ConstraintViolation} and
+ * {@link Path}, so only the public Bean Validation API of Hibernate Validator is used.
+ *
+ * Only field constraints of the default group are compiled: @NotNull, and @NotEmpty, @Email and @BasicString on
+ * strings. Classes with any other constraint, cascaded validation or a redefined default group, and validation of
+ * specific groups, use the standard validator.
+ */
+public class CompiledValidator extends LocalValidatorFactoryBean {
+
+    private static final ClassValidator STANDARD = new ClassValidator(Collections.emptyList());
+
+    private final Class<?>[] precompiled;
+
+    private final Map<Class<?>, ClassValidator> validators = new ConcurrentHashMap<>();
+
+    /**
+     * @param precompiled the classes to compile at startup, others are compiled when first validated.
+     */
+    public CompiledValidator(Class<?>... precompiled) {
+        this.precompiled = precompiled;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        for (Class<?> type : precompiled) {
+            validatorOf(type);
+        }
+    }
+
+    /**
+     * @return whether the class is validated by a compiled validator.
+     */
+    public boolean isCompiled(Class<?> type) {
+        return validatorOf(type) != STANDARD;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Set<ConstraintViolation<T>> validate(T object, Class<?>... groups) {
+        ClassValidator validator = object == null || groups.length > 0 ? STANDARD : validatorOf(object.getClass());
+        if (validator == STANDARD) {
+            return super.validate(object, groups);
+        }
+        return validator.validate(object, (Class<T>) object.getClass(), getMessageInterpolator());
+    }
+
+    @Override
+    public void validate(Object target, Errors errors) {
+        processConstraintViolations(validate(target), errors);
+    }
+
+    @Override
+    public void validate(Object target, Errors errors, Object... validationHints) {
+        if (validationHints.length > 0) {
+            super.validate(target, errors, validationHints);
+        } else {
+            validate(target, errors);
+        }
+    }
+
+    private ClassValidator validatorOf(Class<?> type) {
+        ClassValidator validator = validators.get(type);
+        if (validator == null) {
+            validator = compile(type);
+            validators.putIfAbsent(type, validator);
+        }
+        return validator;
+    }
+
+    private ClassValidator compile(Class<?> type) {
+        BeanDescriptor bean = getConstraintsForClass(type);
+        if (!bean.getConstraintDescriptors().isEmpty() || type.isAnnotationPresent(GroupSequence.class)
+                || type.isAnnotationPresent(GroupSequenceProvider.class)) {
+            return STANDARD;
+        }
+        List<FieldCheck> checks = new ArrayList<>();
+        for (PropertyDescriptor property : bean.getConstrainedProperties()) {
+            Field field = findField(type, property.getPropertyName());
+            if (property.isCascaded() || field == null || countConstraints(field) != property.getConstraintDescriptors().size()) {
+                return STANDARD;
+            }
+            MethodHandle getter;
+            try {
+                field.setAccessible(true);
+                getter = MethodHandles.lookup().unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class));
+            } catch (IllegalAccessException | SecurityException e) {
+                return STANDARD;
+            }
+            Path path = new PropertyPath(field.getName());
+            for (ConstraintDescriptor<?> constraint : property.getConstraintDescriptors()) {
+                Predicate<Object> check = compile(constraint, field);
+                if (check == null || !constraint.getAnnotation().equals(field.getAnnotation(constraint.getAnnotation().annotationType()))) {
+                    return STANDARD;
+                }
+                checks.add(new FieldCheck(getter, path, constraint, check));
+            }
+        }
+        return new ClassValidator(checks);
+    }
+
+    /**
+     * @return the check of a constraint on the field, or null if it cannot be compiled.
+     */
+    private static Predicate<Object> compile(ConstraintDescriptor<?> constraint, Field field) {
+        if (!constraint.getGroups().equals(Collections.singleton(Default.class))) {
+            return null;
+        }
+        Class<? extends Annotation> type = constraint.getAnnotation().annotationType();
+        boolean string = CharSequence.class.isAssignableFrom(field.getType());
+        if (type == NotNull.class) {
+            return value -> value != null;
+        }
+        if (type == NotEmpty.class && string) {
+            return value -> value != null && ((CharSequence) value).length() > 0;
+        }
+        if (type == Email.class && string && ".*".equals(((Email) constraint.getAnnotation()).regexp())
+                && ((Email) constraint.getAnnotation()).flags().length == 0) {
+            LinearEmailValidator validator = new LinearEmailValidator();
+            return value -> validator.isValid((CharSequence) value, null);
+        }
+        if (type == BasicString.class && field.getType() == String.class) {
+            BasicStringValidator validator = new BasicStringValidator();
+            return value -> validator.isValid((String) value, null);
+        }
+        return null;
+    }
+
+    private static Field findField(Class<?> type, String name) {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (field.getName().equals(name)) {
+                    return field;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The constraints of a property may also be declared on its getter, those are only found by the standard validator.
+     */
+    private static int countConstraints(Field field) {
+        return (int) Arrays.stream(field.getAnnotations())
+                .filter(annotation -> annotation.annotationType().isAnnotationPresent(Constraint.class)).count();
+    }
+
+    private static final class FieldCheck {
+
+        private final MethodHandle getter;
+
+        private final Path path;
+
+        private final ConstraintDescriptor<?> constraint;
+
+        private final Predicate<Object> check;
+
+        FieldCheck(MethodHandle getter, Path path, ConstraintDescriptor<?> constraint, Predicate<Object> check) {
+            this.getter = getter;
+            this.path = path;
+            this.constraint = constraint;
+            this.check = check;
+        }
+
+    }
+
+    private static final class ClassValidator {
+
+        private final FieldCheck[] checks;
+
+        ClassValidator(List<FieldCheck> checks) {
+            this.checks = checks.toArray(new FieldCheck[checks.size()]);
+        }
+
+        <T> Set<ConstraintViolation<T>> validate(T object, Class<T> type, MessageInterpolator interpolator) {
+            Set<ConstraintViolation<T>> violations = null;
+            for (FieldCheck check : checks) {
+                Object value = read(check.getter, object);
+                if (!check.check.test(value)) {
+                    if (violations == null) {
+                        violations = new LinkedHashSet<>();
+                    }
+                    String template = check.constraint.getMessageTemplate();
+                    String message = interpolator.interpolate(template, new Context(check.constraint, value));
+                    violations.add(new FieldViolation<>(message, template, type, object, value, check.path, check.constraint));
+                }
+            }
+            return violations == null ? Collections.emptySet() : violations;
+        }
+
+        private static Object read(MethodHandle getter, Object object) {
+            try {
+                return getter.invokeExact(object);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new ValidationException(e);
+            }
+        }
+
+    }
+
+    private static final class Context implements MessageInterpolator.Context {
+
+        private final ConstraintDescriptor<?> constraint;
+
+        private final Object value;
+
+        Context(ConstraintDescriptor<?> constraint, Object value) {
+            this.constraint = constraint;
+            this.value = value;
+        }
+
+        @Override
+        public ConstraintDescriptor<?> getConstraintDescriptor() {
+            return constraint;
+        }
+
+        @Override
+        public Object getValidatedValue() {
+            return value;
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> type) {
+            if (type.isInstance(this)) {
+                return type.cast(this);
+            }
+            throw new ValidationException("Cannot unwrap to " + type.getName());
+        }
+
+    }
+
+    /**
+     * A violation of a field constraint, the root bean is also the leaf bean.
+     */
+    private static final class FieldViolation<T> implements ConstraintViolation<T> {
+
+        private final String message;
+
+        private final String messageTemplate;
+
+        private final Class<T> rootBeanClass;
+
+        private final T rootBean;
+
+        private final Object invalidValue;
+
+        private final Path propertyPath;
+
+        private final ConstraintDescriptor<?> constraint;
+
+        FieldViolation(String message, String messageTemplate, Class<T> rootBeanClass, T rootBean, Object invalidValue, Path propertyPath,
+                ConstraintDescriptor<?> constraint) {
+            this.message = message;
+            this.messageTemplate = messageTemplate;
+            this.rootBeanClass = rootBeanClass;
+            this.rootBean = rootBean;
+            this.invalidValue = invalidValue;
+            this.propertyPath = propertyPath;
+            this.constraint = constraint;
+        }
+
+        @Override
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String getMessageTemplate() {
+            return messageTemplate;
+        }
+
+        @Override
+        public T getRootBean() {
+            return rootBean;
+        }
+
+        @Override
+        public Class<T> getRootBeanClass() {
+            return rootBeanClass;
+        }
+
+        @Override
+        public Object getLeafBean() {
+            return rootBean;
+        }
+
+        @Override
+        public Object[] getExecutableParameters() {
+            return null;
+        }
+
+        @Override
+        public Object getExecutableReturnValue() {
+            return null;
+        }
+
+        @Override
+        public Path getPropertyPath() {
+            return propertyPath;
+        }
+
+        @Override
+        public Object getInvalidValue() {
+            return invalidValue;
+        }
+
+        @Override
+        public ConstraintDescriptor<?> getConstraintDescriptor() {
+            return constraint;
+        }
+
+        @Override
+        public <U> U unwrap(Class<U> type) {
+            if (type.isInstance(this)) {
+                return type.cast(this);
+            }
+            throw new ValidationException("Cannot unwrap to " + type.getName());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof FieldViolation)) {
+                return false;
+            }
+            FieldViolation<?> other = (FieldViolation<?>) obj;
+            return message.equals(other.message) && propertyPath.equals(other.propertyPath) && rootBean == other.rootBean
+                    && Objects.equals(invalidValue, other.invalidValue) && constraint.equals(other.constraint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(message, propertyPath, System.identityHashCode(rootBean), invalidValue, constraint);
+        }
+
+        @Override
+        public String toString() {
+            return "FieldViolation{propertyPath=" + propertyPath + ", message='" + message + "'}";
+        }
+
+    }
+
+    /**
+     * The path of a field: a single property node.
+     */
+    private static final class PropertyPath implements Path, Path.PropertyNode {
+
+        private final String name;
+
+        PropertyPath(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Iterator<Node> iterator() {
+            return Collections.<Node> singletonList(this).iterator();
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isInIterable() {
+            return false;
+        }
+
+        @Override
+        public Integer getIndex() {
+            return null;
+        }
+
+        @Override
+        public Object getKey() {
+            return null;
+        }
+
+        @Override
+        public ElementKind getKind() {
+            return ElementKind.PROPERTY;
+        }
+
+        @Override
+        public <N extends Node> N as(Class<N> nodeType) {
+            if (nodeType.isInstance(this)) {
+                return nodeType.cast(this);
+            }
+            throw new ClassCastException("Cannot cast a property node to " + nodeType.getName());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof PropertyPath && name.equals(((PropertyPath) obj).name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+    }
+
+}
@@ -0,0 +1,17 @@
+CREATE TABLE IF NOT EXISTS users (
+    email VARCHAR(255) NOT NULL PRIMARY KEY,
+    password VARCHAR(100),
+    role VARCHAR(32) NOT NULL,
+    domain VARCHAR(255) NOT NULL,
+    login_state BIGINT NOT NULL,
+    version BIGINT NOT NULL
+);
+CREATE INDEX IF NOT EXISTS users_role ON users (role, email);
+CREATE INDEX IF NOT EXISTS users_domain ON users (domain, email);
+CREATE INDEX IF NOT EXISTS users_login_state ON users (login_state);
+CREATE INDEX IF NOT EXISTS users_version ON users (version);
+CREATE SEQUENCE IF NOT EXISTS user_versions;
+CREATE TABLE IF NOT EXISTS user_store (
+    id INT NOT NULL PRIMARY KEY CHECK (id = 1),
+    epoch BIGINT NOT NULL
+);
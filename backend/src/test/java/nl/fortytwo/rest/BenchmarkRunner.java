@@ -0,0 +1,106 @@
+package nl.fortytwo.rest;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal harness for the *Benchmark classes, which only run with <code>mvn test -Pbenchmark</code>. It warms up the
+ * operation, then measures the time and the heap allocation per operation, optionally from several threads at once.
+ */
+public final class BenchmarkRunner {
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private BenchmarkRunner() {
+    }
+
+    public interface Operation {
+        void run() throws Exception;
+    }
+
+    public static final class Result {
+
+        private final String name;
+
+        private final double nanosPerOperation;
+
+        private final double bytesPerOperation;
+
+        private Result(String name, double nanosPerOperation, double bytesPerOperation) {
+            this.name = name;
+            this.nanosPerOperation = nanosPerOperation;
+            this.bytesPerOperation = bytesPerOperation;
+        }
+
+        public double getNanosPerOperation() {
+            return nanosPerOperation;
+        }
+
+        public double getBytesPerOperation() {
+            return bytesPerOperation;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-50s %12.1f ns/op %12.1f B/op", name, nanosPerOperation, bytesPerOperation);
+        }
+    }
+
+    public static Result measure(String name, long iterations, Operation operation) throws Exception {
+        return measure(name, 1, iterations, operation);
+    }
+
+    /**
+     * @param name the name that is printed with the result.
+     * @param threads the number of threads running the operation concurrently.
+     * @param iterations the number of operations per thread.
+     * @param operation the operation.
+     * @return the average time (wall clock, per thread) and allocation per operation.
+     */
+    public static Result measure(String name, int threads, long iterations, Operation operation) throws Exception {
+        run(threads, iterations / 10 + 1, operation);
+        long[] totals = run(threads, iterations, operation);
+        Result result = new Result(name, (double) totals[0] / (threads * iterations), (double) totals[1] / (threads * iterations));
+        System.out.println(result);
+        return result;
+    }
+
+    private static long[] run(int threads, long iterations, Operation operation) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    long id = Thread.currentThread().getId();
+                    long bytes = THREADS.getThreadAllocatedBytes(id);
+                    long begin = System.nanoTime();
+                    for (long i = 0; i < iterations; i++) {
+                        operation.run();
+                    }
+                    long nanos = System.nanoTime() - begin;
+                    return new long[] { nanos, THREADS.getThreadAllocatedBytes(id) - bytes };
+                }));
+            }
+            start.countDown();
+            long[] totals = new long[2];
+            for (Future<long[]> future : futures) {
+                long[] result = future.get();
+                totals[0] += result[0];
+                totals[1] += result[1];
+            }
+            return totals;
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+}
@@ -16,6 +16,7 @@ import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpOptions;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
@@ -55,13 +56,21 @@ public abstract class AbstractHttpIntegrationTest {
 
         public Request(Response resp, String url, HttpMethod method) {
             this(url,method);
+            addCookies(resp);
+        }
+        
+        /**
+         * Also sends the cookies set by a later response, like a browser would.
+         */
+        public Request addCookies(Response resp) {
             for(Header h:resp.hdr) {
                 if ("Set-Cookie".equals(h.getName())) {
                     addHeader("Cookie", h.getValue().substring(0, h.getValue().indexOf(";")));
                 }
             }
+            return this;
         }
-        
+
         public Request addHeader(String name, String value) {
             headers.add(new BasicHeader(name, value));
             return this;
@@ -141,6 +150,14 @@ public abstract class AbstractHttpIntegrationTest {
             return null;
         }
 
+        /**
+         * @return the session cookie, depending on the session mode either JSESSIONID or SESSION.
+         */
+        public String getSessionCookie() {
+            String session = getCookie("JSESSIONID");
+            return session == null ? getCookie("SESSION") : session;
+        }
+
         public String getXsrfToken() {
             String token = getCookie("XSRF-TOKEN");
             return token == null ? token : token.substring(token.indexOf('=')+1, token.indexOf(';'));
@@ -177,6 +194,9 @@ public abstract class AbstractHttpIntegrationTest {
         case DELETE:
             request = new HttpDelete(baseUrl + req.url);
             break;
+        case OPTIONS:
+            request = new HttpOptions(baseUrl + req.url);
+            break;
         case POST:
             request = new HttpPost(baseUrl + req.url);
             ((HttpPost) request).setEntity(new StringEntity(req.body));
@@ -0,0 +1,46 @@
+package nl.fortytwo.rest.security;
+
+import static org.junit.Assert.assertTrue;
+
+import org.apache.log4j.FileAppender;
+import org.apache.log4j.PatternLayout;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nl.fortytwo.rest.BenchmarkRunner;
+import nl.fortytwo.rest.BenchmarkRunner.Result;
+
+/**
+ * Compares logging a login failure synchronously to a log4j file with recording it in the AuditLog, from 8 threads.
+ */
+public class AuditLogBenchmark {
+
+    private static final long ITERATIONS = 200000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void compare() throws Exception {
+        org.apache.log4j.Logger logger = org.apache.log4j.Logger.getLogger("audit-benchmark");
+        logger.setAdditivity(false);
+        logger.addAppender(new FileAppender(new PatternLayout("%d{yyyy-MM-dd HH:mm:ss} %-5p %c{1}:%L - %m%n"),
+                folder.newFile("log4j.log").getPath()));
+        AuditLog auditLog = new AuditLog(folder.getRoot().toPath().resolve("audit.log"), AuditLog.DEFAULT_CAPACITY,
+                AuditLog.DEFAULT_MAX_FILE_BYTES, AuditLog.DEFAULT_MAX_FILES);
+        try {
+            Result before = BenchmarkRunner.measure("log4j FileAppender (8 threads)", 8, ITERATIONS,
+                    () -> logger.warn("Login failure: user@42.nl from 10.0.0.1: Bad credentials"));
+            Result after = BenchmarkRunner.measure("AuditLog.record (8 threads)", 8, ITERATIONS,
+                    () -> auditLog.record(AuditLog.Type.LOGIN_FAILED, "user@42.nl", "10.0.0.1", "Bad credentials"));
+            System.out.println("Dropped " + auditLog.getDropped() + " audit events");
+
+            assertTrue(after.getNanosPerOperation() < before.getNanosPerOperation());
+        } finally {
+            auditLog.close();
+            logger.removeAllAppenders();
+        }
+    }
+
+}
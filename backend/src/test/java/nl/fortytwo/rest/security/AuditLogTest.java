@@ -0,0 +1,126 @@
+package nl.fortytwo.rest.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import nl.fortytwo.rest.security.AuditLog.RingBuffer;
+
+public class AuditLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldWriteEventsAsJsonLines() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("audit/audit.log");
+        AuditLog auditLog = new AuditLog(file, 16, AuditLog.DEFAULT_MAX_FILE_BYTES, 1);
+
+        assertTrue(auditLog.record(AuditLog.Type.LOGIN_FAILED, "user@42.nl", "10.0.0.1", "Bad \"credentials\"\n"));
+        assertTrue(auditLog.record(AuditLog.Type.UNAUTHORIZED, null, null, null));
+        auditLog.close();
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        JsonNode failure = new ObjectMapper().readTree(lines.get(0));
+        assertEquals("LOGIN_FAILED", failure.get("type").asText());
+        assertEquals("user@42.nl", failure.get("principal").asText());
+        assertEquals("10.0.0.1", failure.get("address").asText());
+        assertEquals("Bad \"credentials\"\n", failure.get("detail").asText());
+        assertTrue(failure.get("time").asText().endsWith("Z"));
+        JsonNode unauthorized = new ObjectMapper().readTree(lines.get(1));
+        assertEquals("UNAUTHORIZED", unauthorized.get("type").asText());
+        assertNull(unauthorized.get("principal"));
+    }
+
+    @Test
+    public void shouldRotateFiles() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("audit.log");
+        AuditLog auditLog = new AuditLog(file, 64, 300L, 2);
+        for (int i = 0; i < 50; i++) {
+            auditLog.record(AuditLog.Type.ACCESS_DENIED, "user" + i, null, "/users");
+        }
+        auditLog.close();
+
+        for (Path path : new Path[] { file, Paths.get(file + ".1"), Paths.get(file + ".2") }) {
+            assertTrue(Files.size(path) <= 300L);
+            assertFalse(Files.readAllLines(path, StandardCharsets.UTF_8).isEmpty());
+        }
+        assertFalse(Files.exists(Paths.get(file + ".3")));
+        List<String> last = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertTrue(last.get(last.size() - 1).contains("\"principal\":\"user49\""));
+    }
+
+    @Test
+    public void shouldDropEventsInsteadOfWaiting() throws IOException {
+        RingBuffer buffer = new RingBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        assertEquals(Integer.valueOf(0), buffer.poll());
+        assertTrue(buffer.offer(4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(Integer.valueOf(i), buffer.poll());
+        }
+        assertNull(buffer.poll());
+
+        AuditLog auditLog = new AuditLog(folder.getRoot().toPath().resolve("audit.log"), 16, AuditLog.DEFAULT_MAX_FILE_BYTES, 1);
+        auditLog.close();
+        assertFalse(auditLog.record(AuditLog.Type.LOGIN_FAILED, null, null, null));
+        assertEquals(1L, auditLog.getDropped());
+    }
+
+    @Test
+    public void shouldDeliverEveryEventOnceFromConcurrentProducers() throws InterruptedException {
+        RingBuffer buffer = new RingBuffer(64);
+        int producers = 4;
+        int perProducer = 20000;
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int first = p * perProducer;
+            Thread thread = new Thread(() -> {
+                for (int i = first; i < first + perProducer; i++) {
+                    while (!buffer.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        BitSet seen = new BitSet();
+        int received = 0;
+        while (received < producers * perProducer) {
+            Integer element = buffer.poll();
+            if (element != null) {
+                assertFalse(seen.get(element));
+                seen.set(element);
+                received++;
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(producers * perProducer, seen.cardinality());
+        assertNull(buffer.poll());
+    }
+
+}
@@ -1,16 +1,19 @@
 package nl.fortytwo.rest.security;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import java.security.Principal;
 import java.util.Optional;
 
 import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 
 import mockit.Expectations;
 import mockit.Injectable;
 import mockit.Mocked;
 import mockit.Tested;
+import mockit.Verifications;
 import nl.fortytwo.rest.user.PrincipalService;
 import nl.fortytwo.rest.user.Role;
 import nl.fortytwo.rest.user.User;
@@ -48,4 +51,24 @@ public class AuthenticationControllerTest {
         assertEquals("email", result.getEmail());
     }
 
+    @Test
+    public void shouldReturnSnapshotWithoutLookup(@Mocked SpringUserDetailsService.UserDetailsAdapter adapter) {
+        UserDTO snapshot = new UserDTO(new User("email", Role.ROLE_ADMIN));
+        new Expectations() {
+            {
+                adapter.getSnapshot();
+                result = snapshot;
+            }
+        };
+        UserDTO result = authenticationController.authenticate(new UsernamePasswordAuthenticationToken(adapter, null));
+
+        assertSame(snapshot, result);
+        new Verifications() {
+            {
+                userService.findByEmail(anyString);
+                times = 0;
+            }
+        };
+    }
+
 }
@@ -0,0 +1,44 @@
+package nl.fortytwo.rest.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+public class CalibratedPasswordEncoderTest {
+
+    @Test
+    public void shouldReadCost() {
+        assertEquals(10, CalibratedPasswordEncoder.costOf(new BCryptPasswordEncoder(10).encode("pwd")));
+        assertEquals(4, CalibratedPasswordEncoder.costOf(new BCryptPasswordEncoder(4).encode("pwd")));
+        assertEquals(12, CalibratedPasswordEncoder.costOf("$2y$12$abcdefghijklmnopqrstuv"));
+        assertEquals(-1, CalibratedPasswordEncoder.costOf("plain"));
+        assertEquals(-1, CalibratedPasswordEncoder.costOf("$1$ab$cdefgh"));
+    }
+
+    @Test
+    public void shouldNeedRehashOnlyForOtherCost() {
+        CalibratedPasswordEncoder encoder = new CalibratedPasswordEncoder(5);
+
+        assertFalse(encoder.needsRehash(encoder.encode("pwd")));
+        assertTrue(encoder.needsRehash(new BCryptPasswordEncoder(4).encode("pwd")));
+        assertFalse(encoder.needsRehash(null));
+    }
+
+    @Test
+    public void shouldMatchHashesOfAnyCost() {
+        CalibratedPasswordEncoder encoder = new CalibratedPasswordEncoder(5);
+
+        assertTrue(encoder.matches("pwd", new BCryptPasswordEncoder(4).encode("pwd")));
+        assertFalse(encoder.matches("other", new BCryptPasswordEncoder(4).encode("pwd")));
+    }
+
+    @Test
+    public void shouldCalibrateWithinBounds() {
+        assertEquals(4, CalibratedPasswordEncoder.calibrate(0, 4, 6).getStrength());
+        assertEquals(6, CalibratedPasswordEncoder.calibrate(Long.MAX_VALUE, 4, 6).getStrength());
+    }
+
+}
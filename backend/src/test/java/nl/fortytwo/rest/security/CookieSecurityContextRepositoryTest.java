@@ -0,0 +1,269 @@
+package nl.fortytwo.rest.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.context.HttpRequestResponseHolder;
+
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Verifications;
+import nl.fortytwo.rest.security.SpringUserDetailsService.UserDetailsAdapter;
+import nl.fortytwo.rest.user.PrincipalService;
+import nl.fortytwo.rest.user.Role;
+import nl.fortytwo.rest.user.User;
+
+public class CookieSecurityContextRepositoryTest {
+
+    @Injectable
+    private PrincipalService principalService;
+
+    private final AtomicLong clock = new AtomicLong(1000000L);
+
+    private CookieSecurityContextRepository repository;
+
+    @Before
+    public void init() {
+        repository = new CookieSecurityContextRepository(new EncryptedCookieSessionStore(SessionCookieCipher.withRandomKey()), principalService, clock::get);
+    }
+
+    @Test
+    public void shouldLoadEmptyContextWithoutCookie() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+
+        SecurityContext context = repository.loadContext(new HttpRequestResponseHolder(request, new MockHttpServletResponse()));
+
+        assertNull(context.getAuthentication());
+        assertFalse(repository.containsContext(request));
+    }
+
+    @Test
+    public void shouldRoundTripAuthenticationWithoutLookup() {
+        Cookie cookie = login(new User("email", "123", Role.ROLE_ADMIN));
+
+        clock.addAndGet(59000L);
+        SecurityContext context = load(cookie, new MockHttpServletResponse());
+
+        UserDetailsAdapter principal = (UserDetailsAdapter) context.getAuthentication().getPrincipal();
+        assertEquals("email", principal.getUsername());
+        assertNull(principal.getPassword());
+        assertTrue(context.getAuthentication().getAuthorities().contains(new SimpleGrantedAuthority("ROLE_ADMIN")));
+        new Verifications() {
+            {
+                principalService.findByEmail(anyString);
+                times = 0;
+            }
+        };
+    }
+
+    @Test
+    public void shouldNotRewriteUnchangedCookie() {
+        Cookie cookie = login(new User("email", "123", Role.ROLE_USER));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockHttpServletRequest request = request(cookie);
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, response);
+
+        SecurityContext context = repository.loadContext(holder);
+        repository.saveContext(context, holder.getRequest(), holder.getResponse());
+
+        assertNull(response.getCookie(CookieSecurityContextRepository.COOKIE_NAME));
+    }
+
+    @Test
+    public void shouldRevalidateAndRenewCookie() {
+        User user = new User("email", "123", Role.ROLE_USER);
+        Cookie cookie = login(user);
+        user.changeRole(Role.ROLE_ADMIN);
+        new Expectations() {
+            {
+                principalService.findByEmail("email");
+                result = Optional.of(user);
+            }
+        };
+
+        clock.addAndGet(61000L);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        SecurityContext context = load(cookie, response);
+
+        assertSame(user, ((UserDetailsAdapter) context.getAuthentication().getPrincipal()).getUser());
+        Cookie renewed = response.getCookie(CookieSecurityContextRepository.COOKIE_NAME);
+        assertNotNull(renewed);
+
+        clock.addAndGet(1000L);
+        context = load(renewed, new MockHttpServletResponse());
+        assertTrue(context.getAuthentication().getAuthorities().contains(new SimpleGrantedAuthority("ROLE_ADMIN")));
+    }
+
+    @Test
+    public void shouldKeepSessionIdOfUnchangedUserOnRevalidation() {
+        InMemorySessionStore store = new InMemorySessionStore(1800000L, clock::get);
+        repository = new CookieSecurityContextRepository(store, principalService, clock::get);
+        User user = new User("email", "123", Role.ROLE_USER);
+        Cookie cookie = login(user);
+        new Expectations() {
+            {
+                principalService.findByEmail("email");
+                result = Optional.of(user);
+            }
+        };
+
+        clock.addAndGet(61000L);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        load(cookie, response);
+
+        assertNull(response.getCookie(CookieSecurityContextRepository.COOKIE_NAME));
+        assertNotNull(store.load(cookie.getValue()));
+    }
+
+    @Test
+    public void shouldStartNewSessionForChangedUserOnRevalidation() {
+        InMemorySessionStore store = new InMemorySessionStore(1800000L, clock::get);
+        repository = new CookieSecurityContextRepository(store, principalService, clock::get);
+        User user = new User("email", "123", Role.ROLE_USER);
+        Cookie cookie = login(user);
+        user.changeRole(Role.ROLE_ADMIN);
+        new Expectations() {
+            {
+                principalService.findByEmail("email");
+                result = Optional.of(user);
+            }
+        };
+
+        clock.addAndGet(61000L);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        load(cookie, response);
+
+        Cookie renewed = response.getCookie(CookieSecurityContextRepository.COOKIE_NAME);
+        assertNotEquals(cookie.getValue(), renewed.getValue());
+        assertNull(store.load(cookie.getValue()));
+        assertEquals(user.getVersion(), SecurityContextCodec.decode(store.load(renewed.getValue())).getVersion());
+    }
+
+    @Test
+    public void shouldDropRemovedUserOnRevalidation() {
+        Cookie cookie = login(new User("email", "123", Role.ROLE_USER));
+        new Expectations() {
+            {
+                principalService.findByEmail("email");
+                result = Optional.empty();
+            }
+        };
+
+        clock.addAndGet(61000L);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        SecurityContext context = load(cookie, response);
+
+        assertNull(context.getAuthentication());
+        assertEquals(0, response.getCookie(CookieSecurityContextRepository.COOKIE_NAME).getMaxAge());
+    }
+
+    @Test
+    public void shouldIgnoreExpiredCookie() {
+        Cookie cookie = login(new User("email", "123", Role.ROLE_USER));
+
+        clock.addAndGet(1800001L);
+
+        assertNull(load(cookie, new MockHttpServletResponse()).getAuthentication());
+    }
+
+    @Test
+    public void shouldDeleteCookieOnLogout() {
+        Cookie cookie = login(new User("email", "123", Role.ROLE_USER));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockHttpServletRequest request = request(cookie);
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request, response);
+        repository.loadContext(holder);
+
+        repository.saveContext(SecurityContextHolder.createEmptyContext(), holder.getRequest(), holder.getResponse());
+
+        assertEquals(0, response.getCookie(CookieSecurityContextRepository.COOKIE_NAME).getMaxAge());
+    }
+
+    @Test
+    public void shouldWriteCookieBeforeCommit() throws Exception {
+        UserDetailsAdapter principal = new UserDetailsAdapter(new User("email", "123", Role.ROLE_USER));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(new MockHttpServletRequest(), response);
+        repository.loadContext(holder);
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+        try {
+            holder.getResponse().sendError(HttpServletResponse.SC_NO_CONTENT);
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+
+        assertNotNull(response.getCookie(CookieSecurityContextRepository.COOKIE_NAME));
+    }
+
+    @Test
+    public void shouldStartNewServerSideSessionOnLogin() {
+        InMemorySessionStore store = new InMemorySessionStore(1800000L, clock::get);
+        repository = new CookieSecurityContextRepository(store, principalService, clock::get);
+        Cookie first = login(new User("email", "123", Role.ROLE_USER));
+
+        UserDetailsAdapter principal = new UserDetailsAdapter(new User("other", "123", Role.ROLE_ADMIN));
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        context.setAuthentication(new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        repository.saveContext(context, request(first), response);
+
+        Cookie second = response.getCookie(CookieSecurityContextRepository.COOKIE_NAME);
+        assertNotEquals(first.getValue(), second.getValue());
+        assertNull(store.load(first.getValue()));
+        assertEquals("other", load(second, new MockHttpServletResponse()).getAuthentication().getName());
+
+        MockHttpServletRequest request = request(second);
+        repository.saveContext(SecurityContextHolder.createEmptyContext(), request, new MockHttpServletResponse());
+        assertEquals(0, store.size());
+    }
+
+    private Cookie login(User user) {
+        UserDetailsAdapter principal = new UserDetailsAdapter(user);
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        context.setAuthentication(new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+        // Behind a TLS terminating proxy the request itself is not secure.
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        repository.saveContext(context, request, response);
+
+        Cookie cookie = response.getCookie(CookieSecurityContextRepository.COOKIE_NAME);
+        assertTrue(cookie.isHttpOnly());
+        assertTrue(cookie.getSecure());
+        assertFalse(cookie.getValue().contains(user.getEmail()));
+        return cookie;
+    }
+
+    private SecurityContext load(Cookie cookie, MockHttpServletResponse response) {
+        HttpRequestResponseHolder holder = new HttpRequestResponseHolder(request(cookie), response);
+        SecurityContext context = repository.loadContext(holder);
+        repository.saveContext(context, holder.getRequest(), holder.getResponse());
+        return context;
+    }
+
+    private static MockHttpServletRequest request(Cookie cookie) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(cookie);
+        return request;
+    }
+
+}
@@ -0,0 +1,82 @@
+package nl.fortytwo.rest.security;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import nl.fortytwo.rest.BenchmarkRunner;
+import nl.fortytwo.rest.BenchmarkRunner.Result;
+
+/**
+ * Compares the CorsInterceptor with the list scan it used before the policies were compiled, for a few hundred tenant
+ * origins.
+ */
+public class CorsBenchmark {
+
+    private static final long ITERATIONS = 2000000L;
+
+    private static final int TENANTS = 500;
+
+    private final String origins;
+
+    private final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/users");
+
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    public CorsBenchmark() {
+        StringBuilder builder = new StringBuilder();
+        for (int t = 0; t < TENANTS; t++) {
+            builder.append(t == 0 ? "" : ", ").append("https://tenant").append(t).append(".42.nl");
+        }
+        origins = builder.toString();
+        request.setContextPath("/api");
+        request.addHeader("Origin", "https://tenant" + (TENANTS - 1) + ".42.nl");
+    }
+
+    @Test
+    public void compare() throws Exception {
+        ListScanInterceptor listScan = new ListScanInterceptor(origins);
+        CorsInterceptor compiled = new CorsInterceptor(origins);
+
+        Result before = BenchmarkRunner.measure("List scan, " + TENANTS + " origins", ITERATIONS, () -> listScan.preHandle(request, response, null));
+        Result after = BenchmarkRunner.measure("Compiled policy, " + TENANTS + " origins", ITERATIONS, () -> compiled.preHandle(request, response, null));
+
+        assertTrue(after.getNanosPerOperation() < before.getNanosPerOperation());
+    }
+
+    /**
+     * The original CorsInterceptor.
+     */
+    private static final class ListScanInterceptor {
+
+        private final List<String> origins;
+
+        private ListScanInterceptor(String origins) {
+            this.origins = Arrays.asList(origins.trim().split("( )*,( )*"));
+        }
+
+        private boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+            response.setHeader(CorsInterceptor.CREDENTIALS_NAME, "true");
+            response.setHeader(CorsInterceptor.METHODS_NAME, "GET, OPTIONS, POST, PUT, PATCH, DELETE");
+            response.setHeader(CorsInterceptor.HEADERS_NAME, "Origin, X-Requested-With, Content-Type, Accept, X-XSRF-TOKEN");
+            response.setHeader(CorsInterceptor.MAX_AGE_NAME, "3600");
+
+            String origin = request.getHeader(CorsInterceptor.REQUEST_ORIGIN_NAME);
+            if (origins.contains(origin)) {
+                response.setHeader(CorsInterceptor.ORIGIN_NAME, origin);
+                return true;
+            }
+            response.setHeader(CorsInterceptor.ORIGIN_NAME, origins.iterator().next());
+            return false;
+        }
+    }
+
+}
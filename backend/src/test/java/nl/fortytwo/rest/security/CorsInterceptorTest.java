@@ -1,8 +1,8 @@
 package nl.fortytwo.rest.security;
 
-import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import javax.servlet.http.HttpServletResponse;
@@ -40,10 +40,10 @@ public class CorsInterceptorTest {
 
         assertFalse(interceptor.preHandle(request, response, null));
 
-        assertNotNull(response.getHeader(CorsInterceptor.CREDENTIALS_NAME));
+        assertNull(response.getHeader(CorsInterceptor.CREDENTIALS_NAME));
         assertNotNull(response.getHeader(CorsInterceptor.HEADERS_NAME));
         assertNotNull(response.getHeader(CorsInterceptor.MAX_AGE_NAME));
-        assertEquals("http://localhost:9000", response.getHeader(CorsInterceptor.ORIGIN_NAME));
+        assertNull(response.getHeader(CorsInterceptor.ORIGIN_NAME));
     }
 
 }
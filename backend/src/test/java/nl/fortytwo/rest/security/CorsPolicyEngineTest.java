@@ -0,0 +1,50 @@
+package nl.fortytwo.rest.security;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class CorsPolicyEngineTest {
+
+    private final CorsPolicy defaultPolicy = new CorsPolicy("https://app.42.nl");
+
+    private final CorsPolicy publicPolicy = new CorsPolicy("https://*.tenant.42.nl");
+
+    private final CorsPolicy adminPolicy = new CorsPolicy("https://admin.42.nl");
+
+    private final CorsPolicyEngine engine = new CorsPolicyEngine(defaultPolicy)
+            .addPolicy("/public/", publicPolicy)
+            .addPolicy("/public/admin", adminPolicy);
+
+    @Test
+    public void shouldSelectLongestMatchingPrefix() {
+        assertSame(defaultPolicy, engine.policyFor(request("/users")));
+        assertSame(defaultPolicy, engine.policyFor(request("/publication")));
+        assertSame(publicPolicy, engine.policyFor(request("/public")));
+        assertSame(publicPolicy, engine.policyFor(request("/public/users")));
+        assertSame(adminPolicy, engine.policyFor(request("/public/admin/users")));
+    }
+
+    @Test
+    public void shouldDecideForPathAndOrigin() {
+        MockHttpServletRequest request = request("/public/users");
+        request.addHeader("Origin", "https://acme.tenant.42.nl");
+
+        assertTrue(engine.decide(request).isAllowed());
+
+        request = request("/users");
+        request.addHeader("Origin", "https://acme.tenant.42.nl");
+
+        assertFalse(engine.decide(request).isAllowed());
+    }
+
+    private static MockHttpServletRequest request(String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api" + path);
+        request.setContextPath("/api");
+        return request;
+    }
+
+}
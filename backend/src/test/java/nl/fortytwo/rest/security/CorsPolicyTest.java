@@ -0,0 +1,81 @@
+package nl.fortytwo.rest.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class CorsPolicyTest {
+
+    private final CorsPolicy policy = new CorsPolicy("https://app.42.nl, https://*.tenant.42.nl,https://*.example.com:8443");
+
+    @Test
+    public void shouldAllowExactOrigin() {
+        CorsPolicy.Decision decision = policy.decide("https://app.42.nl");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        decision.apply(response);
+
+        assertTrue(decision.isAllowed());
+        assertSame(decision, policy.decide("https://app.42.nl"));
+        assertEquals("https://app.42.nl", response.getHeader(CorsInterceptor.ORIGIN_NAME));
+        assertEquals("true", response.getHeader(CorsInterceptor.CREDENTIALS_NAME));
+        assertEquals(CorsPolicy.DEFAULT_METHODS, response.getHeader(CorsInterceptor.METHODS_NAME));
+        assertEquals(CorsPolicy.DEFAULT_HEADERS, response.getHeader(CorsInterceptor.HEADERS_NAME));
+        assertEquals("3600", response.getHeader(CorsInterceptor.MAX_AGE_NAME));
+    }
+
+    @Test
+    public void shouldAllowWildcardSubdomains() {
+        assertTrue(policy.decide("https://acme.tenant.42.nl").isAllowed());
+        assertTrue(policy.decide("https://eu.acme.tenant.42.nl").isAllowed());
+        assertTrue(policy.decide("https://acme.example.com:8443").isAllowed());
+
+        assertFalse(policy.decide("https://tenant.42.nl").isAllowed());
+        assertFalse(policy.decide("http://acme.tenant.42.nl").isAllowed());
+        assertFalse(policy.decide("https://acme.tenant.42.nl.evil.org").isAllowed());
+        assertFalse(policy.decide("https://eviltenant.42.nl").isAllowed());
+        assertFalse(policy.decide("https://acme.example.com").isAllowed());
+    }
+
+    @Test
+    public void shouldDenyWithoutOriginOrCredentials() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        CorsPolicy.Decision decision = policy.decide("http://evil.org");
+        decision.apply(response);
+
+        assertFalse(decision.isAllowed());
+        assertFalse(policy.decide(null).isAllowed());
+        assertNull(response.getHeader(CorsInterceptor.ORIGIN_NAME));
+        assertNull(response.getHeader(CorsInterceptor.CREDENTIALS_NAME));
+    }
+
+    @Test
+    public void shouldOnlyCacheAllowedOrigins() {
+        CorsPolicy.Decision denied = policy.decide("http://evil0.org");
+        for (int i = 1; i < 100; i++) {
+            assertSame(denied, policy.decide("http://evil" + i + ".org"));
+        }
+        policy.decide("https://app.42.nl");
+
+        assertEquals(1L, policy.cachedOrigins());
+    }
+
+    @Test
+    public void shouldNeverAllowNullOrigin() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        CorsPolicy wildcardOnly = new CorsPolicy("https://*.42.nl");
+        wildcardOnly.decide("null").apply(response);
+
+        assertFalse(wildcardOnly.decide("null").isAllowed());
+        assertNull(response.getHeader(CorsInterceptor.ORIGIN_NAME));
+        assertNull(response.getHeader(CorsInterceptor.CREDENTIALS_NAME));
+    }
+
+}
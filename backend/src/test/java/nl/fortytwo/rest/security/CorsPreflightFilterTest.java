@@ -0,0 +1,101 @@
+package nl.fortytwo.rest.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import mockit.Mocked;
+import mockit.Verifications;
+
+public class CorsPreflightFilterTest {
+
+    private final CorsPreflightFilter filter = new CorsPreflightFilter(new CorsPolicyEngine(new CorsPolicy("https://app.42.nl")));
+
+    private MockHttpServletRequest request;
+
+    private MockHttpServletResponse response;
+
+    @Mocked
+    private FilterChain chain;
+
+    @Before
+    public void init() {
+        request = new MockHttpServletRequest("OPTIONS", "/users");
+        response = new MockHttpServletResponse();
+    }
+
+    @Test
+    public void shouldAnswerAllowedPreflight() throws ServletException, IOException {
+        request.addHeader("Origin", "https://app.42.nl");
+        request.addHeader("Access-Control-Request-Method", "POST");
+
+        filter.doFilter(request, response, chain);
+
+        assertEquals(204, response.getStatus());
+        assertEquals("https://app.42.nl", response.getHeader(CorsInterceptor.ORIGIN_NAME));
+        assertEquals(CorsPolicy.DEFAULT_METHODS, response.getHeader(CorsInterceptor.METHODS_NAME));
+
+        new Verifications() {
+            {
+                chain.doFilter(request, response);
+                times = 0;
+            }
+        };
+    }
+
+    @Test
+    public void shouldRejectPreflightFromOtherOrigin() throws ServletException, IOException {
+        request.addHeader("Origin", "https://evil.org");
+        request.addHeader("Access-Control-Request-Method", "POST");
+
+        filter.doFilter(request, response, chain);
+
+        assertEquals(403, response.getStatus());
+        assertNull(response.getHeader(CorsInterceptor.ORIGIN_NAME));
+
+        new Verifications() {
+            {
+                chain.doFilter(request, response);
+                times = 0;
+            }
+        };
+    }
+
+    @Test
+    public void shouldProceedWithoutPreflightHeaders() throws ServletException, IOException {
+        request.addHeader("Origin", "https://app.42.nl");
+
+        filter.doFilter(request, response, chain);
+
+        new Verifications() {
+            {
+                chain.doFilter(request, response);
+            }
+        };
+    }
+
+    @Test
+    public void shouldProceedForOtherMethods() throws ServletException, IOException {
+        request.setMethod("GET");
+        request.addHeader("Origin", "https://app.42.nl");
+        request.addHeader("Access-Control-Request-Method", "POST");
+
+        filter.doFilter(request, response, chain);
+
+        new Verifications() {
+            {
+                chain.doFilter(request, response);
+            }
+        };
+    }
+
+}
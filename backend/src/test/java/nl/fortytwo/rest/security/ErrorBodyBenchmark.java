@@ -0,0 +1,37 @@
+package nl.fortytwo.rest.security;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import nl.fortytwo.rest.BenchmarkRunner;
+import nl.fortytwo.rest.BenchmarkRunner.Result;
+import nl.fortytwo.rest.security.dto.ErrorDto;
+
+/**
+ * Compares writing a rejection with a pre-encoded ErrorBody to serializing a new ErrorDto.
+ */
+public class ErrorBodyBenchmark {
+
+    private static final long ITERATIONS = 2000000L;
+
+    @Test
+    public void compare() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        Result before = BenchmarkRunner.measure("ObjectMapper, new ErrorDto", ITERATIONS, () -> {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            objectMapper.writeValue(response.getOutputStream(), new ErrorDto("Login failed; Invalid userID or password"));
+        });
+        Result after = BenchmarkRunner.measure("Pre-encoded ErrorBody", ITERATIONS, () -> {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            ErrorBody.LOGIN_FAILED.writeTo(response);
+        });
+
+        assertTrue(after.getNanosPerOperation() < before.getNanosPerOperation());
+    }
+
+}
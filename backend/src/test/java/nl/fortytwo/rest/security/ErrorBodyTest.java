@@ -0,0 +1,43 @@
+package nl.fortytwo.rest.security;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import nl.fortytwo.rest.security.dto.ErrorDto;
+
+public class ErrorBodyTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void shouldEncodeLikeErrorDto() throws IOException {
+        assertArrayEquals(objectMapper.writeValueAsBytes(new ErrorDto("Please Login.")), ErrorBody.PLEASE_LOGIN.getBytes());
+        String error = "Quote \" backslash \\ tab \t and é€";
+        assertArrayEquals(objectMapper.writeValueAsBytes(new ErrorDto(error)), ErrorBody.of(error).getBytes());
+    }
+
+    @Test
+    public void shouldReuseRegisteredBodies() {
+        assertSame(ErrorBody.ACCESS_DENIED, ErrorBody.of("Access Denied"));
+        assertSame(ErrorBody.LOGIN_FAILED, ErrorBody.of("Login failed; Invalid userID or password"));
+    }
+
+    @Test
+    public void shouldWriteWithContentLength() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        ErrorBody.AUTHENTICATION_FAILED.writeTo(response);
+
+        assertEquals("{\"error\":\"Authentication failed.\"}", response.getContentAsString());
+        assertEquals(response.getContentAsByteArray().length, response.getContentLength());
+    }
+
+}
@@ -2,6 +2,7 @@ package nl.fortytwo.rest.security;
 
 import org.junit.Test;
 import org.springframework.core.MethodParameter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -31,6 +32,11 @@ public class FallbackExceptionAdviceTest {
         advice.handleIllegalArgument(new IllegalArgumentException("msg"));
     }
 
+    @Test
+    public void shouldHandleUnreadableMessage() {
+        advice.handleMessageNotReadable(new HttpMessageNotReadableException("msg"));
+    }
+
     @Test
     public void shouldHandleExceptions() {
         advice.handleException(new Exception("msg"));
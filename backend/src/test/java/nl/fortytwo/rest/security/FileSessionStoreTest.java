@@ -0,0 +1,118 @@
+package nl.fortytwo.rest.security;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileSessionStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private Path directory;
+
+    private FileSessionStore store;
+
+    @Before
+    public void init() throws IOException {
+        directory = folder.newFolder("sessions").toPath();
+        store = new FileSessionStore(directory, 1000L, clock::get, 0L);
+    }
+
+    @Test
+    public void shouldBeSharedBetweenNodes() {
+        FileSessionStore otherNode = new FileSessionStore(directory, 1000L, clock::get, 0L);
+
+        String id = store.create(new byte[] { 1, 2, 3 });
+
+        assertArrayEquals(new byte[] { 1, 2, 3 }, otherNode.load(id));
+        assertEquals(id, otherNode.update(id, new byte[] { 4 }));
+        assertArrayEquals(new byte[] { 4 }, store.load(id));
+
+        otherNode.remove(id);
+
+        assertNull(store.load(id));
+        assertNull(store.update(id, new byte[] { 5 }));
+    }
+
+    @Test
+    public void shouldExpire() {
+        String id = store.create(new byte[] { 1 });
+        clock.addAndGet(1000L);
+
+        assertNull(store.load(id));
+        assertFalse(Files.exists(directory.resolve(id)));
+    }
+
+    @Test
+    public void shouldSweepExpiredSessions() {
+        String expired = store.create(new byte[] { 1 });
+        clock.addAndGet(500L);
+        String alive = store.create(new byte[] { 2 });
+        clock.addAndGet(500L);
+
+        store.sweep();
+
+        assertFalse(Files.exists(directory.resolve(expired)));
+        assertTrue(Files.exists(directory.resolve(alive)));
+    }
+
+    @Test
+    public void shouldSweepStaleTemporaryFiles() throws IOException {
+        clock.set(System.currentTimeMillis());
+        Path stale = Files.createTempFile(directory, "stale", ".tmp");
+        Files.setLastModifiedTime(stale, FileTime.fromMillis(clock.get() - 1000L));
+        Path fresh = Files.createTempFile(directory, "fresh", ".tmp");
+        Files.setLastModifiedTime(fresh, FileTime.fromMillis(clock.get() - 999L));
+
+        store.sweep();
+
+        assertFalse(Files.exists(stale));
+        assertTrue(Files.exists(fresh));
+    }
+
+    @Test
+    public void shouldKeepSweepingPastUnreadableFiles() throws IOException {
+        List<String> expired = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            expired.add(store.create(new byte[] { 1 }));
+        }
+        // A directory under a session name cannot be read as a session.
+        Files.createDirectory(directory.resolve(SessionIds.generate()));
+        clock.addAndGet(1000L);
+
+        store.sweep();
+
+        for (String id : expired) {
+            assertFalse(Files.exists(directory.resolve(id)));
+        }
+    }
+
+    @Test
+    public void shouldRejectIdsOutsideTheDirectory() throws IOException {
+        Files.write(directory.resolveSibling("secret"), new byte[16]);
+
+        assertNull(store.load("../secret"));
+        store.remove("../secret");
+
+        assertTrue(Files.exists(directory.resolveSibling("secret")));
+    }
+
+}
@@ -0,0 +1,91 @@
+package nl.fortytwo.rest.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import javax.servlet.http.Cookie;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.csrf.CsrfToken;
+
+public class HmacCsrfTokenRepositoryTest {
+
+    private final HmacCsrfTokenRepository repository = new HmacCsrfTokenRepository(new byte[32]);
+
+    @Before
+    @After
+    public void clear() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void shouldLoadTokenFromCookie() {
+        repository.setHeaderName("X-XSRF-TOKEN");
+        CsrfToken token = repository.generateToken(new MockHttpServletRequest());
+
+        CsrfToken loaded = repository.loadToken(request(token.getToken()));
+
+        assertEquals(token.getToken(), loaded.getToken());
+        assertEquals("X-XSRF-TOKEN", loaded.getHeaderName());
+        assertNotEquals(token.getToken(), repository.generateToken(new MockHttpServletRequest()).getToken());
+    }
+
+    @Test
+    public void shouldNotStoreAnything() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        repository.saveToken(repository.generateToken(request), request, response);
+
+        assertNull(request.getSession(false));
+        assertEquals(0, response.getCookies().length);
+        assertNull(repository.loadToken(request));
+    }
+
+    @Test
+    public void shouldRejectForgedToken() {
+        String token = repository.generateToken(new MockHttpServletRequest()).getToken();
+        String nonce = token.substring(0, token.indexOf('.'));
+
+        assertNull(repository.loadToken(request(nonce + ".AAAA")));
+        assertNull(repository.loadToken(request(nonce)));
+        assertNull(repository.loadToken(request("#.#")));
+        assertNull(new HmacCsrfTokenRepository(new byte[] { 1 }).loadToken(request(token)));
+    }
+
+    @Test
+    public void shouldInvalidateTokenOnLoginAndLogout() {
+        String anonymous = repository.generateToken(new MockHttpServletRequest()).getToken();
+
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("user@42.nl", null, AuthorityUtils.createAuthorityList("ROLE_USER")));
+
+        assertNull(repository.loadToken(request(anonymous)));
+        String authenticated = repository.generateToken(new MockHttpServletRequest()).getToken();
+        assertEquals(authenticated, repository.loadToken(request(authenticated)).getToken());
+
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("admin@42.nl", null, AuthorityUtils.createAuthorityList("ROLE_ADMIN")));
+
+        assertNull(repository.loadToken(request(authenticated)));
+
+        SecurityContextHolder.clearContext();
+
+        assertNull(repository.loadToken(request(authenticated)));
+    }
+
+    private static MockHttpServletRequest request(String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(XsrfHeaderFilter.COOKIE_NAME, token));
+        return request;
+    }
+
+}
@@ -0,0 +1,50 @@
+package nl.fortytwo.rest.security;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class InMemorySessionStoreTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final InMemorySessionStore store = new InMemorySessionStore(1000L, clock::get);
+
+    @Test
+    public void shouldCreateUpdateAndRemove() {
+        String id = store.create(new byte[] { 1 });
+
+        assertNotEquals(id, store.create(new byte[] { 1 }));
+        assertArrayEquals(new byte[] { 1 }, store.load(id));
+        assertEquals(id, store.update(id, new byte[] { 2 }));
+        assertArrayEquals(new byte[] { 2 }, store.load(id));
+
+        store.remove(id);
+
+        assertNull(store.load(id));
+        assertNull(store.update(id, new byte[] { 3 }));
+        assertNull(store.load(null));
+    }
+
+    @Test
+    public void shouldExpire() {
+        String id = store.create(new byte[] { 1 });
+        clock.addAndGet(900L);
+        store.update(id, new byte[] { 2 });
+        clock.addAndGet(900L);
+
+        assertArrayEquals(new byte[] { 2 }, store.load(id));
+
+        clock.addAndGet(100L);
+
+        assertNull(store.update(id, new byte[] { 3 }));
+        assertNull(store.load(id));
+        assertEquals(0, store.size());
+    }
+
+}
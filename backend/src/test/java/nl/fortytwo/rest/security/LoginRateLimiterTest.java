@@ -0,0 +1,82 @@
+package nl.fortytwo.rest.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class LoginRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(1000000L);
+
+    private final LoginRateLimiter limiter = new LoginRateLimiter(3, 1000L, now::get);
+
+    @Test
+    public void shouldAllowBurstUpToCapacity() {
+        assertTrue(limiter.tryAcquire("user"));
+        assertTrue(limiter.tryAcquire("user"));
+        assertTrue(limiter.tryAcquire("user"));
+        assertFalse(limiter.tryAcquire("user"));
+        assertTrue(limiter.tryAcquire("other"));
+    }
+
+    @Test
+    public void shouldRefillOverTime() {
+        shouldAllowBurstUpToCapacity();
+        now.addAndGet(999L);
+        assertFalse(limiter.tryAcquire("user"));
+        now.addAndGet(1L);
+        assertTrue(limiter.tryAcquire("user"));
+        assertFalse(limiter.tryAcquire("user"));
+    }
+
+    @Test
+    public void shouldExpireIdleBuckets() {
+        shouldAllowBurstUpToCapacity();
+        assertEquals(2, limiter.size());
+
+        for (int t = 0; t < 10; t++) {
+            now.addAndGet(500L);
+            limiter.tryAcquire("ticker");
+        }
+
+        assertEquals(1, limiter.size());
+        assertTrue(limiter.tryAcquire("user"));
+    }
+
+    @Test
+    public void shouldNeverHandOutMoreThanCapacityConcurrently() throws InterruptedException {
+        LoginRateLimiter concurrent = new LoginRateLimiter(100, Long.MAX_VALUE / 1000, now::get);
+        AtomicInteger granted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 1000; i++) {
+                    if (concurrent.tryAcquire("user")) {
+                        granted.incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(100, granted.get());
+    }
+
+}
@@ -0,0 +1,51 @@
+package nl.fortytwo.rest.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import mockit.Injectable;
+import mockit.Verifications;
+import nl.fortytwo.rest.user.PrincipalService;
+import nl.fortytwo.rest.user.Role;
+import nl.fortytwo.rest.user.User;
+
+public class PasswordHashUpgraderTest {
+
+    private final CalibratedPasswordEncoder encoder = new CalibratedPasswordEncoder(5);
+
+    @Injectable
+    private PrincipalService principalService;
+
+    @Test
+    public void shouldRehashOutdatedCost() {
+        String original = new BCryptPasswordEncoder(4).encode("123456");
+        User user = new User("email", original, Role.ROLE_USER);
+
+        new PasswordHashUpgrader(encoder, Runnable::run, principalService).upgradeIfNeeded(user, "123456");
+
+        new Verifications() {
+            {
+                String hash;
+                principalService.changePassword(user, original, hash = withCapture());
+                assertEquals(5, CalibratedPasswordEncoder.costOf(hash));
+                assertTrue(encoder.matches("123456", hash));
+            }
+        };
+    }
+
+    @Test
+    public void shouldKeepCurrentCost() {
+        String original = encoder.encode("123456");
+        User user = new User("email", original, Role.ROLE_USER);
+
+        new PasswordHashUpgrader(encoder, command -> {
+            throw new AssertionError("Should not rehash");
+        }, principalService).upgradeIfNeeded(user, "123456");
+
+        assertEquals(original, user.getPassword());
+    }
+
+}
@@ -0,0 +1,118 @@
+package nl.fortytwo.rest.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Verifications;
+import nl.fortytwo.rest.security.SpringUserDetailsService.UserDetailsAdapter;
+import nl.fortytwo.rest.user.PrincipalService;
+import nl.fortytwo.rest.user.Role;
+import nl.fortytwo.rest.user.User;
+
+public class PrincipalRevalidationFilterTest {
+
+    @Injectable
+    private PrincipalService principalService;
+
+    private final AtomicLong clock = new AtomicLong(1000000L);
+
+    private PrincipalRevalidationFilter filter;
+
+    @Before
+    public void init() {
+        filter = new PrincipalRevalidationFilter(principalService, 60000L, clock::get);
+    }
+
+    @After
+    public void clear() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void shouldTrustPrincipalWithinInterval() throws IOException, ServletException {
+        Authentication authentication = login(new User("email", "123", Role.ROLE_USER));
+        clock.addAndGet(59000L);
+
+        filter();
+
+        assertSame(authentication, SecurityContextHolder.getContext().getAuthentication());
+        new Verifications() {
+            {
+                principalService.findByEmail(anyString);
+                times = 0;
+            }
+        };
+    }
+
+    @Test
+    public void shouldPickUpRoleChangeFromStoreReturningCopies() throws IOException, ServletException {
+        User atLogin = new User("email", "123", Role.ROLE_USER);
+        login(atLogin);
+        new Expectations() {
+            {
+                // A copy, as the JdbcUserRepository returns, the user of the session does not change.
+                principalService.findByEmail("email");
+                result = Optional.of(new User("email", "123", Role.ROLE_ADMIN));
+            }
+        };
+        clock.addAndGet(60000L);
+
+        filter();
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        UserDetailsAdapter principal = (UserDetailsAdapter) authentication.getPrincipal();
+        assertEquals(Role.ROLE_USER, atLogin.getRole());
+        assertEquals(Role.ROLE_ADMIN, principal.getSnapshot().getRole());
+        assertTrue(authentication.getAuthorities().contains(new SimpleGrantedAuthority("ROLE_ADMIN")));
+        assertEquals(clock.get(), principal.getValidatedAt());
+    }
+
+    @Test
+    public void shouldLogOutRemovedUser() throws IOException, ServletException {
+        login(new User("email", "123", Role.ROLE_USER));
+        new Expectations() {
+            {
+                principalService.findByEmail("email");
+                result = Optional.empty();
+            }
+        };
+        clock.addAndGet(60000L);
+
+        filter();
+
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    private Authentication login(User user) {
+        UserDetailsAdapter principal = new UserDetailsAdapter(user, clock.get());
+        Authentication authentication = new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+        return authentication;
+    }
+
+    private void filter() throws IOException, ServletException {
+        filter.doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(), new MockFilterChain());
+    }
+
+}
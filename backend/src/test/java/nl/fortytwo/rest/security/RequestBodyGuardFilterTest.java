@@ -0,0 +1,147 @@
+package nl.fortytwo.rest.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+
+public class RequestBodyGuardFilterTest {
+
+    private final RequestBodyGuardFilter filter = new RequestBodyGuardFilter(64).addLimit("/users/batch", 256);
+
+    private MockHttpServletResponse response;
+
+    private MockFilterChain chain;
+
+    private String read;
+
+    @Before
+    public void init() {
+        response = new MockHttpServletResponse();
+        read = null;
+        chain = new MockFilterChain(new HttpServlet() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                read = StreamUtils.copyToString(req.getInputStream(), StandardCharsets.UTF_8);
+            }
+        });
+    }
+
+    @Test
+    public void shouldPassValidBody() throws ServletException, IOException {
+        String body = "{\"email\":\"user@42.nl\",\"password\":\"quote\\\" \\u00e9 \u00e9\"}";
+
+        filter.doFilter(request("/users", body), response, chain);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(body, read);
+        assertEquals(body.getBytes(StandardCharsets.UTF_8).length, chain.getRequest().getContentLength());
+    }
+
+    @Test
+    public void shouldRejectControlCharacters() throws ServletException, IOException {
+        for (String body : new String[] { "{\"password\":\"new\nline\"}", "{\"password\":\"tab\\t\"}", "{\"password\":\"\\u0000\"}",
+                "{\"password\":\"\\u009F\"}", "{\"password\":\"\u0085\"}", "{\"password\":\"\u007f\"}" }) {
+            init();
+
+            filter.doFilter(request("/users", body), response, chain);
+
+            assertEquals(body, 400, response.getStatus());
+            assertEquals("{\"error\":\"Request body contains control characters\"}", response.getContentAsString());
+            assertNull(read);
+        }
+    }
+
+    @Test
+    public void shouldReplaceResponseOfHandlerThatCaughtTheFailedRead() throws ServletException, IOException {
+        filter.doFilter(request("/users", "{\"password\":\"\\u0000\"}"), response, (req, resp) -> {
+            try {
+                StreamUtils.copyToByteArray(req.getInputStream());
+            } catch (IOException ex) {
+                // As the exception handling of Spring MVC would.
+                ((HttpServletResponse) resp).setStatus(500);
+                resp.getWriter().write("Internal error");
+            }
+        });
+
+        assertEquals(400, response.getStatus());
+        assertEquals("{\"error\":\"Request body contains control characters\"}", response.getContentAsString());
+    }
+
+    @Test
+    public void shouldLeaveUnreadFormBodyToTheContainer() throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/users");
+        request.setContentType("application/x-www-form-urlencoded");
+        request.setContent("email=user%4042.nl".getBytes(StandardCharsets.UTF_8));
+        request.addParameter("email", "user@42.nl");
+
+        filter.doFilter(request, response, (req, resp) -> assertEquals("user@42.nl", req.getParameter("email")));
+
+        assertEquals(200, response.getStatus());
+    }
+
+    @Test
+    public void shouldAllowWhitespaceOutsideStrings() throws ServletException, IOException {
+        filter.doFilter(request("/users", "{\n\t\"email\" : \"user@42.nl\"\r\n}"), response, chain);
+
+        assertEquals(200, response.getStatus());
+    }
+
+    @Test
+    public void shouldRejectBodiesOverTheLimitOfThePath() throws ServletException, IOException {
+        String body = "{\"email\":\"" + new String(new char[100]).replace('\0', 'a') + "\"}";
+
+        filter.doFilter(request("/users", body), response, chain);
+
+        assertEquals(413, response.getStatus());
+        assertNull(chain.getRequest());
+
+        init();
+        filter.doFilter(request("/users/batch", body), response, chain);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(body, read);
+    }
+
+    @Test
+    public void shouldRejectChunkedBodiesOverTheLimit() throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/users") {
+            @Override
+            public int getContentLength() {
+                return -1;
+            }
+        };
+        request.addHeader("Transfer-Encoding", "chunked");
+        request.setContentType("application/json");
+        request.setContent(new byte[65]);
+
+        filter.doFilter(request, response, chain);
+
+        assertEquals(413, response.getStatus());
+        assertEquals("{\"error\":\"Request body too large\"}", response.getContentAsString());
+        assertNull(read);
+    }
+
+    private static MockHttpServletRequest request(String uri, String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", uri);
+        request.setContentType("application/json");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+}
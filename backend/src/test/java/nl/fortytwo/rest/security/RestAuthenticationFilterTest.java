@@ -1,14 +1,18 @@
 package nl.fortytwo.rest.security;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
 
+import javax.servlet.DispatcherType;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.mock.web.MockAsyncContext;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -152,4 +156,135 @@ public class RestAuthenticationFilterTest {
         };
     }
 
+    @Test
+    public void shouldProceedAfterAsyncAuthSuccess() throws IOException, ServletException {
+        new Expectations() {
+            {
+                matcher.matches(request);
+                result = true;
+                authenticationManager.authenticate(new UsernamePasswordAuthenticationToken("name", "pwd"));
+            }
+        };
+        request.setAsyncSupported(true);
+        filter.setAuthenticationExecutor(Runnable::run);
+        filter.doFilter(request, response, chain);
+
+        assertTrue(request.isAsyncStarted());
+        assertEquals(request.getRequestURI(), ((MockAsyncContext) request.getAsyncContext()).getDispatchedPath());
+
+        request.setDispatcherType(DispatcherType.ASYNC);
+        filter.doFilter(request, response, chain);
+
+        new Verifications() {
+            {
+                principalService.markLoginSuccess("name");
+                times = 1;
+                chain.doFilter(request, response);
+                times = 1;
+            }
+        };
+    }
+
+    @Test
+    public void shouldNotProceedAfterAsyncAuthFails() throws IOException, ServletException {
+        new Expectations() {
+            {
+                matcher.matches(request);
+                result = true;
+                authenticationManager.authenticate(new UsernamePasswordAuthenticationToken("name", "pwd"));
+                result = new BadCredentialsException("");
+            }
+        };
+        request.setAsyncSupported(true);
+        filter.setAuthenticationExecutor(Runnable::run);
+        filter.doFilter(request, response, chain);
+        request.setDispatcherType(DispatcherType.ASYNC);
+        filter.doFilter(request, response, chain);
+
+        assertEquals(org.apache.http.HttpStatus.SC_FORBIDDEN, response.getStatus());
+
+        new Verifications() {
+            {
+                principalService.markLoginFailed("name");
+                times = 1;
+                chain.doFilter(request, response);
+                times = 0;
+            }
+        };
+    }
+
+    @Test
+    public void shouldRejectWhenHashWorkersAreBusy() throws IOException, ServletException {
+        new Expectations() {
+            {
+                matcher.matches(request);
+                result = true;
+            }
+        };
+        request.setAsyncSupported(true);
+        filter.setAuthenticationExecutor(command -> {
+            throw new RejectedExecutionException();
+        });
+        filter.doFilter(request, response, chain);
+
+        assertEquals(org.apache.http.HttpStatus.SC_SERVICE_UNAVAILABLE, response.getStatus());
+
+        new Verifications() {
+            {
+                authenticationManager.authenticate((UsernamePasswordAuthenticationToken) any);
+                times = 0;
+                chain.doFilter(request, response);
+                times = 0;
+            }
+        };
+    }
+
+    @Test
+    public void shouldRejectThrottledAddressBeforeAuthenticating() throws IOException, ServletException {
+        new Expectations() {
+            {
+                matcher.matches(request);
+                result = true;
+            }
+        };
+        filter.setLoginThrottle(new LoginThrottle(new LoginRateLimiter(1, 60000L), new LoginRateLimiter(10, 60000L)));
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        request.setContent("{\"username\":\"name\",\"password\":\"pwd\"}".getBytes());
+        filter.doFilter(request, response, chain);
+
+        assertEquals(org.springframework.http.HttpStatus.TOO_MANY_REQUESTS.value(), response.getStatus());
+
+        new Verifications() {
+            {
+                authenticationManager.authenticate((UsernamePasswordAuthenticationToken) any);
+                times = 1;
+            }
+        };
+    }
+
+    @Test
+    public void shouldRejectThrottledUsernameBeforeAuthenticating() throws IOException, ServletException {
+        new Expectations() {
+            {
+                matcher.matches(request);
+                result = true;
+            }
+        };
+        filter.setLoginThrottle(new LoginThrottle(new LoginRateLimiter(10, 60000L), new LoginRateLimiter(1, 60000L)));
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        request.setContent("{\"username\":\"NAME\",\"password\":\"pwd\"}".getBytes());
+        filter.doFilter(request, response, chain);
+
+        assertEquals(org.springframework.http.HttpStatus.TOO_MANY_REQUESTS.value(), response.getStatus());
+
+        new Verifications() {
+            {
+                authenticationManager.authenticate((UsernamePasswordAuthenticationToken) any);
+                times = 1;
+            }
+        };
+    }
+
 }
@@ -0,0 +1,40 @@
+package nl.fortytwo.rest.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import nl.fortytwo.rest.user.Role;
+import nl.fortytwo.rest.user.User;
+
+public class SecurityContextCodecTest {
+
+    @Test
+    public void shouldRoundTrip() {
+        User user = new User("jürgen@42.nl", "hash", Role.ROLE_USER);
+        user.changeRole(Role.ROLE_ADMIN);
+
+        byte[] encoded = SecurityContextCodec.encode(user, 1234L);
+        SecurityContextCodec.State state = SecurityContextCodec.decode(encoded);
+
+        assertEquals(18 + 13, encoded.length);
+        assertEquals("jürgen@42.nl", state.getEmail());
+        assertEquals(Role.ROLE_ADMIN, state.getRole());
+        assertEquals(1L, state.getVersion());
+        assertEquals(1234L, state.getValidatedAt());
+    }
+
+    @Test
+    public void shouldRejectUnknownFormat() {
+        byte[] encoded = SecurityContextCodec.encode(new User("email", Role.ROLE_USER), 0L);
+
+        assertNull(SecurityContextCodec.decode(null));
+        assertNull(SecurityContextCodec.decode(new byte[3]));
+        encoded[1] = 100;
+        assertNull(SecurityContextCodec.decode(encoded));
+        encoded[0] = 1;
+        assertNull(SecurityContextCodec.decode(encoded));
+    }
+
+}
@@ -3,10 +3,12 @@ package nl.fortytwo.rest.security;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.util.Arrays;
 
 import org.apache.http.client.ClientProtocolException;
 import org.junit.Before;
@@ -27,7 +29,7 @@ public class SecurityIntegrationTest extends AbstractHttpIntegrationTest {
 
     @Test
     public void shouldHaveSecurityHeaders() throws ClientProtocolException, IOException {
-        Response resp = perform(new Request("/authentication", HttpMethod.GET));
+        Response resp = perform(new Request("/authentication", HttpMethod.GET).addHeader("Origin", "https://localhost:8443"));
         assertTrue(resp.isOk());
 
         assertTrue(resp.hasHeaderValue("X-Content-Type-Options", "nosniff"));
@@ -48,14 +50,36 @@ public class SecurityIntegrationTest extends AbstractHttpIntegrationTest {
 
     }
 
+    @Test
+    public void shouldAnswerPreflightBeforeSecurity() throws ClientProtocolException, IOException {
+        Response resp = perform(new Request("/users", HttpMethod.OPTIONS).addHeader("Access-Control-Request-Method", "POST"));
+        assertEquals(204, resp.getStatus());
+
+        assertTrue(resp.hasHeaderValue("Access-Control-Allow-Origin", "https://localhost:8443"));
+        assertTrue(resp.hasHeaderValue("Access-Control-Allow-Methods", "GET, OPTIONS, POST, PUT, PATCH, DELETE"));
+        assertNull(resp.getSessionCookie());
+        assertNull(resp.getXsrfToken());
+        assertFalse(resp.hasHeader("X-Frame-Options"));
+    }
+
     @Test
     public void shouldHaveSecureSessionAndXsrfToken() throws ClientProtocolException, IOException {
         Response resp = perform(new Request("/authentication", HttpMethod.GET));
         assertTrue(resp.isOk());
 
-        String session = resp.getCookie("JSESSIONID");
+        //
+        // Anonymous requests do not need a session.
+        //
+        assertNull(resp.getSessionCookie());
         String xsrf = resp.getCookie("XSRF-TOKEN");
 
+        Response auth = perform(new Request(resp, "/authentication", HttpMethod.POST)
+                .addHeader("X-XSRF-TOKEN", resp.getXsrfToken())
+                .setBodyObject(new LoginForm("user@42.nl", "123456")));
+        assertTrue(auth.isOk());
+
+        String session = auth.getSessionCookie();
+
         assertTrue(session.contains("Secure"));
         assertTrue(session.contains("HttpOnly"));
 
@@ -63,6 +87,21 @@ public class SecurityIntegrationTest extends AbstractHttpIntegrationTest {
         assertFalse(xsrf.contains("HttpOnly"));
     }
 
+    @Test
+    public void shouldRejectLoginWithControlCharacters() throws ClientProtocolException, IOException {
+        Response resp = perform(new Request("/authentication", HttpMethod.GET));
+        assertTrue(resp.isOk());
+
+        // The filter fails the read of the login body, and replaces the response of the login filter.
+        Response auth = perform(new Request(resp, "/authentication", HttpMethod.POST)
+                .addHeader("X-XSRF-TOKEN", resp.getXsrfToken())
+                .addHeader("Content-Type", "application/json")
+                .setBodyObject(new LoginForm("user@42.nl", "123\n456")));
+        assertTrue(auth.isBadRequest());
+        assertEquals("{\"error\":\"Request body contains control characters\"}", auth.getBody());
+        assertNull(auth.getSessionCookie());
+    }
+
     @Test
     public void shouldBeUnauthenticated() throws ClientProtocolException, IOException {
         Response resp = perform(new Request("/authentication", HttpMethod.GET));
@@ -80,10 +119,11 @@ public class SecurityIntegrationTest extends AbstractHttpIntegrationTest {
     @Test
     public void shouldAuthenticateAndChangeSession() throws ClientProtocolException, IOException {
         //
-        // First a GET to obtain JSESSIONID and XSRF-TOKEN. 
+        // First a GET to obtain the XSRF-TOKEN, no session is needed for that.
         //
         Response resp = perform(new Request("/authentication", HttpMethod.GET));
         assertTrue(resp.isOk());
+        assertNull(resp.getSessionCookie());
 
         //
         // With the session and token we log in.
@@ -94,9 +134,9 @@ public class SecurityIntegrationTest extends AbstractHttpIntegrationTest {
         assertTrue(auth.isOk());
 
         //
-        // The Session Id should change.
+        // A new session is started.
         //
-        assertFalse(resp.getCookie("JSESSIONID").equals(auth.getCookie("JSESSIONID")));
+        assertNotNull(auth.getSessionCookie());
 
         //
         // Do a GET (on a secured resource) to get the new XSRF-TOKEN.
@@ -114,17 +154,18 @@ public class SecurityIntegrationTest extends AbstractHttpIntegrationTest {
         // Logout
         //
         Response unauth = perform(new Request(auth, "/authentication", HttpMethod.DELETE)
+                .addCookies(get)
                 .addHeader("X-XSRF-TOKEN", get.getXsrfToken()));
         assertTrue(unauth.isOk());
 
         //
-        // Get the new Session and XSRF-TOKEN.
+        // Logged out, with a new XSRF-TOKEN.
         //
-        resp = perform(new Request(unauth, "/authentication", HttpMethod.GET));
+        resp = perform(new Request(unauth, "/authentication", HttpMethod.GET).addCookies(get));
         assertTrue(resp.isOk());
 
-        assertFalse(resp.getCookie("JSESSIONID").equals(auth.getCookie("JSESSIONID")));
-        assertFalse(resp.getCookie("XSRF-TOKEN").equals(auth.getCookie("XSRF-TOKEN")));
+        assertEquals(Role.ROLE_ANONYMOUS, resp.getBodyObject(UserDTO.class).getRole());
+        assertFalse(resp.getCookie("XSRF-TOKEN").equals(get.getCookie("XSRF-TOKEN")));
 
     }
     
@@ -143,6 +184,7 @@ public class SecurityIntegrationTest extends AbstractHttpIntegrationTest {
         assertTrue(get.isOk());
         
         Response newUser = perform(new Request(auth,"/users", HttpMethod.POST)
+                .addCookies(get)
                 .addHeader("X-XSRF-TOKEN", get.getXsrfToken())
                 .addHeader("Content-Type", "application/json")
                 .setBodyObject(new CreateUserDTO("test@test.nl", "somePassword", Role.ROLE_USER)));
@@ -163,12 +205,62 @@ public class SecurityIntegrationTest extends AbstractHttpIntegrationTest {
         assertTrue(get.isOk());
         
         Response newUser = perform(new Request(auth,"/users", HttpMethod.POST)
+                .addCookies(get)
                 .addHeader("X-XSRF-TOKEN", get.getXsrfToken())
                 .addHeader("Content-Type", "application/json")
                 .setBodyObject(new CreateUserDTO("test@test.nl", "sOmEPaSsWroD", Role.ROLE_USER)));
         assertTrue(newUser.isOk());
     }
 
+    @Test
+    public void shouldPaginateUsers() throws ClientProtocolException, IOException {
+        Response resp = perform(new Request("/authentication", HttpMethod.GET));
+        Response auth = perform(new Request(resp, "/authentication", HttpMethod.POST)
+                .addHeader("X-XSRF-TOKEN", resp.getXsrfToken())
+                .setBodyObject(new LoginForm("user@42.nl", "123456")));
+        assertTrue(auth.isOk());
+
+        Response page = perform(new Request(auth, "/users?page=0&size=2", HttpMethod.GET));
+        assertTrue(page.isOk());
+        assertTrue(page.getBody().startsWith("{\"content\":[{\"email\":\"admin@42.nl\""));
+        assertTrue(page.getBody().contains("\"number\":0,\"size\":2,\"first\":true"));
+
+        Response cursor = perform(new Request(auth, "/users?cursor=&size=2", HttpMethod.GET));
+        assertTrue(cursor.isOk());
+        assertTrue(cursor.getBody().contains("\"next\":"));
+
+        Response filtered = perform(new Request(auth, "/users?page=0&role=ROLE_USER&sort=email,desc", HttpMethod.GET));
+        assertTrue(filtered.isOk());
+        assertTrue(filtered.getBody().startsWith("{\"content\":[{\"email\":\"user@42.nl\""));
+        assertTrue(filtered.getBody().contains("\"sort\":[{\"property\":\"email\",\"direction\":\"DESC\"}]"));
+
+        assertTrue(perform(new Request(auth, "/users?page=-1", HttpMethod.GET)).isBadRequest());
+        assertTrue(perform(new Request(auth, "/users?password=123456", HttpMethod.GET)).isBadRequest());
+    }
+
+    @Test
+    public void shouldAnswerNotModifiedForUnchangedUsers() throws ClientProtocolException, IOException {
+        Response resp = perform(new Request("/authentication", HttpMethod.GET));
+        Response auth = perform(new Request(resp, "/authentication", HttpMethod.POST)
+                .addHeader("X-XSRF-TOKEN", resp.getXsrfToken())
+                .setBodyObject(new LoginForm("user@42.nl", "123456")));
+        assertTrue(auth.isOk());
+
+        Response users = perform(new Request(auth, "/users", HttpMethod.GET));
+        assertTrue(users.isOk());
+        assertTrue(users.hasHeader("ETag"));
+        assertTrue(users.hasHeaderValue("Cache-Control", "private, no-cache"));
+
+        Response unchanged = perform(new Request(auth, "/users", HttpMethod.GET).addHeader("If-None-Match", users.getHeader("ETag")));
+        assertEquals(304, unchanged.getStatus());
+        assertNull(unchanged.getBody());
+
+        Response user = perform(new Request(auth, "/users/user@42.nl", HttpMethod.GET));
+        assertTrue(user.isOk());
+        Response unchangedUser = perform(new Request(auth, "/users/user@42.nl", HttpMethod.GET).addHeader("If-None-Match", user.getHeader("ETag")));
+        assertEquals(304, unchangedUser.getStatus());
+    }
+
     @Test
     public void shouldRejectCreateUserWithWeakPassword() throws ClientProtocolException, IOException {
         Response resp = perform(new Request("/authentication", HttpMethod.GET));
@@ -183,6 +275,7 @@ public class SecurityIntegrationTest extends AbstractHttpIntegrationTest {
         assertTrue(get.isOk());
 
         Response newUser = perform(new Request(auth, "/users", HttpMethod.POST)
+                .addCookies(get)
                 .addHeader("X-XSRF-TOKEN", get.getXsrfToken())
                 .addHeader("Content-Type", "application/json")
                 .setBodyObject(new CreateUserDTO("test2@test.nl", "12345678", Role.ROLE_USER)));
@@ -203,10 +296,35 @@ public class SecurityIntegrationTest extends AbstractHttpIntegrationTest {
         assertTrue(get.isOk());
 
         Response newUser = perform(new Request(auth, "/users", HttpMethod.POST)
+                .addCookies(get)
                 .addHeader("X-XSRF-TOKEN", get.getXsrfToken())
                 .addHeader("Content-Type", "application/json")
                 .setBodyObject(new CreateUserDTO("test@42.nl", "\n", Role.ROLE_USER)));
         assertTrue(newUser.isBadRequest());
     }
 
+    @Test
+    public void shouldCreateUsersInBatch() throws ClientProtocolException, IOException {
+        Response resp = perform(new Request("/authentication", HttpMethod.GET));
+        assertTrue(resp.isOk());
+
+        Response auth = perform(new Request(resp, "/authentication", HttpMethod.POST)
+                .addHeader("X-XSRF-TOKEN", resp.getXsrfToken())
+                .setBodyObject(new LoginForm("admin@42.nl", "123456")));
+        assertTrue(auth.isOk());
+
+        Response get = perform(new Request(auth, "/users", HttpMethod.GET));
+        assertTrue(get.isOk());
+
+        Response batch = perform(new Request(auth, "/users/batch", HttpMethod.POST)
+                .addCookies(get)
+                .addHeader("X-XSRF-TOKEN", get.getXsrfToken())
+                .addHeader("Content-Type", "application/json")
+                .setBodyObject(Arrays.asList(new CreateUserDTO("batch@42.nl", "correct horse", Role.ROLE_USER),
+                        new CreateUserDTO("weak@42.nl", "1234567", Role.ROLE_USER))));
+        assertTrue(batch.isOk());
+        assertEquals("[{\"user\":{\"email\":\"batch@42.nl\",\"role\":\"ROLE_USER\"},\"errors\":[]},"
+                + "{\"errors\":[\"Password is too short\"]}]", batch.getBody());
+    }
+
 }
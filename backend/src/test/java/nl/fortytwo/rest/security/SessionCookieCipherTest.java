@@ -0,0 +1,60 @@
+package nl.fortytwo.rest.security;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.junit.Test;
+
+public class SessionCookieCipherTest {
+
+    private static final String OLD_KEY = Base64.getEncoder().encodeToString(new byte[16]);
+
+    private static final String NEW_KEY = Base64.getEncoder().encodeToString("0123456789abcdef".getBytes(StandardCharsets.US_ASCII));
+
+    private final byte[] plaintext = "user@42.nl".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void shouldOpenSealedValue() {
+        SessionCookieCipher cipher = SessionCookieCipher.withRandomKey();
+
+        String sealed = cipher.seal(plaintext);
+
+        assertArrayEquals(plaintext, cipher.open(sealed));
+        assertNotEquals("Every value gets a fresh IV", sealed, cipher.seal(plaintext));
+    }
+
+    @Test
+    public void shouldRejectTamperedValue() {
+        SessionCookieCipher cipher = SessionCookieCipher.withRandomKey();
+        byte[] sealed = Base64.getUrlDecoder().decode(cipher.seal(plaintext));
+        sealed[sealed.length - 1] ^= 1;
+
+        assertNull(cipher.open(Base64.getUrlEncoder().withoutPadding().encodeToString(sealed)));
+        assertNull(cipher.open("not*base64"));
+        assertNull(cipher.open("AAAA"));
+    }
+
+    @Test
+    public void shouldOpenValuesOfRotatedKey() {
+        SessionCookieCipher before = SessionCookieCipher.fromSpecification("1:" + OLD_KEY);
+        SessionCookieCipher after = SessionCookieCipher.fromSpecification("2:" + NEW_KEY + ", 1:" + OLD_KEY);
+        SessionCookieCipher retired = SessionCookieCipher.fromSpecification("2:" + NEW_KEY);
+
+        String sealed = before.seal(plaintext);
+
+        assertArrayEquals(plaintext, after.open(sealed));
+        assertArrayEquals(plaintext, retired.open(after.seal(plaintext)));
+        assertNull(retired.open(sealed));
+        assertNull(before.open(after.seal(plaintext)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectKeyOfInvalidLength() {
+        SessionCookieCipher.fromSpecification("1:" + Base64.getEncoder().encodeToString(new byte[10]));
+    }
+
+}
@@ -0,0 +1,68 @@
+package nl.fortytwo.rest.security;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextImpl;
+
+import nl.fortytwo.rest.BenchmarkRunner;
+import nl.fortytwo.rest.BenchmarkRunner.Result;
+import nl.fortytwo.rest.security.SpringUserDetailsService.UserDetailsAdapter;
+import nl.fortytwo.rest.user.Role;
+import nl.fortytwo.rest.user.User;
+
+/**
+ * Compares the replicated session state with Java serialization of the SecurityContext (what an HttpSession replicates)
+ * to the SecurityContextCodec.
+ */
+public class SessionSerializationBenchmark {
+
+    private static final long ITERATIONS = 200000L;
+
+    private final User user = new User("user@42.nl", "$2a$10$tsO5Nzzfg7C9C6w2uwgxb.Yx0CWWyovWmcDb/.cBjwDuBpgFoV1Qm", Role.ROLE_USER);
+
+    private final SecurityContextImpl context = new SecurityContextImpl();
+
+    {
+        UserDetailsAdapter principal = new UserDetailsAdapter(user);
+        context.setAuthentication(new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+    }
+
+    @Test
+    public void compare() throws Exception {
+        byte[] serialized = serialize(context);
+        byte[] encoded = SecurityContextCodec.encode(user, 0L);
+        System.out.println(String.format("%-50s %12d bytes", "Java serialization", serialized.length));
+        System.out.println(String.format("%-50s %12d bytes", "SecurityContextCodec", encoded.length));
+
+        BenchmarkRunner.measure("Java serialization write", ITERATIONS, () -> serialize(context));
+        Result javaRead = BenchmarkRunner.measure("Java serialization read", ITERATIONS, () -> deserialize(serialized));
+        BenchmarkRunner.measure("SecurityContextCodec.encode", ITERATIONS, () -> SecurityContextCodec.encode(user, 0L));
+        Result codecRead = BenchmarkRunner.measure("SecurityContextCodec.decode", ITERATIONS, () -> SecurityContextCodec.decode(encoded));
+
+        assertTrue(encoded.length * 10 < serialized.length);
+        assertTrue(codecRead.getNanosPerOperation() * 10 < javaRead.getNanosPerOperation());
+    }
+
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+}
@@ -2,6 +2,7 @@ package nl.fortytwo.rest.security;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Optional;
@@ -15,9 +16,11 @@ import mockit.Expectations;
 import mockit.Injectable;
 import mockit.Mocked;
 import mockit.Tested;
+import nl.fortytwo.rest.security.SpringUserDetailsService.UserDetailsAdapter;
 import nl.fortytwo.rest.user.PrincipalService;
 import nl.fortytwo.rest.user.Role;
 import nl.fortytwo.rest.user.User;
+import nl.fortytwo.rest.user.dto.UserDTO;
 
 public class SpringUserDetailsServiceTest {
 
@@ -64,4 +67,26 @@ public class SpringUserDetailsServiceTest {
 
     }
 
+    @Test
+    public void shouldRefreshSnapshotOnlyWhenUserChanges() {
+        User user = new User("email", "123", Role.ROLE_USER);
+        new Expectations() {
+            {
+                principalService.findByEmail("email");
+                result = Optional.of(user);
+            }
+        };
+
+        UserDetailsAdapter result = (UserDetailsAdapter) srv.loadUserByUsername("email");
+
+        assertSame(user, result.getUser());
+        UserDTO snapshot = result.getSnapshot();
+        assertEquals("email", snapshot.getEmail());
+        assertSame(snapshot, result.getSnapshot());
+
+        user.changeRole(Role.ROLE_ADMIN);
+
+        assertEquals(Role.ROLE_ADMIN, result.getSnapshot().getRole());
+    }
+
 }
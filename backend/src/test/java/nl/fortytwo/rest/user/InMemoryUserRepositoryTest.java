@@ -0,0 +1,160 @@
+package nl.fortytwo.rest.user;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+
+import nl.fortytwo.rest.util.Page;
+
+public class InMemoryUserRepositoryTest {
+
+    private InMemoryUserRepository repository;
+
+    @Before
+    public void init() {
+        // Starts with admin@42.nl, random@42.nl and user@42.nl.
+        repository = new InMemoryUserRepository(NoOpPasswordEncoder.getInstance());
+        for (int i = 0; i < 7; i++) {
+            repository.create(new User("u" + i + "@42.nl", Role.ROLE_USER));
+        }
+    }
+
+    @Test
+    public void shouldFindNumberedPages() {
+        Page<User> page = repository.findPage(0, 4);
+        assertEquals(emails("admin@42.nl", "random@42.nl", "u0@42.nl", "u1@42.nl"), emails(page));
+        assertTrue(page.isFirst());
+        assertFalse(page.isLast());
+        assertEquals(Long.valueOf(10), page.getTotalElements());
+        assertEquals(Integer.valueOf(3), page.getTotalPages());
+
+        page = repository.findPage(2, 4);
+        assertEquals(emails("u6@42.nl", "user@42.nl"), emails(page));
+        assertTrue(page.isLast());
+
+        assertTrue(repository.findPage(5, 4).getContent().isEmpty());
+    }
+
+    @Test
+    public void shouldFollowCursorWhileCreating() {
+        Page<User> page = repository.findAfter("", 4);
+        assertTrue(page.isFirst());
+        assertEquals(emails("admin@42.nl", "random@42.nl", "u0@42.nl", "u1@42.nl"), emails(page));
+
+        // Before the cursor: neither skipped nor repeated.
+        repository.create(new User("a@42.nl", Role.ROLE_USER));
+        repository.create(new User("u1x@42.nl", Role.ROLE_USER));
+
+        page = repository.findAfter(Page.decodeCursor(page.getNext()), 4);
+        assertFalse(page.isFirst());
+        assertEquals(emails("u1x@42.nl", "u2@42.nl", "u3@42.nl", "u4@42.nl"), emails(page));
+        assertFalse(page.isLast());
+
+        page = repository.findAfter(Page.decodeCursor(page.getNext()), 4);
+        assertEquals(emails("u5@42.nl", "u6@42.nl", "user@42.nl"), emails(page));
+        assertTrue(page.isLast());
+        assertNull(page.getNext());
+    }
+
+    @Test
+    public void shouldReplaceExistingUser() {
+        User replacement = new User("u3@42.nl", Role.ROLE_ADMIN);
+        repository.create(replacement);
+
+        assertEquals(Long.valueOf(10), repository.findPage(0, 100).getTotalElements());
+        assertEquals(replacement, repository.findAfter("u2@42.nl", 1).getContent().get(0));
+    }
+
+    @Test
+    public void shouldMergeBatchIntoSortedUsers() {
+        User replacement = new User("u3@42.nl", Role.ROLE_ADMIN);
+        repository.createAll(Arrays.asList(new User("zz@42.nl", Role.ROLE_USER), new User("a@42.nl", Role.ROLE_USER),
+                new User("u3@42.nl", Role.ROLE_USER), replacement, new User("u3x@42.nl", Role.ROLE_USER)));
+
+        assertEquals(emails("a@42.nl", "admin@42.nl", "random@42.nl", "u0@42.nl", "u1@42.nl", "u2@42.nl", "u3@42.nl",
+                "u3x@42.nl", "u4@42.nl", "u5@42.nl", "u6@42.nl", "user@42.nl", "zz@42.nl"), emails(repository.findPage(0, 100)));
+        assertEquals(replacement, repository.findByEmail("u3@42.nl").get());
+        assertEquals(emails("admin@42.nl", "u3@42.nl"), emails(repository.findByRole(Role.ROLE_ADMIN)));
+        assertEquals(13, emails(repository.findByDomain("42.nl")).size());
+        // One version per user of the batch, in the order given.
+        assertEquals(repository.getVersion() - 1, replacement.getVersion());
+    }
+
+    @Test
+    public void shouldIndexRoles() {
+        User user = repository.findByEmail("u4@42.nl").get();
+        assertEquals(emails("admin@42.nl"), emails(repository.findByRole(Role.ROLE_ADMIN)));
+
+        repository.changeRole(user, Role.ROLE_ADMIN);
+
+        assertEquals(emails("admin@42.nl", "u4@42.nl"), emails(repository.findByRole(Role.ROLE_ADMIN)));
+        assertFalse(emails(repository.findByRole(Role.ROLE_USER)).contains("u4@42.nl"));
+        assertEquals(repository.getVersion(), user.getVersion());
+    }
+
+    @Test
+    public void shouldVersionModifications() {
+        long version = repository.getVersion();
+        User replacement = new User("u3@42.nl", Role.ROLE_USER);
+
+        repository.create(replacement);
+
+        assertEquals(version + 1, repository.getVersion());
+        assertEquals(repository.getVersion(), replacement.getVersion());
+
+        repository.markLoginFailed(replacement);
+
+        assertEquals(version + 1, repository.getVersion());
+    }
+
+    @Test
+    public void shouldIndexDomains() {
+        repository.create(new User("someone@Example.com", Role.ROLE_USER));
+
+        assertEquals(emails("someone@Example.com"), emails(repository.findByDomain("example.COM")));
+        assertEquals(10, emails(repository.findByDomain("42.nl")).size());
+        assertTrue(emails(repository.findByDomain("unknown.org")).isEmpty());
+    }
+
+    @Test
+    public void shouldIndexLockedUsers() {
+        User user = repository.findByEmail("u2@42.nl").get();
+        for (int i = 0; i < User.MAX_FAILED_LOGIN_ATTEMPTS_BEFORE_LOCK; i++) {
+            repository.markLoginFailed(user);
+        }
+
+        assertEquals(emails("u2@42.nl"), emails(repository.findLocked()));
+
+        repository.markLoginSuccess(user);
+
+        assertTrue(emails(repository.findLocked()).isEmpty());
+    }
+
+    private static List<String> emails(String... emails) {
+        List<String> result = new ArrayList<>();
+        for (String email : emails) {
+            result.add(email);
+        }
+        return result;
+    }
+
+    private static List<String> emails(Page<User> page) {
+        return emails(page.getContent());
+    }
+
+    private static List<String> emails(Iterable<User> users) {
+        List<String> result = new ArrayList<>();
+        users.forEach(user -> result.add(user.getEmail()));
+        return result;
+    }
+
+}
@@ -0,0 +1,189 @@
+package nl.fortytwo.rest.user;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.h2.tools.TriggerAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+
+import nl.fortytwo.rest.util.Page;
+
+public class JdbcUserRepositoryTest {
+
+    private DriverManagerDataSource dataSource;
+
+    private JdbcUserRepository repository;
+
+    @Before
+    public void init() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        // Starts with admin@42.nl, random@42.nl and user@42.nl, read 2 at a time.
+        repository = open();
+        for (int i = 0; i < 7; i++) {
+            repository.create(new User("u" + i + "@42.nl", Role.ROLE_USER));
+        }
+    }
+
+    @Test
+    public void shouldKeepUsersAndEpochWhenReopened() {
+        JdbcUserRepository reopened = open();
+
+        assertEquals(repository.getEpoch(), reopened.getEpoch());
+        assertEquals(repository.getVersion(), reopened.getVersion());
+        assertEquals(10, emails(reopened.findAll()).size());
+    }
+
+    @Test
+    public void shouldReadAllUsersInChunks() {
+        assertEquals(emails("admin@42.nl", "random@42.nl", "u0@42.nl", "u1@42.nl", "u2@42.nl", "u3@42.nl", "u4@42.nl", "u5@42.nl",
+                "u6@42.nl", "user@42.nl"), emails(repository.findAll()));
+        assertEquals(emails("u5@42.nl", "u6@42.nl", "user@42.nl"), emails(repository.findAllAfter("u4@42.nl")));
+        assertTrue(emails(repository.findAllAfter("user@42.nl")).isEmpty());
+    }
+
+    @Test
+    public void shouldFindPages() {
+        Page<User> page = repository.findPage(2, 4);
+        assertEquals(emails("u6@42.nl", "user@42.nl"), emails(page));
+        assertEquals(Long.valueOf(10), page.getTotalElements());
+        assertTrue(page.isLast());
+
+        page = repository.findAfter("", 4);
+        assertEquals(emails("admin@42.nl", "random@42.nl", "u0@42.nl", "u1@42.nl"), emails(page));
+        page = repository.findAfter(Page.decodeCursor(page.getNext()), 6);
+        assertEquals(emails("u2@42.nl", "u3@42.nl", "u4@42.nl", "u5@42.nl", "u6@42.nl", "user@42.nl"), emails(page));
+        assertNull(page.getNext());
+    }
+
+    @Test
+    public void shouldVersionModifications() {
+        long version = repository.getVersion();
+        User replacement = repository.create(new User("u3@42.nl", Role.ROLE_USER));
+
+        assertTrue(repository.getVersion() > version);
+        assertEquals(repository.getVersion(), replacement.getVersion());
+
+        repository.changeRole(replacement, Role.ROLE_ADMIN);
+
+        assertTrue(replacement.getVersion() > version);
+        assertEquals(repository.getVersion(), repository.findByEmail("u3@42.nl").get().getVersion());
+        assertEquals(emails("admin@42.nl", "u3@42.nl"), emails(repository.findByRole(Role.ROLE_ADMIN)));
+
+        version = repository.getVersion();
+        repository.markLoginFailed(replacement);
+
+        assertEquals(version, repository.getVersion());
+    }
+
+    @Test
+    public void shouldUpdateAndInsertInBatch() {
+        repository.createAll(Arrays.asList(new User("u1@42.nl", "hash", Role.ROLE_ADMIN), new User("new@Example.com", "hash", Role.ROLE_USER)));
+
+        assertEquals(Role.ROLE_ADMIN, repository.findByEmail("u1@42.nl").get().getRole());
+        assertEquals(emails("new@Example.com"), emails(repository.findByDomain("example.com")));
+        assertEquals(11, emails(repository.findAll()).size());
+    }
+
+    @Test
+    public void shouldChangePasswordOnlyIfUnchanged() {
+        User user = repository.findByEmail("u1@42.nl").get();
+
+        assertTrue(repository.changePassword(user, null, "first"));
+        assertFalse(repository.changePassword(user, "other", "second"));
+        assertEquals("first", repository.findByEmail("u1@42.nl").get().getPassword());
+    }
+
+    @Test
+    public void shouldCountFailedLoginsOfConcurrentReaders() {
+        User first = repository.findByEmail("u2@42.nl").get();
+        User second = repository.findByEmail("u2@42.nl").get();
+
+        repository.markLoginFailed(first);
+        repository.markLoginFailed(second);
+
+        assertEquals(2, repository.findByEmail("u2@42.nl").get().getFailedAttempts());
+
+        for (int i = 2; i < User.MAX_FAILED_LOGIN_ATTEMPTS_BEFORE_LOCK; i++) {
+            repository.markLoginFailed(second);
+        }
+        assertEquals(emails("u2@42.nl"), emails(repository.findLocked()));
+
+        repository.markLoginSuccess(second);
+        assertTrue(emails(repository.findLocked()).isEmpty());
+    }
+
+    @Test(expected = DuplicateKeyException.class)
+    public void shouldKeepASingleEpoch() {
+        // A node that lost the race to insert the epoch reads the one of the winner.
+        new JdbcTemplate(dataSource).update("INSERT INTO user_store (id, epoch) VALUES (1, 0)");
+    }
+
+    @Test
+    public void shouldUpdateUsersInsertedConcurrentlyDuringBatch() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TRIGGER concurrent_insert BEFORE INSERT ON users CALL \"" + ConcurrentInsert.class.getName() + "\"");
+        ConcurrentInsert.pending.set(true);
+
+        repository.createAll(Arrays.asList(new User("u0@42.nl", Role.ROLE_ADMIN), new User("new@42.nl", Role.ROLE_ADMIN),
+                new User("other@42.nl", Role.ROLE_ADMIN)));
+
+        assertFalse(ConcurrentInsert.pending.get());
+        assertEquals(Role.ROLE_ADMIN, repository.findByEmail("new@42.nl").get().getRole());
+        assertEquals(Role.ROLE_ADMIN, repository.findByEmail("other@42.nl").get().getRole());
+        assertEquals(12, emails(repository.findAll()).size());
+    }
+
+    /**
+     * Inserts new@42.nl just before the first insert of the batch, as another node would.
+     */
+    public static class ConcurrentInsert extends TriggerAdapter {
+
+        private static final AtomicBoolean pending = new AtomicBoolean();
+
+        @Override
+        public void fire(Connection connection, ResultSet oldRow, ResultSet newRow) throws SQLException {
+            if (pending.compareAndSet(true, false)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("INSERT INTO users (email, role, domain, login_state, version) "
+                            + "VALUES ('new@42.nl', 'ROLE_USER', '42.nl', 0, 0)");
+                }
+            }
+        }
+    }
+
+    private JdbcUserRepository open() {
+        return new JdbcUserRepository(dataSource, 2, NoOpPasswordEncoder.getInstance());
+    }
+
+    private static List<String> emails(String... emails) {
+        return Arrays.asList(emails);
+    }
+
+    private static List<String> emails(Page<User> page) {
+        return emails(page.getContent());
+    }
+
+    private static List<String> emails(Iterable<User> users) {
+        List<String> result = new ArrayList<>();
+        users.forEach(user -> result.add(user.getEmail()));
+        return result;
+    }
+
+}
@@ -0,0 +1,113 @@
+package nl.fortytwo.rest.user;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+
+import com.google.common.collect.Iterables;
+
+public class JournaledUserRepositoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+
+    @Before
+    public void init() throws IOException {
+        directory = folder.newFolder("users").toPath();
+    }
+
+    @Test
+    public void shouldRecoverChangesAfterCrash() {
+        JournaledUserRepository repository = open(100);
+        User user = repository.create(new User("new@42.nl", "hash", Role.ROLE_USER));
+        repository.changeRole(user, Role.ROLE_ADMIN);
+        assertTrue(repository.changePassword(user, "hash", "rehashed"));
+        for (int i = 0; i < User.MAX_FAILED_LOGIN_ATTEMPTS_BEFORE_LOCK; i++) {
+            repository.markLoginFailed(repository.findByEmail("admin@42.nl").get());
+        }
+
+        // Not closed, so everything is read from the journal.
+        JournaledUserRepository recovered = open(100);
+
+        User found = recovered.findByEmail("new@42.nl").get();
+        assertEquals(Role.ROLE_ADMIN, found.getRole());
+        assertEquals("rehashed", found.getPassword());
+        assertEquals(4, Iterables.size(recovered.findAll()));
+        assertEquals(2, Iterables.size(recovered.findByRole(Role.ROLE_ADMIN)));
+        assertEquals("admin@42.nl", Iterables.getOnlyElement(recovered.findLocked()).getEmail());
+
+        recovered.markLoginSuccess(recovered.findByEmail("admin@42.nl").get());
+        assertFalse(open(100).findByEmail("admin@42.nl").get().isLocked());
+    }
+
+    @Test
+    public void shouldLoadSnapshotAndReplayTail() throws IOException {
+        JournaledUserRepository repository = open(5);
+        for (int i = 0; i < 20; i++) {
+            repository.create(new User("u" + i + "@42.nl", "hash", Role.ROLE_USER));
+        }
+        repository.close();
+
+        assertEquals(1, files("snapshot-*.dat").size());
+        assertTrue(files("journal-*.log").size() <= 2);
+
+        repository = open(1000);
+        assertEquals(23, Iterables.size(repository.findAll()));
+        // The snapshot is written in no particular order and merged into the sorted users in one batch.
+        List<String> emails = new ArrayList<>();
+        repository.findPage(0, 100).getContent().forEach(user -> emails.add(user.getEmail()));
+        List<String> sorted = new ArrayList<>(emails);
+        sorted.sort(null);
+        assertEquals(23, emails.size());
+        assertEquals(sorted, emails);
+        repository.changeRole(repository.findByEmail("u7@42.nl").get(), Role.ROLE_ADMIN);
+
+        repository = open(1000);
+        assertEquals(23, Iterables.size(repository.findAll()));
+        assertEquals(Role.ROLE_ADMIN, repository.findByEmail("u7@42.nl").get().getRole());
+    }
+
+    @Test
+    public void shouldTruncateTornRecord() throws IOException {
+        open(100).create(new User("new@42.nl", "hash", Role.ROLE_USER));
+        Path segment = Iterables.getLast(files("journal-*.log"));
+        long size = Files.size(segment);
+        // A record of which only the first part reached the disk.
+        Files.write(segment, new byte[] { 0, 0, 0, 40, 1, 2, 3 }, StandardOpenOption.APPEND);
+
+        JournaledUserRepository recovered = open(100);
+
+        assertTrue(recovered.findByEmail("new@42.nl").isPresent());
+        assertEquals(size, Files.size(segment));
+    }
+
+    private JournaledUserRepository open(int snapshotRecords) {
+        return new JournaledUserRepository(directory, snapshotRecords, NoOpPasswordEncoder.getInstance());
+    }
+
+    private List<Path> files(String glob) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        return files;
+    }
+
+}
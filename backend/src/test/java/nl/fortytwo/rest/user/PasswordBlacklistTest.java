@@ -0,0 +1,97 @@
+package nl.fortytwo.rest.user;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PasswordBlacklistTest {
+
+    private static final int PASSWORDS = 20000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path index;
+
+    @Before
+    public void init() throws IOException {
+        index = folder.getRoot().toPath().resolve("blacklist.idx");
+        List<String> passwords = new ArrayList<>();
+        for (int i = 0; i < PASSWORDS; i++) {
+            passwords.add("breached" + i);
+        }
+        // Duplicates are counted once.
+        passwords.add("breached0");
+        passwords.add("wachtwoord€");
+        build(passwords);
+    }
+
+    @Test
+    public void shouldBlacklistTheMostUsedPasswordsByDefault() throws IOException {
+        PasswordBlacklist blacklist = new PasswordBlacklist();
+
+        assertTrue(blacklist.isBlacklisted("password"));
+        assertTrue(blacklist.isBlacklisted("123456"));
+        assertFalse(blacklist.isBlacklisted("correct horse battery staple"));
+    }
+
+    @Test
+    public void shouldFindEveryIndexedPasswordAndFewOthers() throws IOException {
+        PasswordBlacklist blacklist = new PasswordBlacklist(index, 0);
+
+        for (int i = 0; i < PASSWORDS; i++) {
+            assertTrue(blacklist.isBlacklisted("breached" + i));
+        }
+        assertTrue(blacklist.isBlacklisted("wachtwoord€"));
+        assertFalse(blacklist.isBlacklisted("wachtwoord"));
+        assertFalse(blacklist.isBlacklisted(""));
+        for (int i = PASSWORDS; i < 2 * PASSWORDS; i++) {
+            assertFalse(blacklist.isBlacklisted("breached" + i));
+        }
+        assertEquals(PASSWORDS + 1, PasswordBlacklistIndex.open(index).getEntries());
+    }
+
+    @Test
+    public void shouldReloadAReplacedIndex() throws IOException {
+        PasswordBlacklist blacklist = new PasswordBlacklist(index, 0);
+        assertFalse(blacklist.reloadIfReplaced());
+
+        build(Arrays.asList("replaced"));
+
+        assertTrue(blacklist.reloadIfReplaced());
+        assertTrue(blacklist.isBlacklisted("replaced"));
+        assertFalse(blacklist.isBlacklisted("breached0"));
+    }
+
+    @Test
+    public void shouldKeepTheCurrentIndexWhenTheNewOneIsIncomplete() throws IOException {
+        PasswordBlacklist blacklist = new PasswordBlacklist(index, 0);
+        byte[] bytes = Files.readAllBytes(index);
+
+        Files.delete(index);
+        Files.write(index, Arrays.copyOf(bytes, bytes.length / 2));
+
+        assertFalse(blacklist.reloadIfReplaced());
+        assertTrue(blacklist.isBlacklisted("breached0"));
+    }
+
+    private void build(List<String> passwords) throws IOException {
+        Path source = folder.newFile().toPath();
+        Files.write(source, passwords, StandardCharsets.UTF_8);
+        PasswordBlacklist.buildIndex(source, index);
+    }
+
+}
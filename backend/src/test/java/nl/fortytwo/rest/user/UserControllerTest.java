@@ -0,0 +1,156 @@
+package nl.fortytwo.rest.user;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Optional;
+
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Tested;
+import mockit.Verifications;
+import nl.fortytwo.rest.user.dto.UserDTO;
+import nl.fortytwo.rest.util.JsonCodec;
+import nl.fortytwo.rest.util.JsonCodecHttpMessageConverter;
+import nl.fortytwo.rest.util.ETags;
+import nl.fortytwo.rest.util.Page;
+
+public class UserControllerTest {
+
+    private static final int USERS = 100000;
+
+    @Injectable
+    private UserService userService;
+
+    @Tested
+    private UserController controller;
+
+    @Test
+    public void shouldStreamUsers() throws IOException, NoSuchMethodException {
+        // Users are generated while iterating, so only the elements being written are ever on the heap.
+        Iterable<User> users = () -> new Iterator<User>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < USERS;
+            }
+
+            @Override
+            public User next() {
+                return new User("user" + next++ + "@42.nl", Role.ROLE_USER);
+            }
+        };
+        new Expectations() {
+            {
+                userService.find((UserQuery) any);
+                result = users;
+            }
+        };
+        Type type = UserController.class.getMethod("get", MultiValueMap.class, ServletWebRequest.class).getGenericReturnType();
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+
+        new JsonCodecHttpMessageConverter(new JsonCodec()).write(controller.get(new LinkedMultiValueMap<>(), request()), type, MediaType.APPLICATION_JSON, output);
+
+        String json = output.getBodyAsString(StandardCharsets.UTF_8);
+        assertTrue(json.startsWith("[{\"email\":\"user0@42.nl\",\"role\":\"ROLE_USER\"},"));
+        assertEquals(USERS, json.split("\\},\\{").length);
+        assertEquals("{\"email\":\"user99999@42.nl\",\"role\":\"ROLE_USER\"}]", json.substring(json.lastIndexOf('{')));
+    }
+
+    @Test
+    public void shouldAnswerNotModifiedBeforeReadingUsers() {
+        new Expectations() {
+            {
+                userService.getETag();
+                result = ETags.of(1L, 42L);
+            }
+        };
+        ServletWebRequest request = request(ETags.of(1L, 42L));
+
+        assertNull(controller.findPage(0, 10, new LinkedMultiValueMap<>(), request));
+
+        assertEquals(304, request.getResponse().getStatus());
+        assertEquals(ETags.CACHE_CONTROL, request.getResponse().getHeader("Cache-Control"));
+        new Verifications() {
+            {
+                userService.findPage((UserQuery) any, anyInt, anyInt);
+                times = 0;
+            }
+        };
+    }
+
+    @Test
+    public void shouldAnswerModifiedUser() {
+        User user = new User("user@42.nl", Role.ROLE_USER);
+        new Expectations() {
+            {
+                userService.findByEmail("user@42.nl");
+                result = Optional.of(user);
+                userService.getETag(user);
+                result = ETags.of(1L, 43L);
+            }
+        };
+        ServletWebRequest request = request(ETags.of(1L, 42L));
+
+        assertEquals("user@42.nl", controller.findById("user@42.nl", request).getEmail());
+
+        assertEquals(200, request.getResponse().getStatus());
+        assertEquals(ETags.of(1L, 43L), request.getResponse().getHeader("ETag"));
+    }
+
+    @Test
+    public void shouldLimitPageSize() {
+        new Expectations() {
+            {
+                userService.findPage((UserQuery) any, 1, UserController.MAX_PAGE_SIZE);
+                result = Page.numbered(Collections.emptyList(), 1, UserController.MAX_PAGE_SIZE, 0);
+            }
+        };
+
+        assertEquals(UserController.MAX_PAGE_SIZE, controller.findPage(1, 1000, new LinkedMultiValueMap<>(), request()).getSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNegativePage() {
+        controller.findPage(-1, 10, new LinkedMultiValueMap<>(), request());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownFilter() {
+        MultiValueMap<String, String> parameters = new LinkedMultiValueMap<>();
+        parameters.add("password", "123456");
+        controller.findPage(0, 10, parameters, request());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptyPage() {
+        controller.findAfter("", 0, new LinkedMultiValueMap<>(), request());
+    }
+
+    private static ServletWebRequest request() {
+        return new ServletWebRequest(new MockHttpServletRequest("GET", "/users"), new MockHttpServletResponse());
+    }
+
+    private static ServletWebRequest request(String ifNoneMatch) {
+        ServletWebRequest request = request();
+        ((MockHttpServletRequest) request.getRequest()).addHeader("If-None-Match", ifNoneMatch);
+        return request;
+    }
+
+}
@@ -0,0 +1,34 @@
+package nl.fortytwo.rest.user;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import nl.fortytwo.rest.BenchmarkRunner;
+import nl.fortytwo.rest.BenchmarkRunner.Result;
+
+public class UserLockBenchmark {
+
+    private static final long ITERATIONS = 5000000L;
+
+    private final User user = new User("spam@42.nl", Role.ROLE_USER);
+
+    @Test
+    public void isLocked() throws Exception {
+        Result result = BenchmarkRunner.measure("User.isLocked (1 thread)", ITERATIONS, user::isLocked);
+        assertTrue(result.getBytesPerOperation() < 1.0);
+    }
+
+    @Test
+    public void isLockedContended() throws Exception {
+        Result result = BenchmarkRunner.measure("User.isLocked (8 threads)", 8, ITERATIONS, user::isLocked);
+        assertTrue(result.getBytesPerOperation() < 1.0);
+    }
+
+    @Test
+    public void markLoginFailedContended() throws Exception {
+        Result result = BenchmarkRunner.measure("User.markLoginFailed (8 threads)", 8, ITERATIONS, user::markLoginFailed);
+        assertTrue(result.getBytesPerOperation() < 1.0);
+    }
+
+}
@@ -0,0 +1,137 @@
+package nl.fortytwo.rest.user;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import mockit.Expectations;
+import mockit.Verifications;
+import nl.fortytwo.rest.util.Page;
+
+public class UserQueryParserTest {
+
+    private UserQueryParser parser;
+
+    private InMemoryUserRepository repository;
+
+    @Before
+    public void init() {
+        parser = new UserQueryParser();
+        // Starts with admin@42.nl, random@42.nl and user@42.nl.
+        repository = new InMemoryUserRepository(NoOpPasswordEncoder.getInstance());
+        for (int i = 0; i < 7; i++) {
+            repository.create(new User("u" + i + "@42.nl", Role.ROLE_USER));
+        }
+        repository.create(new User("boss@example.com", Role.ROLE_ADMIN));
+    }
+
+    @Test
+    public void shouldCacheByNormalizedQuery() {
+        UserQuery query = parser.parse(parameters("role", "ROLE_ADMIN", "role", "ROLE_USER", "sort", "role,desc", "page", "1"));
+
+        assertSame(query, parser.parse(parameters("Sort", " role,DESC", "ROLE", "role_user", "role", "role_admin")));
+        assertEquals(1, parser.size());
+        assertEquals("role=role_admin&role=role_user&sort=role,desc", query.toString());
+    }
+
+    @Test
+    public void shouldRouteToIndex() {
+        new Expectations(repository) {
+        };
+
+        List<String> emails = emails(parser.parse(parameters("role", "ROLE_ADMIN", "email", "b")).find(repository));
+
+        assertEquals(Arrays.asList("boss@example.com"), emails);
+        new Verifications() {
+            {
+                repository.findByRoleAfter(Role.ROLE_ADMIN, "");
+                repository.findAllAfter(anyString);
+                times = 0;
+            }
+        };
+    }
+
+    @Test
+    public void shouldMergeIndexes() {
+        UserQuery query = parser.parse(parameters("domain", "example.com", "domain", "42.NL", "email", "u", "email", "b"));
+
+        assertEquals(Arrays.asList("boss@example.com", "u0@42.nl", "u1@42.nl", "u2@42.nl", "u3@42.nl", "u4@42.nl", "u5@42.nl", "u6@42.nl",
+                "user@42.nl"),
+                emails(query.find(repository)));
+    }
+
+    @Test
+    public void shouldSort() {
+        UserQuery query = parser.parse(parameters("active", "true", "sort", "domain", "sort", "role,desc"));
+
+        Page<User> page = query.findPage(repository, 0, 3);
+
+        assertEquals(Arrays.asList("random@42.nl", "u0@42.nl", "u1@42.nl"), emails(page.getContent()));
+        assertEquals(Long.valueOf(11), page.getTotalElements());
+        assertEquals("domain", page.getSort().get(0).getProperty());
+        assertEquals("DESC", page.getSort().get(1).getDirection());
+        assertEquals("boss@example.com", emails(query.findPage(repository, 3, 3).getContent()).get(1));
+    }
+
+    @Test
+    public void shouldFollowFilteredCursor() {
+        UserQuery query = parser.parse(parameters("email", "u", "role", "role_user"));
+
+        Page<User> page = query.findAfter(repository, "", 3);
+        assertEquals(Arrays.asList("u0@42.nl", "u1@42.nl", "u2@42.nl"), emails(page.getContent()));
+        assertNull(page.getTotalElements());
+        assertFalse(page.isLast());
+
+        page = query.findAfter(repository, Page.decodeCursor(page.getNext()), 3);
+        page = query.findAfter(repository, Page.decodeCursor(page.getNext()), 3);
+        assertEquals(Arrays.asList("u6@42.nl", "user@42.nl"), emails(page.getContent()));
+        assertTrue(page.isLast());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownFilter() {
+        parser.parse(parameters("password", "123456"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownRole() {
+        parser.parse(parameters("role", "ROLE_ROOT"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidSort() {
+        parser.parse(parameters("sort", "email,up"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectCursorOnOtherOrder() {
+        parser.parse(parameters("sort", "role")).findAfter(repository, "", 10);
+    }
+
+    private static MultiValueMap<String, String> parameters(String... namesAndValues) {
+        MultiValueMap<String, String> parameters = new LinkedMultiValueMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            parameters.add(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return parameters;
+    }
+
+    private static List<String> emails(Iterable<User> users) {
+        List<String> result = new ArrayList<>();
+        users.forEach(user -> result.add(user.getEmail()));
+        return result;
+    }
+
+}
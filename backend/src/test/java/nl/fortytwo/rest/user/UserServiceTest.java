@@ -0,0 +1,74 @@
+package nl.fortytwo.rest.user;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.validation.Validation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+
+import nl.fortytwo.rest.user.dto.CreateUserDTO;
+import nl.fortytwo.rest.user.dto.CreateUserResultDTO;
+
+public class UserServiceTest {
+
+    private ForkJoinPool pool;
+
+    private InMemoryUserRepository repository;
+
+    private UserService service;
+
+    @Before
+    public void init() throws IOException {
+        pool = new ForkJoinPool(2);
+        repository = new InMemoryUserRepository(NoOpPasswordEncoder.getInstance());
+        service = new UserService(repository, new PasswordBlacklist(), NoOpPasswordEncoder.getInstance(),
+                Validation.buildDefaultValidatorFactory().getValidator(), pool);
+    }
+
+    @After
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void shouldCreateValidUsersAndRejectOthersInOrder() {
+        List<CreateUserResultDTO> results = service.createAll(Arrays.asList(
+                new CreateUserDTO("first@42.nl", "correct horse", Role.ROLE_USER),
+                new CreateUserDTO("short@42.nl", "1234567", Role.ROLE_USER),
+                new CreateUserDTO("blacklisted@42.nl", "password", Role.ROLE_USER),
+                new CreateUserDTO("not an email", "correct horse", null),
+                new CreateUserDTO("first@42.nl", "battery staple", Role.ROLE_ADMIN),
+                new CreateUserDTO("second@42.nl", "battery staple", Role.ROLE_ADMIN)));
+
+        assertEquals(6, results.size());
+        assertEquals("first@42.nl", results.get(0).getUser().getEmail());
+        assertTrue(results.get(0).getErrors().isEmpty());
+        assertEquals(Collections.singletonList("Password is too short"), results.get(1).getErrors());
+        assertEquals(Collections.singletonList("Password is blacklisted"), results.get(2).getErrors());
+        assertNull(results.get(3).getUser());
+        assertEquals(2, results.get(3).getErrors().size());
+        assertEquals(Collections.singletonList("Email occurs more than once in the batch"), results.get(4).getErrors());
+        assertEquals(Role.ROLE_ADMIN, results.get(5).getUser().getRole());
+
+        assertEquals("correct horse", repository.findByEmail("first@42.nl").get().getPassword());
+        assertEquals("battery staple", repository.findByEmail("second@42.nl").get().getPassword());
+        assertTrue(!repository.findByEmail("short@42.nl").isPresent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRefuseTooLargeBatches() {
+        service.createAll(Collections.nCopies(UserService.MAX_BATCH_SIZE + 1, new CreateUserDTO("user@42.nl", "correct horse", Role.ROLE_USER)));
+    }
+
+}
@@ -1,9 +1,14 @@
 package nl.fortytwo.rest.user;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
-import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -34,15 +39,52 @@ public class UserTest {
         assertTrue(user.isLocked());
     }
 
+    @Test
+    public void shouldIncrementVersionOnRoleChange() {
+        long version = user.getVersion();
+        user.changeRole(Role.ROLE_ADMIN);
+        assertEquals(version, user.getVersion());
+        user.changeRole(Role.ROLE_USER);
+        assertEquals(version + 1, user.getVersion());
+    }
+
     @Test
     public void shouldUnLockAfterSomeTime() {
         shouldLockAfterNAttempts();
-        Date ref = (Date) ReflectionTestUtils.getField(user, "lastAttempt");
+        AtomicLong state = (AtomicLong) ReflectionTestUtils.getField(user, "loginState");
+        long ref = state.get() >>> 16;
         for (int t = 1; t <= User.LOCK_TIMEOUT_IN_MINUTES; t++) {
             assertTrue(user.isLocked());
-            ReflectionTestUtils.setField(user, "lastAttempt", new Date(ref.getTime() - t * 60 * 1000));
+            state.set(ref - t * 60 * 1000 << 16);
         }
         assertFalse(user.isLocked());
     }
 
+    @Test
+    public void shouldNotLoseFailedAttemptsUnderContention() throws InterruptedException {
+        int threads = 8;
+        int attemptsPerThread = 10003;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < attemptsPerThread; i++) {
+                    user.markLoginFailed();
+                    user.isLocked();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(threads * attemptsPerThread % User.MAX_FAILED_LOGIN_ATTEMPTS_BEFORE_LOCK, user.getFailedAttempts());
+        assertTrue(user.isLocked());
+    }
+
 }
@@ -0,0 +1,55 @@
+package nl.fortytwo.rest.util;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import nl.fortytwo.rest.BenchmarkRunner;
+import nl.fortytwo.rest.BenchmarkRunner.Result;
+
+/**
+ * Compares compressing a list of 1000 users on every request to sending the cached compressed bytes for an unchanged
+ * ETag.
+ */
+public class CompressionBenchmark {
+
+    private static final long ITERATIONS = 5000L;
+
+    @Test
+    public void compare() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"email\":\"user").append(i).append("@42.nl\",\"role\":\"ROLE_USER\"}");
+        }
+        byte[] body = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users");
+        request.addHeader("Accept-Encoding", "gzip");
+
+        CompressionFilter uncached = new CompressionFilter(CompressionFilter.DEFAULT_THRESHOLD, 0L);
+        CompressionFilter cached = new CompressionFilter();
+
+        Result before = BenchmarkRunner.measure("Compress every response", ITERATIONS, () -> {
+            uncached.doFilter(request, new MockHttpServletResponse(), (req, resp) -> write(resp, body));
+        });
+        Result after = BenchmarkRunner.measure("Cached by ETag", ITERATIONS, () -> {
+            cached.doFilter(request, new MockHttpServletResponse(), (req, resp) -> write(resp, body));
+        });
+
+        assertTrue(after.getNanosPerOperation() < before.getNanosPerOperation());
+    }
+
+    private static void write(ServletResponse response, byte[] body) throws IOException {
+        response.setContentType("application/json");
+        ((HttpServletResponse) response).setHeader("ETag", "\"a-1\"");
+        response.getOutputStream().write(body);
+    }
+
+}
@@ -0,0 +1,206 @@
+package nl.fortytwo.rest.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class CompressionFilterTest {
+
+    private static final byte[] LARGE = users(200).getBytes(StandardCharsets.UTF_8);
+
+    private final CompressionFilter filter = new CompressionFilter(256, 1024 * 1024);
+
+    @Test
+    public void shouldNegotiateEncoding() {
+        assertEquals("gzip", CompressionFilter.negotiate("gzip, deflate, br"));
+        assertEquals("deflate", CompressionFilter.negotiate("deflate"));
+        assertEquals("deflate", CompressionFilter.negotiate("gzip;q=0, deflate;q=0.5"));
+        assertEquals("gzip", CompressionFilter.negotiate("*"));
+        assertEquals("deflate", CompressionFilter.negotiate("gzip;q=0, *"));
+        assertNull(CompressionFilter.negotiate("identity"));
+        assertNull(CompressionFilter.negotiate("*;q=0"));
+        assertNull(CompressionFilter.negotiate(null));
+    }
+
+    @Test
+    public void shouldNotCompressSmallBody() throws Exception {
+        byte[] body = "{\"email\":\"user@42.nl\"}".getBytes(StandardCharsets.UTF_8);
+        MockHttpServletResponse response = perform(request("gzip"), body, "application/json", null);
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals(body.length, response.getContentLength());
+        assertArrayEquals(body, response.getContentAsByteArray());
+    }
+
+    @Test
+    public void shouldStreamCompressedBody() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("gzip, deflate"), response, (req, resp) -> {
+            resp.setContentType("application/json");
+            resp.getOutputStream().write(LARGE, 0, LARGE.length / 2);
+            resp.flushBuffer();
+            // Sent while the rest of the body is still being written.
+            assertTrue(response.getContentAsByteArray().length > 0);
+            resp.getOutputStream().write(LARGE, LARGE.length / 2, LARGE.length - LARGE.length / 2);
+        });
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        assertTrue(response.getContentAsByteArray().length < LARGE.length / 4);
+        assertArrayEquals(LARGE, read(new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))));
+    }
+
+    @Test
+    public void shouldDeflate() throws Exception {
+        MockHttpServletResponse response = perform(request("deflate"), LARGE, "application/json", null);
+
+        assertEquals("deflate", response.getHeader("Content-Encoding"));
+        assertArrayEquals(LARGE, read(new InflaterInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))));
+    }
+
+    @Test
+    public void shouldNotCompressUnacceptedOrBinaryBody() throws Exception {
+        MockHttpServletResponse response = perform(request(null), LARGE, "application/json", null);
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        assertArrayEquals(LARGE, response.getContentAsByteArray());
+
+        response = perform(request("gzip"), LARGE, "image/png", null);
+        assertNull(response.getHeader("Content-Encoding"));
+        assertArrayEquals(LARGE, response.getContentAsByteArray());
+    }
+
+    @Test
+    public void shouldReuseCompressedBodyWithSameETag() throws Exception {
+        byte[] first = perform(request("gzip"), LARGE, "application/json", "\"a-1\"").getContentAsByteArray();
+
+        // The handler writes the same representation again, which is discarded in favor of the cached bytes.
+        byte[] other = users(300).getBytes(StandardCharsets.UTF_8);
+        MockHttpServletResponse cached = perform(request("gzip"), other, "application/json", "\"a-1\"");
+        assertArrayEquals(first, cached.getContentAsByteArray());
+        assertEquals(first.length, cached.getContentLength());
+
+        MockHttpServletResponse changed = perform(request("gzip"), other, "application/json", "\"a-2\"");
+        assertArrayEquals(other, read(new GZIPInputStream(new ByteArrayInputStream(changed.getContentAsByteArray()))));
+    }
+
+    @Test
+    public void shouldNotCacheWeakETag() throws Exception {
+        perform(request("gzip"), LARGE, "application/json", "W/\"a-1\"");
+
+        byte[] other = users(300).getBytes(StandardCharsets.UTF_8);
+        MockHttpServletResponse response = perform(request("gzip"), other, "application/json", "W/\"a-1\"");
+        assertArrayEquals(other, read(new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))));
+    }
+
+    @Test
+    public void shouldAddCodingToStrongETag() throws Exception {
+        assertEquals("\"a-1-gzip\"", perform(request("gzip"), LARGE, "application/json", "\"a-1\"").getHeader("ETag"));
+        assertEquals("\"a-1-deflate\"", perform(request("deflate"), LARGE, "application/json", "\"a-1\"").getHeader("ETag"));
+        assertEquals("\"a-1\"", perform(request(null), LARGE, "application/json", "\"a-1\"").getHeader("ETag"));
+        assertEquals("W/\"a-1\"", perform(request("gzip"), LARGE, "application/json", "W/\"a-1\"").getHeader("ETag"));
+    }
+
+    @Test
+    public void shouldStripCodingFromIfNoneMatch() throws Exception {
+        MockHttpServletRequest request = request("gzip");
+        request.addHeader("If-None-Match", "\"a-0-deflate\", \"a-1-gzip\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, (req, resp) -> {
+            HttpServletRequest filtered = (HttpServletRequest) req;
+            assertEquals("\"a-0\", \"a-1\"", filtered.getHeader("If-None-Match"));
+            assertEquals("\"a-0\", \"a-1\"", filtered.getHeaders("If-None-Match").nextElement());
+            HttpServletResponse notModified = (HttpServletResponse) resp;
+            notModified.setHeader("ETag", "\"a-1\"");
+            notModified.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        });
+
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+        assertEquals("\"a-1-gzip\"", response.getHeader("ETag"));
+    }
+
+    @Test
+    public void shouldEndCompressorWhenChainFails() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ServletOutputStream[] stream = new ServletOutputStream[1];
+        try {
+            filter.doFilter(request("deflate"), response, (req, resp) -> {
+                resp.setContentType("application/json");
+                stream[0] = resp.getOutputStream();
+                stream[0].write(LARGE);
+                throw new IllegalStateException("Failed while writing");
+            });
+            fail();
+        } catch (IllegalStateException ex) {
+            assertEquals("Failed while writing", ex.getMessage());
+        }
+        int length = response.getContentAsByteArray().length;
+
+        // The compressor has been ended, a late write is discarded instead of failing on it.
+        stream[0].write(LARGE);
+        stream[0].close();
+
+        assertEquals(length, response.getContentAsByteArray().length);
+    }
+
+    private MockHttpServletResponse perform(MockHttpServletRequest request, byte[] body, String contentType, String etag)
+            throws IOException, ServletException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (req, resp) -> {
+            resp.setContentType(contentType);
+            if (etag != null) {
+                ((HttpServletResponse) resp).setHeader("ETag", etag);
+            }
+            resp.getOutputStream().write(body);
+        };
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String acceptEncoding) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users");
+        if (acceptEncoding != null) {
+            request.addHeader("Accept-Encoding", acceptEncoding);
+        }
+        return request;
+    }
+
+    private static String users(int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"email\":\"user").append(i).append("@42.nl\",\"role\":\"ROLE_USER\"}");
+        }
+        return json.append(']').toString();
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+}
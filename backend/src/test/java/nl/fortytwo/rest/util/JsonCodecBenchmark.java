@@ -0,0 +1,72 @@
+package nl.fortytwo.rest.util;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import nl.fortytwo.rest.BenchmarkRunner;
+import nl.fortytwo.rest.security.RestAuthenticationFilter.LoginForm;
+import nl.fortytwo.rest.user.Role;
+import nl.fortytwo.rest.user.User;
+import nl.fortytwo.rest.user.dto.UserDTO;
+
+/**
+ * Per request cost of reading the login form and of writing the GET /users response (100 users), with a plain
+ * ObjectMapper and MappingJackson2HttpMessageConverter as before, and with the JsonCodec with and without Afterburner.
+ */
+public class JsonCodecBenchmark {
+
+    private static final long ITERATIONS = 1000000L;
+
+    private static final byte[] LOGIN = "{\"username\":\"someone@42.nl\",\"password\":\"correct horse battery staple\"}".getBytes(StandardCharsets.UTF_8);
+
+    private static final Type USERS = new ParameterizedTypeReference<List<UserDTO>>() {
+    }.getType();
+
+    private final List<UserDTO> users = new ArrayList<>();
+
+    public JsonCodecBenchmark() {
+        for (int i = 0; i < 100; i++) {
+            users.add(new UserDTO(new User("user" + i + "@42.nl", i % 10 == 0 ? Role.ROLE_ADMIN : Role.ROLE_USER)));
+        }
+    }
+
+    @Test
+    public void login() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonCodec plain = new JsonCodec(false).preload(LoginForm.class);
+        JsonCodec afterburner = new JsonCodec(true).preload(LoginForm.class);
+
+        BenchmarkRunner.measure("Login, ObjectMapper.readValue", ITERATIONS, () -> objectMapper.readValue(new ByteArrayInputStream(LOGIN), LoginForm.class));
+        BenchmarkRunner.measure("Login, JsonCodec", ITERATIONS, () -> plain.read(new ByteArrayInputStream(LOGIN), LoginForm.class));
+        BenchmarkRunner.measure("Login, JsonCodec with Afterburner", ITERATIONS, () -> afterburner.read(new ByteArrayInputStream(LOGIN), LoginForm.class));
+    }
+
+    @Test
+    public void users() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        MappingJackson2HttpMessageConverter before = new MappingJackson2HttpMessageConverter(objectMapper);
+        JsonCodecHttpMessageConverter plain = new JsonCodecHttpMessageConverter(new JsonCodec(false));
+        JsonCodecHttpMessageConverter afterburner = new JsonCodecHttpMessageConverter(new JsonCodec(true));
+
+        BenchmarkRunner.measure("GET /users, MappingJackson2HttpMessageConverter", ITERATIONS / 5,
+                () -> before.write(users, USERS, MediaType.APPLICATION_JSON, new MockHttpOutputMessage()));
+        BenchmarkRunner.measure("GET /users, JsonCodec", ITERATIONS / 5,
+                () -> plain.write(users, USERS, MediaType.APPLICATION_JSON, new MockHttpOutputMessage()));
+        BenchmarkRunner.measure("GET /users, JsonCodec with Afterburner", ITERATIONS / 5,
+                () -> afterburner.write(users, USERS, MediaType.APPLICATION_JSON, new MockHttpOutputMessage()));
+    }
+
+}
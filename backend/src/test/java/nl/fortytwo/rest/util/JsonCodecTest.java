@@ -0,0 +1,78 @@
+package nl.fortytwo.rest.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import nl.fortytwo.rest.security.RestAuthenticationFilter.LoginForm;
+import nl.fortytwo.rest.user.Role;
+import nl.fortytwo.rest.user.User;
+import nl.fortytwo.rest.user.dto.UserDTO;
+
+public class JsonCodecTest {
+
+    private final JsonCodec codec = new JsonCodec().preload(LoginForm.class, UserDTO.class);
+
+    @Test
+    public void shouldReuseReadersAndWriters() {
+        assertSame(codec.reader(LoginForm.class), codec.reader(LoginForm.class));
+        assertSame(codec.writer(UserDTO.class), codec.writer(UserDTO.class));
+    }
+
+    @Test
+    public void shouldToggleAfterburner() {
+        assertFalse(codec.isAfterburnerEnabled());
+        assertTrue(new JsonCodec(true).isAfterburnerEnabled());
+    }
+
+    @Test
+    public void shouldReadAndWrite() throws IOException {
+        LoginForm form = codec.read(new ByteArrayInputStream("{\"username\":\"name\",\"password\":\"pwd\"}".getBytes(StandardCharsets.UTF_8)), LoginForm.class);
+        assertEquals("name", form.getUsername());
+        assertEquals("pwd", form.getPassword());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.write(out, new UserDTO(new User("a@42.nl", null)));
+        assertEquals("{\"email\":\"a@42.nl\"}", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void shouldConvertGenericTypes() throws IOException {
+        JsonCodecHttpMessageConverter converter = new JsonCodecHttpMessageConverter(codec);
+        List<UserDTO> users = Arrays.asList(new UserDTO(new User("a@42.nl", Role.ROLE_USER)), new UserDTO(new User("b@42.nl", Role.ROLE_ADMIN)));
+        Type type = new ParameterizedTypeReference<List<UserDTO>>() {
+        }.getType();
+
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(users, type, MediaType.APPLICATION_JSON, output);
+        String json = output.getBodyAsString(StandardCharsets.UTF_8);
+        assertEquals("[{\"email\":\"a@42.nl\",\"role\":\"ROLE_USER\"},{\"email\":\"b@42.nl\",\"role\":\"ROLE_ADMIN\"}]", json);
+
+        @SuppressWarnings("unchecked")
+        List<UserDTO> read = (List<UserDTO>) converter.read(type, null, new MockHttpInputMessage(json.getBytes(StandardCharsets.UTF_8)));
+        assertEquals("b@42.nl", read.get(1).getEmail());
+        assertEquals(Role.ROLE_ADMIN, read.get(1).getRole());
+    }
+
+    @Test(expected = HttpMessageNotReadableException.class)
+    public void shouldRejectMalformedBody() throws IOException {
+        new JsonCodecHttpMessageConverter(codec).read(UserDTO.class, new MockHttpInputMessage("{\"email\":".getBytes(StandardCharsets.UTF_8)));
+    }
+
+}
@@ -0,0 +1,39 @@
+package nl.fortytwo.rest.validator;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import nl.fortytwo.rest.BenchmarkRunner;
+import nl.fortytwo.rest.BenchmarkRunner.Result;
+import nl.fortytwo.rest.user.Role;
+import nl.fortytwo.rest.user.dto.CreateUserDTO;
+
+/**
+ * Compares validating a valid request body with the compiled validator to the standard Bean Validation path.
+ */
+public class CompiledValidatorBenchmark {
+
+    private static final long ITERATIONS = 1000000L;
+
+    @Test
+    public void compare() throws Exception {
+        LocalValidatorFactoryBean standard = new LocalValidatorFactoryBean();
+        standard.afterPropertiesSet();
+        CompiledValidator compiled = new CompiledValidator(CreateUserDTO.class);
+        compiled.afterPropertiesSet();
+        CreateUserDTO form = new CreateUserDTO("first.last@example.com", "correct horse battery staple", Role.ROLE_USER);
+
+        Result before = BenchmarkRunner.measure("Hibernate Validator", ITERATIONS, () -> {
+            standard.validate(form, new BeanPropertyBindingResult(form, "form"));
+        });
+        Result after = BenchmarkRunner.measure("CompiledValidator", ITERATIONS, () -> {
+            compiled.validate(form, new BeanPropertyBindingResult(form, "form"));
+        });
+
+        assertTrue(after.getNanosPerOperation() < before.getNanosPerOperation());
+    }
+
+}
@@ -0,0 +1,118 @@
+package nl.fortytwo.rest.validator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Path;
+import javax.validation.constraints.Size;
+
+import org.hibernate.validator.constraints.NotEmpty;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import nl.fortytwo.rest.user.Role;
+import nl.fortytwo.rest.user.User;
+import nl.fortytwo.rest.user.dto.CreateUserDTO;
+import nl.fortytwo.rest.user.dto.UserDTO;
+
+public class CompiledValidatorTest {
+
+    private static final List<CreateUserDTO> FORMS = Arrays.asList(
+            new CreateUserDTO("user@42.nl", "correct horse", Role.ROLE_USER),
+            new CreateUserDTO(null, null, null),
+            new CreateUserDTO("", "", Role.ROLE_USER),
+            new CreateUserDTO("not an email", "new\nline", Role.ROLE_ADMIN),
+            new CreateUserDTO("user@@42.nl", "tab\t", Role.ROLE_USER));
+
+    private LocalValidatorFactoryBean standard;
+
+    private CompiledValidator compiled;
+
+    @Before
+    public void init() {
+        standard = new LocalValidatorFactoryBean();
+        standard.afterPropertiesSet();
+        compiled = new CompiledValidator(CreateUserDTO.class, UserDTO.class);
+        compiled.afterPropertiesSet();
+    }
+
+    @After
+    public void destroy() {
+        standard.destroy();
+        compiled.destroy();
+    }
+
+    @Test
+    public void shouldGiveTheSameViolations() {
+        assertTrue(compiled.isCompiled(CreateUserDTO.class));
+        for (CreateUserDTO form : FORMS) {
+            assertEquals(describe(standard.validate(form)), describe(compiled.validate(form)));
+        }
+        UserDTO user = new UserDTO(new User("invalid", Role.ROLE_USER));
+        assertEquals(1, compiled.validate(user).size());
+        assertEquals(describe(standard.validate(user)), describe(compiled.validate(user)));
+    }
+
+    @Test
+    public void shouldGiveTheSameErrors() {
+        for (CreateUserDTO form : FORMS) {
+            BeanPropertyBindingResult expected = new BeanPropertyBindingResult(form, "form");
+            BeanPropertyBindingResult actual = new BeanPropertyBindingResult(form, "form");
+
+            standard.validate(form, expected);
+            compiled.validate(form, actual);
+
+            assertEquals(new HashSet<>(expected.getFieldErrors()), new HashSet<>(actual.getFieldErrors()));
+        }
+    }
+
+    @Test
+    public void shouldUseTheStandardValidatorForOtherConstraints() {
+        Other other = new Other();
+
+        assertFalse(compiled.isCompiled(Other.class));
+        assertEquals(2, compiled.validate(other).size());
+    }
+
+    /**
+     * The violations are of another class than those of Hibernate Validator, so they are compared by everything a
+     * ConstraintViolation exposes.
+     */
+    private static <T> Set<List<Object>> describe(Set<ConstraintViolation<T>> violations) {
+        Set<List<Object>> described = new HashSet<>();
+        for (ConstraintViolation<T> violation : violations) {
+            List<Object> nodes = new ArrayList<>();
+            for (Path.Node node : violation.getPropertyPath()) {
+                nodes.add(Arrays.asList(node.getName(), node.getKind(), node.isInIterable(), node.getIndex(), node.getKey()));
+            }
+            described.add(Arrays.asList(violation.getMessage(), violation.getMessageTemplate(), violation.getRootBeanClass(),
+                    violation.getRootBean(), violation.getLeafBean(), violation.getInvalidValue(),
+                    violation.getPropertyPath().toString(), nodes, violation.getConstraintDescriptor().getAnnotation(),
+                    violation.getExecutableParameters(), violation.getExecutableReturnValue()));
+        }
+        assertEquals(violations.size(), described.size());
+        return described;
+    }
+
+    private static class Other {
+
+        @NotEmpty
+        private String name;
+
+        @Size(min = 1)
+        private String description = "";
+
+    }
+
+}
@@ -0,0 +1,78 @@
+package nl.fortytwo.rest.validator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.hibernate.validator.internal.constraintvalidators.hv.EmailValidator;
+import org.junit.Test;
+
+public class LinearEmailValidatorTest {
+
+    private final LinearEmailValidator validator = new LinearEmailValidator();
+
+    @Test
+    public void shouldPass() {
+        assertTrue(validator.isValid("user@42.nl", null));
+        assertTrue(validator.isValid("first.last+tag@sub.example.com", null));
+        assertTrue(validator.isValid("user@[127.0.0.1]", null));
+        assertTrue(validator.isValid("gebruiker@bücher.de", null));
+    }
+
+    @Test
+    public void shouldFail() {
+        assertFalse(validator.isValid("user", null));
+        assertFalse(validator.isValid("user@", null));
+        assertFalse(validator.isValid("user@@42.nl", null));
+        assertFalse(validator.isValid("user.@42.nl", null));
+        assertFalse(validator.isValid("us..er@42.nl", null));
+        assertFalse(validator.isValid("user@42.nl.", null));
+        assertFalse(validator.isValid("user@[1.2.3]", null));
+        assertFalse(validator.isValid("user@42.nl\n", null));
+    }
+
+    @Test
+    public void shouldPassEmpty() {
+        assertTrue(validator.isValid(null, null));
+        assertTrue(validator.isValid("", null));
+    }
+
+    @Test
+    public void shouldAgreeWithHibernateValidator() {
+        EmailValidator expected = new EmailValidator();
+        Random random = new Random(42);
+        String alphabet = "aZ9-.@[]1 \"é。\n";
+        for (int i = 0; i < 200000; i++) {
+            StringBuilder email = new StringBuilder();
+            int length = random.nextInt(i % 10 == 0 ? 330 : 20);
+            for (int c = 0; c < length; c++) {
+                email.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            assertEquals(email.toString(), expected.isValid(email, null), validator.isValid(email, null));
+        }
+    }
+
+    @Test
+    public void shouldAgreeWithHibernateValidatorOnLongParts() {
+        EmailValidator expected = new EmailValidator();
+        for (int dot = 1; dot < 260; dot++) {
+            for (String email : new String[] { local(dot) + "@42.nl", "user@" + local(dot) + ".nl", "user@" + local(dot) + "é.nl" }) {
+                assertEquals(email, expected.isValid(email, null), validator.isValid(email, null));
+            }
+        }
+    }
+
+    /**
+     * @return a part with a dot at the given position and longer than the maximum length of a local part.
+     */
+    private static String local(int dot) {
+        StringBuilder part = new StringBuilder();
+        for (int i = 0; i < 70 || i <= dot + 1; i++) {
+            part.append(i == dot ? '.' : 'a');
+        }
+        return part.toString();
+    }
+
+}